@@ -0,0 +1,27 @@
+/*
+    @CLASS-TITLE: ChaosBenchmarks.java
+    @CLASS-DESCRIPTION: Entry point of benchmarks.jar. Behaves like the stock JMH launcher
+    (every JMH command line option still works) but always attaches the GC profiler,
+    so each result comes with its allocation rate next to ns/op.
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public final class ChaosBenchmarks {
+
+    private ChaosBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
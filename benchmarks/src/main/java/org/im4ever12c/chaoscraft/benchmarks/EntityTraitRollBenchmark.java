@@ -0,0 +1,65 @@
+/*
+    @CLASS-TITLE: EntityTraitRollBenchmark.java
+    @CLASS-DESCRIPTION: Cost of EntityEvents.onCreatureSpawn, i.e. the independent per-trait rolls
+    that run for every living entity that spawns, including storing whatever traits were rolled.
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.bukkit.Location;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Zombie;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.CountdownHolograms;
+import org.im4ever12c.chaoscraft.entity.EntityRegistry;
+import org.im4ever12c.chaoscraft.entity.SpatialGrid;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.listeners.EntityEvents;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.schedule.TimingWheel;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityTraitRollBenchmark {
+
+    private EntityEvents listener;
+    private EntitySpawnEvent spawnEvent;
+
+    @Setup
+    public void setup() {
+        TimingWheel wheel = new TimingWheel(Logger.getLogger("benchmark"));
+        ChaosSpawner spawner = new ChaosSpawner(Stubs.plugin(), 3, new int[] { 16, 24, 16 });
+        listener = new EntityEvents(Stubs.plugin(), new ChaosRandom(42L), new ModifierSettings(), new ModifierMetrics(),
+                new ExplosionLimiter(8, 15.0, 90.0, 2F), new SpawnQueue(spawner, 8, 1000L, 200),
+                new CountdownHolograms(wheel, 32), wheel, new SpatialGrid(new EntityRegistry(spawner), 8));
+        Location location = new Location(Stubs.world(), 0.5, 64.0, 0.5);
+        spawnEvent = new EntitySpawnEvent(Stubs.entity(Zombie.class, EntityType.ZOMBIE, location));
+    }
+
+    @Benchmark
+    public EntitySpawnEvent onCreatureSpawn() {
+        listener.onCreatureSpawn(spawnEvent);
+        return spawnEvent;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+    @CLASS-TITLE: ModifierSelectionBenchmark.java
+    @CLASS-DESCRIPTION: Cost of picking one weighted modifier, per modifier pool.
+    "linearScan" reproduces the per-event selection the listeners used to do (clone values(), sum the
+    weights, walk the list); "aliasTable" is the shared WeightedSampler they use now.
+    Rarities are read from the listeners' own enums, so the pools never drift from the plugin.
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.util.WeightedSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModifierSelectionBenchmark {
+
+    @Param({
+            "BreakBlockEvent$BlockBreakModifier",
+            "ExplosionEvents$ExplosionModifier",
+            "TimeSkipEvents$TimeSkipModifier",
+            "ProjectileHitEvents$ProjectileHitModifier",
+            "EntitySpawnEvents$AnimalSpawnModifier",
+            "EntitySpawnEvents$CreatureSpawnModifier"
+    })
+    public String pool;
+
+    private Object[] constants;
+    private double[] rarities;
+    private WeightedSampler<Object> sampler;
+    private ChaosRandom random;
+
+    @Setup
+    public void setup() throws Exception {
+        Class<?> type = Class.forName("org.im4ever12c.chaoscraft.listeners." + pool);
+        Method getRarity = type.getMethod("getRarity");
+        getRarity.setAccessible(true);
+        constants = type.getEnumConstants();
+        rarities = new double[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            rarities[i] = (double) getRarity.invoke(constants[i]);
+        }
+        sampler = WeightedSampler.of(constants, rarities);
+        random = new ChaosRandom(42L);
+    }
+
+    @Benchmark
+    public Object linearScan() {
+        // values() hands out a fresh copy on every call, exactly like the old selectors paid for.
+        Object[] values = constants.clone();
+        double total = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            total += rarities[i];
+        }
+        double roll = random.nextDouble() * total;
+        for (int i = 0; i < values.length; i++) {
+            if (roll < rarities[i]) {
+                return values[i];
+            }
+            roll -= rarities[i];
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object aliasTable() {
+        return sampler.next(random);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+    @CLASS-TITLE: NearbyEntitiesBenchmark.java
+    @CLASS-DESCRIPTION: Cost of one "every living entity within 10 blocks" lookup (CONFUSE_PLAYERS,
+    randomPotionOnDeath...), with 500 and 5,000 mobs spread over a 256x256 area.
+    "getNearbyEntities" reproduces what World.getNearbyEntities does on the server: walk the 16x16x16 entity
+    sections overlapping the box, test each entity's position against it, collect the hits and copy them into
+    the Bukkit-facing list, after which the effect filters with instanceof. "spatialGrid" runs the same query
+    through SpatialGrid.forEachNearby. "gridUpdate" is what the grid costs to keep current: one tick's
+    refresh of every tracked entity, none of which changes cell (the common case).
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Cow;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Projectile;
+import org.bukkit.entity.Zombie;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.EntityRegistry;
+import org.im4ever12c.chaoscraft.entity.SpatialGrid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearbyEntitiesBenchmark {
+
+    private static final double RADIUS = 10.0;
+    private static final int HALF_AREA = 128;
+    private static final int QUERIES = 1024;
+
+    @Param({"500", "5000"})
+    public int entities;
+
+    // Section key -> entities in that 16x16x16 section, like the server's entity section storage.
+    private final Map<Long, List<Placed>> sections = new HashMap<>();
+    private SpatialGrid grid;
+    private Location[] centers;
+    private int next;
+
+    @Setup
+    public void setup() {
+        World world = Stubs.world();
+        Random random = new Random(42L);
+        EntityRegistry registry = new EntityRegistry(new ChaosSpawner(Stubs.plugin(), 3, new int[] { 16, 24, 16 }));
+        grid = new SpatialGrid(registry, 8);
+        for (int i = 0; i < entities; i++) {
+            Location location = new Location(world, random.nextDouble() * HALF_AREA * 2 - HALF_AREA,
+                    60 + random.nextDouble() * 20, random.nextDouble() * HALF_AREA * 2 - HALF_AREA);
+            LivingEntity entity = i % 2 == 0
+                    ? Stubs.entity(Zombie.class, EntityType.ZOMBIE, location)
+                    : Stubs.entity(Cow.class, EntityType.COW, location);
+            registry.onEntitySpawn(new EntitySpawnEvent(entity));
+            sections.computeIfAbsent(sectionKey(location.getBlockX() >> 4, location.getBlockY() >> 4, location.getBlockZ() >> 4),
+                    k -> new ArrayList<>()).add(new Placed(entity, location));
+        }
+        grid.run();
+        centers = new Location[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            centers[i] = new Location(world, random.nextDouble() * HALF_AREA * 2 - HALF_AREA, 70,
+                    random.nextDouble() * HALF_AREA * 2 - HALF_AREA);
+        }
+    }
+
+    @Benchmark
+    public void getNearbyEntities(Blackhole blackhole) {
+        for (Entity e : nearbyEntities(nextCenter(), RADIUS)) {
+            if (e instanceof LivingEntity && !(e instanceof Projectile)) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public int spatialGrid(Blackhole blackhole) {
+        return grid.forEachNearby(nextCenter(), RADIUS, blackhole::consume);
+    }
+
+    @Benchmark
+    public void gridUpdate() {
+        grid.run();
+    }
+
+    private Location nextCenter() {
+        Location center = centers[next];
+        next = (next + 1) & (QUERIES - 1);
+        return center;
+    }
+
+    private List<Entity> nearbyEntities(Location center, double radius) {
+        double minX = center.getX() - radius;
+        double minY = center.getY() - radius;
+        double minZ = center.getZ() - radius;
+        double maxX = center.getX() + radius;
+        double maxY = center.getY() + radius;
+        double maxZ = center.getZ() + radius;
+        List<Entity> found = new ArrayList<>();
+        for (int sx = (int) Math.floor(minX) >> 4; sx <= (int) Math.floor(maxX) >> 4; sx++) {
+            for (int sz = (int) Math.floor(minZ) >> 4; sz <= (int) Math.floor(maxZ) >> 4; sz++) {
+                for (int sy = (int) Math.floor(minY) >> 4; sy <= (int) Math.floor(maxY) >> 4; sy++) {
+                    List<Placed> section = sections.get(sectionKey(sx, sy, sz));
+                    if (section == null) {
+                        continue;
+                    }
+                    for (Placed placed : section) {
+                        if (placed.x >= minX && placed.x <= maxX && placed.y >= minY && placed.y <= maxY
+                                && placed.z >= minZ && placed.z <= maxZ) {
+                            found.add(placed.entity);
+                        }
+                    }
+                }
+            }
+        }
+        // The server collects server-side entities first and then builds the list of Bukkit entities.
+        return new ArrayList<>(found);
+    }
+
+    private static long sectionKey(int x, int y, int z) {
+        return ((long) x & 0x3FFFFF) << 42 | ((long) y & 0xFFFFF) << 22 | ((long) z & 0x3FFFFF);
+    }
+
+    private static final class Placed {
+        final Entity entity;
+        final double x;
+        final double y;
+        final double z;
+
+        Placed(Entity entity, Location location) {
+            this.entity = entity;
+            this.x = location.getX();
+            this.y = location.getY();
+            this.z = location.getZ();
+        }
+    }
+}
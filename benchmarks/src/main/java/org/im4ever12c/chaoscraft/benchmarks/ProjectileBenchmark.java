@@ -0,0 +1,91 @@
+/*
+    @CLASS-TITLE: ProjectileBenchmark.java
+    @CLASS-DESCRIPTION: Cost of ProjectileFireEvents on its two hot paths: the independent modifier rolls
+    on every launch, and the modifier lookup on every projectile damage event.
+    The damage path is measured with a projectile that carries no modifiers (the common case)
+    and with one that carries every modifier.
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.bukkit.Location;
+import org.bukkit.damage.DamageSource;
+import org.bukkit.entity.Arrow;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Projectile;
+import org.bukkit.entity.Zombie;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.ProjectileLaunchEvent;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.listeners.ProjectileFireEvents;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.traits.ProjectileStateTable;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectileBenchmark {
+
+    @Param({"none", "all"})
+    public String modifiers;
+
+    private ProjectileFireEvents listener;
+    private ProjectileLaunchEvent launchEvent;
+    private EntityDamageByEntityEvent damageEvent;
+
+    @Setup
+    public void setup() {
+        ProjectileStateTable states = new ProjectileStateTable();
+        listener = new ProjectileFireEvents(new ChaosRandom(42L), new ModifierSettings(), new ModifierMetrics(), states,
+                new ExplosionLimiter(8, 15.0, 90.0, 2F),
+                new SpawnQueue(new ChaosSpawner(Stubs.plugin(), 3, new int[] { 16, 24, 16 }), 8, 1000L, 200));
+        Location location = new Location(Stubs.world(), 0.5, 64.0, 0.5);
+
+        launchEvent = new ProjectileLaunchEvent(Stubs.entity(Arrow.class, EntityType.ARROW, location));
+
+        Projectile projectile = Stubs.entity(Arrow.class, EntityType.ARROW, location);
+        if ("all".equals(modifiers)) {
+            states.put(projectile.getEntityId(), ~0L, 2.0F, 1.5F, 0F);
+        }
+        Zombie target = Stubs.entity(Zombie.class, EntityType.ZOMBIE, location.clone().add(0.0, 0.0, 2.0));
+        DamageSource source = (DamageSource) Proxy.newProxyInstance(
+                DamageSource.class.getClassLoader(), new Class<?>[] { DamageSource.class }, (self, method, args) -> null);
+        damageEvent = new EntityDamageByEntityEvent(projectile, target,
+                EntityDamageEvent.DamageCause.PROJECTILE, source, 4.0);
+    }
+
+    @Benchmark
+    public ProjectileLaunchEvent onProjectileFire() {
+        listener.onProjectileFire(launchEvent);
+        return launchEvent;
+    }
+
+    @Benchmark
+    public EntityDamageByEntityEvent onEntityDamageByEntity() {
+        damageEvent.setDamage(4.0);
+        listener.onEntityDamageByEntity(damageEvent);
+        return damageEvent;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+    @CLASS-TITLE: SphereOffsetsBenchmark.java
+    @CLASS-DESCRIPTION: Cost of finding every block within a blast radius, per radius.
+    "cubeScan" reproduces the loop SET_FIRE_IN_RADIUS used to run (walk the (2r+1)^3 cube, clone a Location
+    per cell, compare Location.distance); "sphereTable" walks the cached SphereOffsets table instead.
+    Both only visit block coordinates: the getBlock() call the old loop also made per cell is left out,
+    so the real gap in game is larger than shown here.
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.bukkit.Location;
+import org.im4ever12c.chaoscraft.world.SphereOffsets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SphereOffsetsBenchmark {
+
+    @Param({"2.5", "4.0", "8.0", "16.0"})
+    public float radius;
+
+    private Location center;
+
+    @Setup
+    public void setup() {
+        center = new Location(Stubs.world(), 100.3, 64.0, -40.7);
+    }
+
+    @Benchmark
+    public void cubeScan(Blackhole blackhole) {
+        int r = (int) Math.ceil(radius);
+        for (int x = -r; x <= r; x++) {
+            for (int y = -r; y <= r; y++) {
+                for (int z = -r; z <= r; z++) {
+                    Location loc = center.clone().add(x, y, z);
+                    if (loc.distance(center) <= radius) {
+                        blackhole.consume(loc.getBlockX());
+                        blackhole.consume(loc.getBlockY());
+                        blackhole.consume(loc.getBlockZ());
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void sphereTable(Blackhole blackhole) {
+        int[] offsets = SphereOffsets.sphere(radius);
+        int end = SphereOffsets.end(offsets, radius);
+        int x = center.getBlockX();
+        int y = center.getBlockY();
+        int z = center.getBlockZ();
+        for (int i = 0; i < end; i += 3) {
+            blackhole.consume(x + offsets[i]);
+            blackhole.consume(y + offsets[i + 1]);
+            blackhole.consume(z + offsets[i + 2]);
+        }
+    }
+}
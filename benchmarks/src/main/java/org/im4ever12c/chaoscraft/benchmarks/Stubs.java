@@ -0,0 +1,197 @@
+/*
+    @CLASS-TITLE: Stubs.java
+    @CLASS-DESCRIPTION: Lightweight stand-ins for Bukkit worlds, entities and the plugin, built from
+    dynamic proxies so the real listeners can be driven without a running server.
+    Entity metadata is kept the way CraftBukkit's EntityMetadataStore keeps it (a string key of
+    "<uuid>:<key>" mapping to a per-plugin value map), so metadata-heavy paths cost roughly what they do in game.
+    Each entity also gets a map-backed PersistentDataContainer. Every other method returns a zero/null default.
+ */
+
+package org.im4ever12c.chaoscraft.benchmarks;
+
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.metadata.MetadataValue;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.projectiles.ProjectileSource;
+import org.bukkit.util.Vector;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+final class Stubs {
+
+    private static final AtomicInteger NEXT_ENTITY_ID = new AtomicInteger();
+    private static final Map<String, Map<Plugin, MetadataValue>> METADATA = new HashMap<>();
+
+    private Stubs() {
+    }
+
+    static Plugin plugin() {
+        Logger logger = Logger.getLogger("ChaosCraft-benchmarks");
+        return proxy(Plugin.class, (self, method, args) -> {
+            switch (method.getName()) {
+                case "getName": return "ChaosCraft";
+                case "getLogger": return logger;
+                case "isEnabled": return true;
+                default: return base(self, method, args);
+            }
+        });
+    }
+
+    static World world() {
+        UUID uid = UUID.randomUUID();
+        return proxy(World.class, (self, method, args) -> {
+            switch (method.getName()) {
+                case "getName": return "benchmark";
+                case "getUID": return uid;
+                case "spawnEntity": {
+                    EntityType type = (EntityType) args[1];
+                    return entity(type.getEntityClass(), type, (Location) args[0]);
+                }
+                case "getNearbyEntities":
+                case "getEntities":
+                case "getLivingEntities":
+                    return Collections.emptyList();
+                case "createExplosion": return true;
+                default: return base(self, method, args);
+            }
+        });
+    }
+
+    /**
+     * Creates an entity stub of the given Bukkit interface at the given location.
+     */
+    static <T extends Entity> T entity(Class<T> type, EntityType entityType, Location location) {
+        return proxy(type, new EntityHandler(entityType, location));
+    }
+
+    private static final class EntityHandler implements InvocationHandler {
+        private final int id = NEXT_ENTITY_ID.incrementAndGet();
+        private final UUID uuid = UUID.randomUUID();
+        private final EntityType type;
+        private final Location location;
+        private final ProjectileSource shooter = proxy(ProjectileSource.class, Stubs::base);
+        private final PersistentDataContainer container = dataContainer();
+        private Vector velocity = new Vector(0.0, 0.0, 1.5);
+
+        EntityHandler(EntityType type, Location location) {
+            this.type = type;
+            this.location = location;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getType": return type;
+                case "getEntityId": return id;
+                case "getUniqueId": return uuid;
+                case "getLocation": {
+                    if (args == null) {
+                        return location.clone();
+                    }
+                    Location target = (Location) args[0];
+                    target.setWorld(location.getWorld());
+                    return target.set(location.getX(), location.getY(), location.getZ());
+                }
+                case "getWorld": return location.getWorld();
+                case "getVelocity": return velocity.clone();
+                case "setVelocity":
+                    velocity = ((Vector) args[0]).clone();
+                    return null;
+                case "getShooter": return shooter;
+                case "getPersistentDataContainer": return container;
+                case "isValid": return true;
+                case "setMetadata": {
+                    MetadataValue value = (MetadataValue) args[1];
+                    METADATA.computeIfAbsent(metadataKey((String) args[0]), k -> new HashMap<>())
+                            .put(value.getOwningPlugin(), value);
+                    return null;
+                }
+                case "hasMetadata": return METADATA.containsKey(metadataKey((String) args[0]));
+                case "getMetadata": {
+                    Map<Plugin, MetadataValue> values = METADATA.get(metadataKey((String) args[0]));
+                    return values == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(values.values()));
+                }
+                case "removeMetadata": {
+                    String key = metadataKey((String) args[0]);
+                    Map<Plugin, MetadataValue> values = METADATA.get(key);
+                    if (values != null) {
+                        values.remove((Plugin) args[1]);
+                        if (values.isEmpty()) {
+                            METADATA.remove(key);
+                        }
+                    }
+                    return null;
+                }
+                default: return base(self, method, args);
+            }
+        }
+
+        private String metadataKey(String key) {
+            return uuid + ":" + key;
+        }
+    }
+
+    private static PersistentDataContainer dataContainer() {
+        Map<NamespacedKey, Object> values = new HashMap<>();
+        return proxy(PersistentDataContainer.class, (self, method, args) -> {
+            switch (method.getName()) {
+                case "set":
+                    values.put((NamespacedKey) args[0], args[2]);
+                    return null;
+                case "get": return values.get((NamespacedKey) args[0]);
+                case "has": return values.containsKey((NamespacedKey) args[0]);
+                case "remove":
+                    values.remove((NamespacedKey) args[0]);
+                    return null;
+                case "isEmpty": return values.isEmpty();
+                default: return base(self, method, args);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object base(Object self, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals": return self == args[0];
+            case "hashCode": return System.identityHashCode(self);
+            case "toString": return "Stub" + self.getClass().getInterfaces()[0].getSimpleName();
+            default: return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            if (type == List.class) {
+                return Collections.emptyList();
+            }
+            return null;
+        }
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0.0F;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        return '\0';
+    }
+}
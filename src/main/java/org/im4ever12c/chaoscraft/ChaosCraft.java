@@ -7,24 +7,401 @@
 
 package org.im4ever12c.chaoscraft;
 
-import org.bukkit.plugin.PluginManager;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.im4ever12c.chaoscraft.command.ChaosCommand;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.CountdownHolograms;
+import org.im4ever12c.chaoscraft.entity.EntityRegistry;
+import org.im4ever12c.chaoscraft.entity.MobCategory;
+import org.im4ever12c.chaoscraft.entity.SpatialGrid;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.entity.TeleportPipeline;
 import org.im4ever12c.chaoscraft.listeners.*;
+import org.im4ever12c.chaoscraft.metrics.HandlerMetrics;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.metrics.PrometheusExporter;
+import org.im4ever12c.chaoscraft.schedule.TickThrottle;
+import org.im4ever12c.chaoscraft.schedule.TimingWheel;
+import org.im4ever12c.chaoscraft.traits.ProjectileStateTable;
+import org.im4ever12c.chaoscraft.util.RandomService;
+import org.im4ever12c.chaoscraft.world.AsyncChunks;
+import org.im4ever12c.chaoscraft.world.BlockEditQueue;
+import org.im4ever12c.chaoscraft.world.DestinationPool;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+import org.im4ever12c.chaoscraft.world.ExplosionPlanner;
+import org.im4ever12c.chaoscraft.world.SurfaceLocator;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
 
 public final class ChaosCraft extends JavaPlugin {
 
+    private RandomService randomService;
+    private ModifierSettings modifierSettings;
+    private ModifierMetrics modifierMetrics;
+    private HandlerMetrics handlerMetrics;
+    private TickThrottle tickThrottle;
+    private TimingWheel timingWheel;
+    private SurfaceLocator surfaceLocator;
+    private DestinationPool destinationPool;
+    private BlockEditQueue blockEditQueue;
+    private ExplosionPlanner explosionPlanner;
+    private ExplosionLimiter explosionLimiter;
+    private ChaosSpawner chaosSpawner;
+    private EntityRegistry entityRegistry;
+    private SpatialGrid spatialGrid;
+    private SpawnQueue spawnQueue;
+    private CountdownHolograms countdownHolograms;
+    private TeleportPipeline teleportPipeline;
+    private ExplosionEvents explosionEvents;
+
     @Override
     public void onEnable() {
+        saveDefaultConfig();
+        initializeRandom();
+        initializeHandlerMetrics();
+        initializeTimingWheel();
+        initializeSurfaces();
+        initializeBlockEdits();
+        initializeExplosionLimiter();
+        initializeSpawner();
+        initializeTeleports();
+        initializeThrottle();
         initializeListeners();
+        initializeModifierSettings();
+        initializeMetrics();
+    }
+
+    @Override
+    public void onDisable() {
+        if (explosionPlanner != null) {
+            explosionPlanner.shutdown();
+        }
+        if (blockEditQueue != null) {
+            blockEditQueue.cancelAll();
+        }
+        if (spawnQueue != null) {
+            spawnQueue.cancelAll();
+        }
+        if (teleportPipeline != null) {
+            teleportPipeline.cancelAll();
+        }
+        // Cancel delayed actions before removing the countdown displays they use.
+        if (timingWheel != null) {
+            timingWheel.cancelAll();
+        }
+        if (countdownHolograms != null) {
+            countdownHolograms.removeAll();
+        }
+    }
+
+    private void initializeRandom() {
+        if (getConfig().isSet("random.seed")) {
+            randomService = new RandomService(getConfig().getLong("random.seed"));
+        } else {
+            randomService = RandomService.unseeded();
+        }
+        // Always log the seed so an incident can be replayed by putting it in config.yml.
+        getLogger().info("Chaos random seed: " + randomService.getSeed());
+    }
+
+    private void initializeHandlerMetrics() {
+        // Every listener below registers through this and every ticking task is scheduled through it, so each
+        // event handler and task run is timed.
+        handlerMetrics = new HandlerMetrics(getConfig().getLong("metrics.slow-events.threshold-micros", 5000L),
+                getConfig().getInt("metrics.slow-events.kept", 256));
+    }
+
+    private void initializeTimingWheel() {
+        timingWheel = new TimingWheel(getLogger());
+        handlerMetrics.registerEvents(timingWheel, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(timingWheel), 1L, 1L);
+    }
+
+    private void initializeSurfaces() {
+        surfaceLocator = new SurfaceLocator(getConfig().getInt("surfaces.cached-chunks-per-world", 256));
+        handlerMetrics.registerEvents(surfaceLocator, this);
+        destinationPool = new DestinationPool(this, randomService.stream("destinations"),
+                getConfig().getInt("surfaces.destinations.pool-size", 16),
+                getConfig().getDouble("surfaces.destinations.spread", 5000.0),
+                getConfig().getInt("surfaces.destinations.fill-interval-ticks", 20),
+                getConfig().getLong("surfaces.destinations.max-age-seconds", 600L) * 20L);
+        getLogger().info(AsyncChunks.isSupported()
+                ? "Loading teleport destination chunks asynchronously"
+                : "No async chunk loading on this server, teleport destinations come from generated chunks only");
+        handlerMetrics.registerEvents(destinationPool, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(destinationPool), 1L, 1L);
+    }
+
+    private void initializeBlockEdits() {
+        blockEditQueue = new BlockEditQueue(getConfig().getLong("explosions.block-edit-budget-micros", 2000L), surfaceLocator);
+        handlerMetrics.registerEvents(blockEditQueue, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(blockEditQueue), 1L, 1L);
+        explosionPlanner = new ExplosionPlanner(this, blockEditQueue,
+                getConfig().getInt("explosions.planner-threads", 2),
+                getConfig().getInt("explosions.async-plan-threshold", 512));
+    }
+
+    private void initializeExplosionLimiter() {
+        explosionLimiter = new ExplosionLimiter(
+                getConfig().getInt("explosions.limiter.region-chunks", 8),
+                getConfig().getDouble("explosions.limiter.refill-per-second", 15.0),
+                getConfig().getDouble("explosions.limiter.burst", 90.0),
+                (float) getConfig().getDouble("explosions.limiter.downgraded-power", 2.0));
+    }
+
+    private void initializeSpawner() {
+        int[] chunkCaps = new int[MobCategory.values().length];
+        for (MobCategory category : MobCategory.values()) {
+            String key = "spawns.chunk-caps." + category.name().toLowerCase(Locale.ROOT);
+            chunkCaps[category.ordinal()] = getConfig().getInt(key, 16);
+        }
+        chaosSpawner = new ChaosSpawner(this, getConfig().getInt("spawns.max-lineage-depth", 3), chunkCaps);
+        for (World world : getServer().getWorlds()) {
+            chaosSpawner.loadLineage(world.getEntities());
+        }
+        handlerMetrics.registerEvents(chaosSpawner, this);
+        entityRegistry = new EntityRegistry(chaosSpawner);
+        for (World world : getServer().getWorlds()) {
+            entityRegistry.track(world);
+        }
+        handlerMetrics.registerEvents(entityRegistry, this);
+        spatialGrid = new SpatialGrid(entityRegistry, getConfig().getInt("entities.grid-cell-size", 8));
+        handlerMetrics.registerEvents(spatialGrid, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(spatialGrid), 1L, 1L);
+        spawnQueue = new SpawnQueue(chaosSpawner,
+                getConfig().getInt("spawns.queue.max-per-tick", 8),
+                getConfig().getLong("spawns.queue.budget-micros", 1000L),
+                getConfig().getInt("spawns.queue.max-pending-per-owner", 200));
+        handlerMetrics.registerEvents(spawnQueue, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(spawnQueue), 1L, 1L);
+        countdownHolograms = new CountdownHolograms(timingWheel, getConfig().getInt("countdowns.max-active", 32));
+        handlerMetrics.registerEvents(countdownHolograms, this);
+    }
+
+    private void initializeTeleports() {
+        Set<EntityType> skipped = EnumSet.noneOf(EntityType.class);
+        for (String name : getConfig().getStringList("time-skip.teleport-all.skip-types")) {
+            try {
+                skipped.add(EntityType.valueOf(name.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                getLogger().warning("Unknown entity type in time-skip.teleport-all.skip-types: " + name);
+            }
+        }
+        teleportPipeline = new TeleportPipeline(this, countdownHolograms, skipped,
+                getConfig().getBoolean("time-skip.teleport-all.skip-vehicles-with-passengers", true),
+                getConfig().getInt("time-skip.teleport-all.entities-per-tick", 100));
+        handlerMetrics.registerEvents(teleportPipeline, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(teleportPipeline), 1L, 1L);
+    }
+
+    private void initializeThrottle() {
+        if (!getConfig().getBoolean("throttle.enabled", true)) {
+            return;
+        }
+        tickThrottle = new TickThrottle(getServer(), getLogger(),
+                getConfig().getDouble("throttle.recover-mspt", 35.0),
+                getConfig().getDouble("throttle.start-mspt", 40.0),
+                getConfig().getDouble("throttle.full-mspt", 50.0),
+                getConfig().getDouble("throttle.min-scale", 0.1),
+                getConfig().getDouble("throttle.rise-per-second", 1.0),
+                getConfig().getDouble("throttle.fall-per-second", 0.1));
+        getServer().getScheduler().runTaskTimer(this, tickThrottle, 1L, 1L);
     }
 
     private void initializeListeners() {
-        PluginManager manager = getServer().getPluginManager();
-        manager.registerEvents(new ExplosionEvents(), this);
-        manager.registerEvents(new TimeSkipEvents(), this);
-        manager.registerEvents(new BreakBlockEvent(), this);
-        manager.registerEvents(new EntitySpawnEvents(), this);
-        manager.registerEvents(new EntityEvents(), this);
-        manager.registerEvents(new ProjectileFireEvents(this), this);
-    }
-}
\ No newline at end of file
+        // Each listener registers its modifiers here; they run on the defaults until the settings are loaded.
+        modifierSettings = new ModifierSettings(tickThrottle);
+        modifierMetrics = new ModifierMetrics();
+        explosionEvents = new ExplosionEvents(randomService.stream("explosions"), modifierSettings,
+                modifierMetrics, explosionPlanner, explosionLimiter, spatialGrid, spawnQueue,
+                getConfig().getDouble("explosions.merge-distance", 8.0));
+        handlerMetrics.registerEvents(explosionEvents, this);
+        getServer().getScheduler().runTaskTimer(this, handlerMetrics.time(explosionEvents), 1L, 1L);
+        handlerMetrics.registerEvents(new TimeSkipEvents(randomService.stream("time-skip"), modifierSettings,
+                modifierMetrics, teleportPipeline, destinationPool, spawnQueue, surfaceLocator, entityRegistry), this);
+        handlerMetrics.registerEvents(new BreakBlockEvent(randomService.stream("block-break"), modifierSettings,
+                modifierMetrics, chaosSpawner, countdownHolograms, explosionLimiter), this);
+        handlerMetrics.registerEvents(new EntitySpawnEvents(randomService.stream("entity-spawn"), modifierSettings,
+                modifierMetrics, chaosSpawner, countdownHolograms, explosionLimiter), this);
+        EntityEvents entityEvents = new EntityEvents(this, randomService.stream("entity-traits"), modifierSettings,
+                modifierMetrics, explosionLimiter, spawnQueue, countdownHolograms, timingWheel, spatialGrid);
+        for (World world : getServer().getWorlds()) {
+            entityEvents.loadTraits(world.getLivingEntities());
+        }
+        handlerMetrics.registerEvents(entityEvents, this);
+        handlerMetrics.registerEvents(new ProjectileFireEvents(randomService.stream("projectile-fire"),
+                modifierSettings, modifierMetrics, new ProjectileStateTable(), explosionLimiter, spawnQueue), this);
+        handlerMetrics.registerEvents(new ProjectileHitEvents(randomService.stream("projectile-hit"),
+                modifierSettings, modifierMetrics, explosionLimiter, spatialGrid, surfaceLocator, spawnQueue,
+                chaosSpawner, timingWheel), this);
+    }
+
+    private void initializeModifierSettings() {
+        try {
+            modifierSettings.load(getConfig());
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Invalid modifier or intensity settings in config.yml, using the defaults: " + e.getMessage());
+        }
+        getCommand("chaos").setExecutor(new ChaosCommand(this, modifierSettings, modifierMetrics, handlerMetrics,
+                tickThrottle, explosionLimiter));
+    }
+
+    private void initializeMetrics() {
+        // Rates and the export only read the counters, so neither needs the main thread.
+        long tickPeriod = ModifierMetrics.TICK_SECONDS * 20L;
+        getServer().getScheduler().runTaskTimerAsynchronously(this, modifierMetrics, tickPeriod, tickPeriod);
+        String file = getConfig().getString("metrics.prometheus-file", "chaoscraft.prom");
+        if (file == null || file.isEmpty()) {
+            return;
+        }
+        File target = new File(file);
+        if (!target.isAbsolute()) {
+            target = new File(getDataFolder(), file);
+        }
+        long exportPeriod = Math.max(1L, getConfig().getLong("metrics.prometheus-interval-seconds", 15L)) * 20L;
+        PrometheusExporter exporter = new PrometheusExporter(modifierMetrics, handlerMetrics, tickThrottle,
+                target.toPath(), getLogger());
+        exportComponents(exporter);
+        // Main-thread values are copied a tick before each write.
+        getServer().getScheduler().runTaskTimer(this, exporter::sample, exportPeriod - 1L, exportPeriod);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, exporter, exportPeriod, exportPeriod);
+    }
+
+    private void exportComponents(PrometheusExporter exporter) {
+        exporter.counter("chaoscraft_explosions_allowed_total", "Chaos explosions created at full power.",
+                        explosionLimiter::getAllowed)
+                .counter("chaoscraft_explosions_downgraded_total", "Chaos explosions downgraded to a block-safe one.",
+                        explosionLimiter::getDowngraded)
+                .counter("chaoscraft_explosions_dropped_total", "Chaos explosions not created at all.",
+                        explosionLimiter::getDropped)
+                .counter("chaoscraft_explosion_effects_refused_total", "Other chaos effects refused by the limiter.",
+                        explosionLimiter::getRefused)
+                .gauge("chaoscraft_explosion_limiter_regions", "Regions the explosion limiter tracks.",
+                        explosionLimiter::getTrackedRegions)
+                .gauge("chaoscraft_block_edits_pending", "Block edits waiting in the queue.",
+                        blockEditQueue::getPendingEdits)
+                .gauge("chaoscraft_block_edit_jobs_pending", "Block edit jobs waiting in the queue.",
+                        blockEditQueue::getPendingJobs)
+                .gauge("chaoscraft_block_edits_drain_per_second", "Smoothed rate the block edit queue drains at.",
+                        blockEditQueue::getDrainRatePerSecond)
+                .counter("chaoscraft_block_edits_applied_total", "Block edits applied.",
+                        blockEditQueue::getTotalApplied)
+                .counter("chaoscraft_block_edits_skipped_total", "Block edits skipped (chunk unloaded or target changed).",
+                        blockEditQueue::getTotalSkipped)
+                .counter("chaoscraft_block_edits_cancelled_total", "Block edits cancelled with their chunk or world.",
+                        blockEditQueue::getTotalCancelled)
+                .gauge("chaoscraft_delayed_actions_pending", "Delayed actions scheduled on the timing wheel.",
+                        timingWheel::getPending)
+                .counter("chaoscraft_delayed_actions_fired_total", "Delayed actions run.", timingWheel::getTotalFired)
+                .counter("chaoscraft_delayed_actions_cancelled_total", "Delayed actions cancelled.",
+                        timingWheel::getTotalCancelled)
+                .gauge("chaoscraft_delayed_action_lateness_ms", "Smoothed delay between when actions were due and ran.",
+                        timingWheel::getAverageLatenessMillis)
+                .gauge("chaoscraft_delayed_action_max_lateness_ms", "Worst action lateness since the previous export.",
+                        timingWheel::takeMaxLatenessMillis)
+                .counter("chaoscraft_surface_cache_hits_total", "Surface lookups answered from a cached heightmap.",
+                        surfaceLocator::getHits)
+                .counter("chaoscraft_surface_cache_misses_total", "Surface lookups that took a chunk snapshot.",
+                        surfaceLocator::getMisses)
+                .counter("chaoscraft_surface_cache_stale_refreshes_total",
+                        "Surface lookups that re-read a column changed since it was cached.",
+                        surfaceLocator::getStaleRefreshes)
+                .counter("chaoscraft_surface_rejected_unsafe_total", "Surface candidates rejected as unsafe.",
+                        surfaceLocator::getRejectedUnsafe)
+                .gauge("chaoscraft_surface_cache_chunks", "Chunk heightmaps cached.", surfaceLocator::getCachedChunks)
+                .counter("chaoscraft_explosion_clusters_applied_total", "Explosion clusters that got one chaos effect.",
+                        explosionEvents.getAggregator()::getClustersApplied)
+                .counter("chaoscraft_explosions_merged_total",
+                        "Explosions merged into a cluster instead of getting an effect of their own.",
+                        explosionEvents.getAggregator()::getExplosionsMerged)
+                .gauge("chaoscraft_chaos_entities_tracked", "Chaos-spawned entities alive and tracked.",
+                        chaosSpawner::getTracked)
+                .counter("chaoscraft_chaos_entities_spawned_total", "Entities spawned by chaos.",
+                        chaosSpawner::getSpawned)
+                .counter("chaoscraft_spawns_refused_depth_total", "Chaos spawns refused for too deep a lineage.",
+                        chaosSpawner::getRefusedDepth)
+                .counter("chaoscraft_spawns_refused_cap_total", "Chaos spawns refused by a chunk category cap.",
+                        chaosSpawner::getRefusedCap)
+                .gauge("chaoscraft_spawn_queue_pending", "Spawns waiting in the spawn queue.", spawnQueue::getPending)
+                .counter("chaoscraft_spawn_queue_spawned_total", "Queued spawns spawned.", spawnQueue::getTotalSpawned)
+                .counter("chaoscraft_spawn_queue_refused_total",
+                        "Queued spawns refused when drained (chunk unloaded, lineage, cap or cancelled).",
+                        spawnQueue::getTotalRefused)
+                .counter("chaoscraft_spawn_queue_cancelled_total", "Queued spawns cancelled.",
+                        spawnQueue::getTotalCancelled)
+                .counter("chaoscraft_spawn_queue_overflowed_total",
+                        "Spawns refused at submit because their owner had too many queued.",
+                        spawnQueue::getTotalOverflowed);
+    }
+
+    public RandomService getRandomService() {
+        return randomService;
+    }
+
+    public ModifierSettings getModifierSettings() {
+        return modifierSettings;
+    }
+
+    public ModifierMetrics getModifierMetrics() {
+        return modifierMetrics;
+    }
+
+    public HandlerMetrics getHandlerMetrics() {
+        return handlerMetrics;
+    }
+
+    /** Null when throttling is disabled in config.yml. */
+    public TickThrottle getTickThrottle() {
+        return tickThrottle;
+    }
+
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    public SurfaceLocator getSurfaceLocator() {
+        return surfaceLocator;
+    }
+
+    public DestinationPool getDestinationPool() {
+        return destinationPool;
+    }
+
+    public BlockEditQueue getBlockEditQueue() {
+        return blockEditQueue;
+    }
+
+    public ExplosionLimiter getExplosionLimiter() {
+        return explosionLimiter;
+    }
+
+    public ChaosSpawner getChaosSpawner() {
+        return chaosSpawner;
+    }
+
+    public EntityRegistry getEntityRegistry() {
+        return entityRegistry;
+    }
+
+    public SpatialGrid getSpatialGrid() {
+        return spatialGrid;
+    }
+
+    public SpawnQueue getSpawnQueue() {
+        return spawnQueue;
+    }
+
+    public CountdownHolograms getCountdownHolograms() {
+        return countdownHolograms;
+    }
+
+    public TeleportPipeline getTeleportPipeline() {
+        return teleportPipeline;
+    }
+}
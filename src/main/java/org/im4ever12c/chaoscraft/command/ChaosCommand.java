@@ -0,0 +1,271 @@
+/*
+    @CLASS-TITLE: ChaosCommand.java
+    @CLASS-DESCRIPTION: The /chaos admin command.
+    "/chaos reload" re-reads config.yml and swaps in the new modifier settings (weights, enabled flags, value
+    ranges) and intensity profiles. If anything in them is invalid the sender is told what, and the running
+    settings stay as they were.
+    "/chaos stats [group]" shows how often each modifier was applied (per minute, averaged over the last 1, 5 and
+    15 minutes) and what it cost: the busiest modifiers overall, or every applied modifier of one group. It
+    starts with the server's MSPT and how far expensive modifiers are being throttled, then what the explosion
+    limiter did and its most depleted regions.
+    "/chaos latency [all]" shows the p50, p99 and longest call of the slowest event handlers and ticking tasks
+    (or of all). "/chaos slow [dump]" lists the latest handler calls and task runs over the slow-event
+    threshold, with the modifier behind each; "dump" writes every slow event kept to a file in the plugin
+    folder instead.
+ */
+
+package org.im4ever12c.chaoscraft.command;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.plugin.Plugin;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.metrics.HandlerMetrics;
+import org.im4ever12c.chaoscraft.metrics.LatencyHistogram;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.metrics.SlowEvent;
+import org.im4ever12c.chaoscraft.schedule.TickThrottle;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+public final class ChaosCommand implements TabExecutor {
+
+    private static final List<String> SUBCOMMANDS = Arrays.asList("reload", "stats", "latency", "slow");
+    // Modifiers listed by "/chaos stats" without a group.
+    private static final int TOP_MODIFIERS = 10;
+    // Explosion limiter regions listed by "/chaos stats".
+    private static final int DEPLETED_REGIONS = 3;
+    // Handlers listed by "/chaos latency" without "all".
+    private static final int TOP_HANDLERS = 10;
+    // Slow events listed by "/chaos slow".
+    private static final int LATEST_SLOW_EVENTS = 10;
+    private static final DateTimeFormatter DUMP_NAME =
+            DateTimeFormatter.ofPattern("'slow-events-'yyyyMMdd-HHmmss'.log'");
+
+    private final Plugin plugin;
+    private final ModifierSettings settings;
+    private final ModifierMetrics metrics;
+    private final HandlerMetrics handlers;
+    // Null when throttling is disabled.
+    private final TickThrottle throttle;
+    private final ExplosionLimiter limiter;
+
+    public ChaosCommand(Plugin plugin, ModifierSettings settings, ModifierMetrics metrics, HandlerMetrics handlers,
+                        TickThrottle throttle, ExplosionLimiter limiter) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.handlers = handlers;
+        this.throttle = throttle;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "reload":
+                reload(sender);
+                return true;
+            case "stats":
+                stats(sender, args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : null);
+                return true;
+            case "latency":
+                latency(sender, args.length > 1 && args[1].equalsIgnoreCase("all"));
+                return true;
+            case "slow":
+                if (args.length > 1 && args[1].equalsIgnoreCase("dump")) {
+                    dumpSlowEvents(sender);
+                } else {
+                    slowEvents(sender);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void reload(CommandSender sender) {
+        plugin.reloadConfig();
+        try {
+            settings.load(plugin.getConfig());
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage("Modifier settings not reloaded, nothing changed: " + e.getMessage());
+            return;
+        }
+        plugin.getLogger().info(sender.getName() + " reloaded the modifier settings");
+        sender.sendMessage("Modifier settings reloaded (" + settings.getProfiles().size()
+                + " intensity profiles). Other settings in config.yml apply after a restart.");
+    }
+
+    private void stats(CommandSender sender, String group) {
+        if (group != null && !metrics.getGroups().contains(group)) {
+            sender.sendMessage("Unknown modifier group " + group + ", expected one of " + metrics.getGroups());
+            return;
+        }
+        if (throttle == null) {
+            sender.sendMessage("Throttling of expensive modifiers is disabled.");
+        } else {
+            sender.sendMessage(String.format(Locale.ROOT,
+                    "%.1f mspt%s, expensive modifiers throttled %.0f%% (weights x%.2f), %d ticks throttled",
+                    throttle.getMspt(), throttle.isReportedMspt() ? "" : " (estimated from late ticks)",
+                    throttle.getLevel() * 100.0, throttle.getScale(), throttle.getThrottledTicks()));
+        }
+        limiterStats(sender);
+        List<ModifierCounters> applied = new ArrayList<>();
+        for (ModifierCounters counters : metrics.getCounters()) {
+            if ((group == null || counters.getGroup().equals(group)) && counters.getApplications() > 0) {
+                applied.add(counters);
+            }
+        }
+        if (applied.isEmpty()) {
+            sender.sendMessage("No modifiers applied yet.");
+            return;
+        }
+        applied.sort((a, b) -> a.getRate1() != b.getRate1() ? Double.compare(b.getRate1(), a.getRate1())
+                : Long.compare(b.getApplications(), a.getApplications()));
+        int shown = group == null ? Math.min(TOP_MODIFIERS, applied.size()) : applied.size();
+        sender.sendMessage("Applications per minute over 1m / 5m / 15m, total, average time, what they did:");
+        for (ModifierCounters counters : applied.subList(0, shown)) {
+            sender.sendMessage(String.format(Locale.ROOT,
+                    "%s %s: %.1f / %.1f / %.1f, %d total, %.1f \u00b5s, %d entities, %d blocks, %d explosions",
+                    counters.getGroup(), counters.getModifier(),
+                    counters.getRate1() * 60.0, counters.getRate5() * 60.0, counters.getRate15() * 60.0,
+                    counters.getApplications(), counters.getNanos() / 1000.0 / counters.getApplications(),
+                    counters.getEntities(), counters.getBlocks(), counters.getExplosions()));
+        }
+        if (shown < applied.size()) {
+            sender.sendMessage((applied.size() - shown) + " more; /chaos stats <group> lists every modifier of "
+                    + "a group.");
+        }
+    }
+
+    private void latency(CommandSender sender, boolean all) {
+        List<HandlerMetrics.Handler> called = new ArrayList<>();
+        for (HandlerMetrics.Handler handler : handlers.getHandlers()) {
+            if (handler.getLatency().getCount() > 0) {
+                called.add(handler);
+            }
+        }
+        if (called.isEmpty()) {
+            sender.sendMessage("No event handled yet.");
+            return;
+        }
+        called.sort(Comparator.comparingLong(
+                (HandlerMetrics.Handler handler) -> handler.getLatency().getPercentile(0.99)).reversed());
+        int shown = all ? called.size() : Math.min(TOP_HANDLERS, called.size());
+        sender.sendMessage("Event handlers and tasks by p99, with calls, p50, p99 and the longest call:");
+        for (HandlerMetrics.Handler handler : called.subList(0, shown)) {
+            LatencyHistogram latency = handler.getLatency();
+            sender.sendMessage(String.format(Locale.ROOT, "%s: %d calls, p50 %s, p99 %s, max %s", handler.getName(),
+                    latency.getCount(), duration(latency.getPercentile(0.5)), duration(latency.getPercentile(0.99)),
+                    duration(latency.getMax())));
+        }
+        if (shown < called.size()) {
+            sender.sendMessage((called.size() - shown) + " more; /chaos latency all lists every handler.");
+        }
+    }
+
+    private void slowEvents(CommandSender sender) {
+        List<SlowEvent> events = handlers.getSlowEvents();
+        if (events.isEmpty()) {
+            sender.sendMessage("No event handler or task took " + duration(handlers.getSlowNanos()) + " or more yet.");
+            return;
+        }
+        int shown = Math.min(LATEST_SLOW_EVENTS, events.size());
+        sender.sendMessage(String.format(Locale.ROOT,
+                "%d handler calls took %s or more, %d kept; the latest, newest first (/chaos slow dump for all):",
+                handlers.getTotalSlowEvents(), duration(handlers.getSlowNanos()), events.size()));
+        for (int i = events.size() - 1; i >= events.size() - shown; i--) {
+            sender.sendMessage(events.get(i).toString());
+        }
+    }
+
+    private void dumpSlowEvents(CommandSender sender) {
+        List<SlowEvent> events = handlers.getSlowEvents();
+        if (events.isEmpty()) {
+            sender.sendMessage("No slow events to dump.");
+            return;
+        }
+        List<String> lines = new ArrayList<>(events.size());
+        for (SlowEvent event : events) {
+            lines.add(event.toString());
+        }
+        File file = new File(plugin.getDataFolder(), LocalDateTime.now().format(DUMP_NAME));
+        // Write off the main thread, then answer on it.
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            String result;
+            try {
+                Files.createDirectories(file.toPath().getParent());
+                Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+                result = "Wrote " + lines.size() + " slow events to " + file;
+            } catch (IOException e) {
+                result = "Could not write the slow events to " + file + ": " + e;
+            }
+            String message = result;
+            plugin.getServer().getScheduler().runTask(plugin, () -> sender.sendMessage(message));
+        });
+    }
+
+    private static String duration(long nanos) {
+        return nanos < 1_000_000L ? String.format(Locale.ROOT, "%.0f \u00b5s", nanos / 1000.0)
+                : String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000.0);
+    }
+
+    private void limiterStats(CommandSender sender) {
+        List<ExplosionLimiter.RegionState> regions = limiter.snapshot();
+        sender.sendMessage(String.format(Locale.ROOT,
+                "Explosion limiter: %d allowed, %d downgraded, %d dropped, %d other effects refused, %d regions",
+                limiter.getAllowed(), limiter.getDowngraded(), limiter.getDropped(), limiter.getRefused(),
+                regions.size()));
+        for (ExplosionLimiter.RegionState region : regions.subList(0, Math.min(DEPLETED_REGIONS, regions.size()))) {
+            sender.sendMessage(String.format(Locale.ROOT,
+                    "  %s region %d,%d: %.1f / %.0f tokens, %d allowed, %d downgraded, %d dropped, %d refused",
+                    region.getWorld(), region.getRegionX(), region.getRegionZ(), region.getTokens(), limiter.getBurst(),
+                    region.getAllowed(), region.getDowngraded(), region.getDropped(), region.getRefused()));
+        }
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1) {
+            return matching(SUBCOMMANDS, args[0]);
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+            return matching(metrics.getGroups(), args[1]);
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("latency")) {
+            return matching(Collections.singletonList("all"), args[1]);
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("slow")) {
+            return matching(Collections.singletonList("dump"), args[1]);
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<String> matching(List<String> options, String prefix) {
+        List<String> matches = new ArrayList<>();
+        for (String option : options) {
+            if (option.startsWith(prefix.toLowerCase(Locale.ROOT))) {
+                matches.add(option);
+            }
+        }
+        return matches;
+    }
+}
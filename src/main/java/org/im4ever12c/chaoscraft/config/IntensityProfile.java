@@ -0,0 +1,59 @@
+/*
+    @CLASS-TITLE: IntensityProfile.java
+    @CLASS-DESCRIPTION: A named set of changes to the modifier settings (config.yml "intensity.profiles"), applied
+    on top of the "modifiers" section wherever the profile is assigned: value ranges scaled by range-scale, then
+    the profile's own modifier overrides (same layout as "modifiers"). A profile with enabled: false turns every
+    modifier off.
+ */
+
+package org.im4ever12c.chaoscraft.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+final class IntensityProfile {
+
+    /** The profile used wherever no other is assigned: the "modifiers" section as it is. */
+    static final IntensityProfile DEFAULT = new IntensityProfile("default", true, 1.0, null);
+
+    private static final String ENABLED = "enabled";
+    private static final String RANGE_SCALE = "range-scale";
+    private static final String MODIFIERS = "modifiers";
+
+    final String name;
+    final boolean enabled;
+    final double rangeScale;
+    // Per-group overrides, or null.
+    final ConfigurationSection modifiers;
+
+    private IntensityProfile(String name, boolean enabled, double rangeScale, ConfigurationSection modifiers) {
+        this.name = name;
+        this.enabled = enabled;
+        this.rangeScale = rangeScale;
+        this.modifiers = modifiers;
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the offending path if the section is invalid
+     */
+    static IntensityProfile parse(String name, ConfigurationSection section) {
+        for (String key : section.getKeys(false)) {
+            if (!key.equals(ENABLED) && !key.equals(RANGE_SCALE) && !key.equals(MODIFIERS)) {
+                throw new IllegalArgumentException(section.getCurrentPath() + "." + key + ": unknown setting");
+            }
+        }
+        double rangeScale = 1.0;
+        if (section.contains(RANGE_SCALE)) {
+            Object value = section.get(RANGE_SCALE);
+            rangeScale = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            if (!(rangeScale > 0.0) || Double.isInfinite(rangeScale)) {
+                throw new IllegalArgumentException(section.getCurrentPath() + "." + RANGE_SCALE
+                        + ": expected a number > 0, got " + value);
+            }
+        }
+        if (section.contains(MODIFIERS) && !section.isConfigurationSection(MODIFIERS)) {
+            throw new IllegalArgumentException(section.getCurrentPath() + "." + MODIFIERS + ": expected a section");
+        }
+        return new IntensityProfile(name, section.getBoolean(ENABLED, true), rangeScale,
+                section.getConfigurationSection(MODIFIERS));
+    }
+}
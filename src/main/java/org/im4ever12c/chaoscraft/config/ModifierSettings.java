@@ -0,0 +1,309 @@
+/*
+    @CLASS-TITLE: ModifierSettings.java
+    @CLASS-DESCRIPTION: The current weights, enabled flags and value ranges of every modifier enum, per intensity
+    profile, as one immutable snapshot behind a single volatile reference. Listeners register their modifier enum
+    under a config.yml key (starting out with the built-in defaults) and, once per event, fetch the table of the
+    profile that applies where the event happened. Profiles are assigned per world and per region rectangle;
+    loading precomputes each world's chunk-to-profile grid (see ProfileGrid), so finding the profile is one map
+    lookup for the world and one array read for the chunk. Loading compiles everything first and only then swaps
+    the snapshot in, so an invalid file changes nothing and an event never sees a half-applied reload.
+ */
+
+package org.im4ever12c.chaoscraft.config;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.im4ever12c.chaoscraft.schedule.TickThrottle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class ModifierSettings {
+
+    // Profile indices are stored in a byte per chunk.
+    private static final int MAX_PROFILES = 127;
+
+    // Null when expensive modifiers are never throttled.
+    private final TickThrottle throttle;
+    private final List<Group<?>> groups = new ArrayList<>();
+    private volatile Snapshot snapshot = new Snapshot(new ModifierTable<?>[][] { new ModifierTable<?>[0] },
+            Collections.<String>emptyList(), Collections.<String, ProfileGrid>emptyMap());
+    // What the current snapshot was compiled from, for groups registered after a load.
+    private ConfigurationSection modifiers;
+    private List<IntensityProfile> profiles = Collections.singletonList(IntensityProfile.DEFAULT);
+    private long reloads;
+
+    public ModifierSettings() {
+        this(null);
+    }
+
+    /** @param throttle scales the weights of expensive modifiers in every table, or null to never throttle */
+    public ModifierSettings(TickThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Registers a modifier enum under the given key of the "modifiers" section, with the settings last loaded
+     * (the defaults before the first {@link #load}). Main thread only.
+     */
+    public <E extends Enum<E> & ModifierSpec> Group<E> register(String key, E[] modifiers) {
+        for (Group<?> group : groups) {
+            if (group.key.equals(key)) {
+                throw new IllegalArgumentException("Modifier group already registered: " + key);
+            }
+        }
+        Group<E> group = new Group<>(this, key, modifiers, groups.size());
+        groups.add(group);
+        Snapshot current = snapshot;
+        ModifierTable<?>[][] tables = new ModifierTable<?>[profiles.size()][];
+        for (int p = 0; p < tables.length; p++) {
+            tables[p] = new ModifierTable<?>[groups.size()];
+            System.arraycopy(current.tables[p], 0, tables[p], 0, group.index);
+            tables[p][group.index] = group.compile(this.modifiers, profiles.get(p));
+        }
+        snapshot = new Snapshot(tables, current.profileNames, current.worlds);
+        return group;
+    }
+
+    /**
+     * Compiles every registered group, for every intensity profile, from the "modifiers" and "intensity" sections
+     * of the configuration (null for all defaults) and makes the result current. Main thread only.
+     *
+     * @throws IllegalArgumentException if anything in those sections is invalid; the current settings are kept
+     */
+    public void load(ConfigurationSection config) {
+        ConfigurationSection modifiers = config == null ? null : section(config, "modifiers");
+        checkGroups(modifiers);
+        ConfigurationSection intensity = config == null ? null : section(config, "intensity");
+
+        // Profile 0 is the plain "modifiers" section.
+        List<IntensityProfile> profiles = new ArrayList<>();
+        profiles.add(IntensityProfile.DEFAULT);
+        Map<String, Integer> profileIndex = new HashMap<>();
+        profileIndex.put(IntensityProfile.DEFAULT.name, 0);
+        Map<String, Integer> worldProfiles = new LinkedHashMap<>();
+        Map<String, List<ProfileGrid.Region>> worldRegions = new LinkedHashMap<>();
+        if (intensity != null) {
+            for (String key : intensity.getKeys(false)) {
+                if (!key.equals("profiles") && !key.equals("worlds") && !key.equals("regions")) {
+                    throw new IllegalArgumentException(intensity.getCurrentPath() + "." + key + ": unknown setting");
+                }
+            }
+            ConfigurationSection profileSection = section(intensity, "profiles");
+            if (profileSection != null) {
+                for (String name : profileSection.getKeys(false)) {
+                    if (profileIndex.containsKey(name)) {
+                        throw new IllegalArgumentException(profileSection.getCurrentPath() + "." + name
+                                + ": the default profile is the \"modifiers\" section and cannot be redefined");
+                    }
+                    if (profiles.size() == MAX_PROFILES) {
+                        throw new IllegalArgumentException(profileSection.getCurrentPath() + ": more than "
+                                + (MAX_PROFILES - 1) + " profiles");
+                    }
+                    IntensityProfile profile = IntensityProfile.parse(name, section(profileSection, name));
+                    checkGroups(profile.modifiers);
+                    profileIndex.put(name, profiles.size());
+                    profiles.add(profile);
+                }
+            }
+            ConfigurationSection worlds = section(intensity, "worlds");
+            if (worlds != null) {
+                for (String world : worlds.getKeys(false)) {
+                    worldProfiles.put(world, profile(profileIndex, worlds.getCurrentPath() + "." + world,
+                            worlds.getString(world)));
+                }
+            }
+            if (intensity.contains("regions") && !intensity.isList("regions")) {
+                throw new IllegalArgumentException(intensity.getCurrentPath() + ".regions: expected a list");
+            }
+            List<Map<?, ?>> regions = intensity.getMapList("regions");
+            for (int i = 0; i < regions.size(); i++) {
+                String path = intensity.getCurrentPath() + ".regions[" + i + "]";
+                Map<?, ?> region = regions.get(i);
+                Object world = region.get("world");
+                if (!(world instanceof String)) {
+                    throw new IllegalArgumentException(path + ".world: expected a world name");
+                }
+                int profile = profile(profileIndex, path + ".profile", region.get("profile"));
+                int[] from = corner(path + ".from", region.get("from"));
+                int[] to = corner(path + ".to", region.get("to"));
+                worldRegions.computeIfAbsent((String) world, k -> new ArrayList<>()).add(new ProfileGrid.Region(
+                        Math.min(from[0], to[0]) >> 4, Math.min(from[1], to[1]) >> 4,
+                        Math.max(from[0], to[0]) >> 4, Math.max(from[1], to[1]) >> 4, profile));
+            }
+        }
+
+        Map<String, ProfileGrid> grids = new HashMap<>();
+        for (String world : worldProfiles.keySet()) {
+            grids.put(world, new ProfileGrid(world, worldProfiles.get(world), Collections.<ProfileGrid.Region>emptyList()));
+        }
+        for (Map.Entry<String, List<ProfileGrid.Region>> entry : worldRegions.entrySet()) {
+            Integer worldProfile = worldProfiles.get(entry.getKey());
+            grids.put(entry.getKey(), new ProfileGrid(entry.getKey(), worldProfile == null ? 0 : worldProfile, entry.getValue()));
+        }
+        ModifierTable<?>[][] tables = new ModifierTable<?>[profiles.size()][groups.size()];
+        List<String> names = new ArrayList<>();
+        for (int p = 0; p < profiles.size(); p++) {
+            names.add(profiles.get(p).name);
+            for (Group<?> group : groups) {
+                tables[p][group.index] = group.compile(modifiers, profiles.get(p));
+            }
+        }
+        snapshot = new Snapshot(tables, names, grids);
+        this.modifiers = modifiers;
+        this.profiles = profiles;
+        reloads++;
+    }
+
+    private void checkGroups(ConfigurationSection section) {
+        if (section == null) {
+            return;
+        }
+        for (String key : section.getKeys(false)) {
+            if (!isRegistered(key)) {
+                throw new IllegalArgumentException(section.getCurrentPath() + "." + key + ": unknown modifier group");
+            }
+            section(section, key);
+        }
+    }
+
+    private boolean isRegistered(String key) {
+        for (Group<?> group : groups) {
+            if (group.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ConfigurationSection section(ConfigurationSection parent, String key) {
+        if (parent.contains(key) && !parent.isConfigurationSection(key)) {
+            throw new IllegalArgumentException(parent.getCurrentPath() + "." + key + ": expected a section");
+        }
+        return parent.getConfigurationSection(key);
+    }
+
+    private static int profile(Map<String, Integer> profileIndex, String path, Object name) {
+        Integer index = profileIndex.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException(path + ": unknown profile " + name);
+        }
+        return index;
+    }
+
+    // A corner is block coordinates [x, z].
+    private static int[] corner(String path, Object value) {
+        if (value instanceof List && ((List<?>) value).size() == 2
+                && ((List<?>) value).get(0) instanceof Number && ((List<?>) value).get(1) instanceof Number) {
+            List<?> xz = (List<?>) value;
+            return new int[] { (int) Math.floor(((Number) xz.get(0)).doubleValue()),
+                    (int) Math.floor(((Number) xz.get(1)).doubleValue()) };
+        }
+        throw new IllegalArgumentException(path + ": expected block coordinates [x, z], got " + value);
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Times the settings were loaded from config.yml. */
+    public long getReloads() {
+        return reloads;
+    }
+
+    /** Names of the intensity profiles, the default one first. */
+    public List<String> getProfiles() {
+        return snapshot.profileNames;
+    }
+
+    /** Name of the intensity profile that applies in the chunk. */
+    public String getProfile(World world, int chunkX, int chunkZ) {
+        Snapshot current = snapshot;
+        return current.profileNames.get(current.profileAt(world, chunkX, chunkZ));
+    }
+
+    /** Everything one load produced. Never modified once published. */
+    private static final class Snapshot {
+        // [profile][group]
+        final ModifierTable<?>[][] tables;
+        final List<String> profileNames;
+        // By world name; worlds without profiles or regions are not in here.
+        final Map<String, ProfileGrid> worlds;
+
+        Snapshot(ModifierTable<?>[][] tables, List<String> profileNames, Map<String, ProfileGrid> worlds) {
+            this.tables = tables;
+            this.profileNames = Collections.unmodifiableList(profileNames);
+            this.worlds = worlds;
+        }
+
+        int profileAt(World world, int chunkX, int chunkZ) {
+            if (world == null || worlds.isEmpty()) {
+                return 0;
+            }
+            ProfileGrid grid = worlds.get(world.getName());
+            return grid == null ? 0 : grid.profileAt(chunkX, chunkZ);
+        }
+
+        int worldProfile(World world) {
+            if (world == null || worlds.isEmpty()) {
+                return 0;
+            }
+            ProfileGrid grid = worlds.get(world.getName());
+            return grid == null ? 0 : grid.worldProfile();
+        }
+    }
+
+    /**
+     * One registered modifier enum; hands out its tables from the current snapshot. Read a table once per
+     * event and use it throughout.
+     */
+    public static final class Group<E extends Enum<E> & ModifierSpec> {
+        private final ModifierSettings settings;
+        private final String key;
+        private final E[] modifiers;
+        private final int index;
+
+        private Group(ModifierSettings settings, String key, E[] modifiers, int index) {
+            this.settings = settings;
+            this.key = key;
+            this.modifiers = modifiers;
+            this.index = index;
+        }
+
+        private ModifierTable<E> compile(ConfigurationSection section, IntensityProfile profile) {
+            return ModifierTable.compile(modifiers, key, section, profile, settings.throttle);
+        }
+
+        /** The table of the default profile. */
+        @SuppressWarnings("unchecked")
+        public ModifierTable<E> current() {
+            return (ModifierTable<E>) settings.snapshot.tables[0][index];
+        }
+
+        /** The table of the profile assigned to the world as a whole (regions aside). */
+        @SuppressWarnings("unchecked")
+        public ModifierTable<E> in(World world) {
+            Snapshot current = settings.snapshot;
+            return (ModifierTable<E>) current.tables[current.worldProfile(world)][index];
+        }
+
+        /** The table of the profile that applies in the chunk. */
+        @SuppressWarnings("unchecked")
+        public ModifierTable<E> at(World world, int chunkX, int chunkZ) {
+            Snapshot current = settings.snapshot;
+            return (ModifierTable<E>) current.tables[current.profileAt(world, chunkX, chunkZ)][index];
+        }
+
+        /** The table of the profile that applies at the location. */
+        public ModifierTable<E> at(Location location) {
+            return at(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+}
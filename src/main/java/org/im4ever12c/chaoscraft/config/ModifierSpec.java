@@ -0,0 +1,26 @@
+/*
+    @CLASS-TITLE: ModifierSpec.java
+    @CLASS-DESCRIPTION: Implemented by the modifier enums so their built-in weights and value ranges can be
+    overridden from config.yml (see ModifierSettings).
+ */
+
+package org.im4ever12c.chaoscraft.config;
+
+public interface ModifierSpec {
+
+    String name();
+
+    /** Default weight; for modifiers that are rolled on their own, the default chance. */
+    double getRarity();
+
+    /** Default value ranges. A modifier finds its configured ranges at the same positions. */
+    Range[] getRanges();
+
+    /**
+     * True if the modifier is costly for the server (many entities, explosions, mass block changes), so its weight
+     * is scaled down while the server is falling behind (see TickThrottle). config.yml can override this.
+     */
+    default boolean isExpensive() {
+        return false;
+    }
+}
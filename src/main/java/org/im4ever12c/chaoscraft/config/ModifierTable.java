@@ -0,0 +1,238 @@
+/*
+    @CLASS-TITLE: ModifierTable.java
+    @CLASS-DESCRIPTION: The compiled settings of one modifier enum: a weight per modifier (0 when disabled), the
+    alias-table sampler built from them, and each modifier's value ranges. Built once from config.yml when the
+    settings are (re)loaded, so picking and configuring a modifier on an event never reads the configuration.
+    Throttled (expensive) modifiers have samplers of their own: while the TickThrottle holds them back, a draw
+    first picks throttled or not with their weights scaled, then draws within that side, so the odds follow the
+    throttle exactly without rebuilding anything. Immutable; the arrays handed out must not be modified.
+ */
+
+package org.im4ever12c.chaoscraft.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.im4ever12c.chaoscraft.schedule.TickThrottle;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.util.WeightedSampler;
+
+import java.util.List;
+import java.util.Locale;
+
+public final class ModifierTable<E extends Enum<E> & ModifierSpec> {
+
+    private static final String ENABLED = "enabled";
+    private static final String WEIGHT = "weight";
+    private static final String THROTTLED = "throttled";
+
+    private final double[] weights;
+    private final boolean[] throttled;
+    private final Range[][] ranges;
+    // Null when nothing is ever throttled.
+    private final TickThrottle throttle;
+    // Each null when its modifiers are all disabled or weigh 0.
+    private final WeightedSampler<E> sampler;
+    private final WeightedSampler<E> unthrottledSampler;
+    private final WeightedSampler<E> throttledSampler;
+    private final double unthrottledWeight;
+    private final double throttledWeight;
+
+    private ModifierTable(E[] modifiers, double[] weights, boolean[] throttled, Range[][] ranges, TickThrottle throttle) {
+        this.weights = weights;
+        this.throttled = throttled;
+        this.ranges = ranges;
+        double[] unthrottledWeights = new double[weights.length];
+        double[] throttledWeights = new double[weights.length];
+        double unthrottledTotal = 0.0;
+        double throttledTotal = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            if (throttled[i]) {
+                throttledWeights[i] = weights[i];
+                throttledTotal += weights[i];
+            } else {
+                unthrottledWeights[i] = weights[i];
+                unthrottledTotal += weights[i];
+            }
+        }
+        this.sampler = sampler(modifiers, weights, unthrottledTotal + throttledTotal);
+        this.unthrottledSampler = sampler(modifiers, unthrottledWeights, unthrottledTotal);
+        this.throttledSampler = sampler(modifiers, throttledWeights, throttledTotal);
+        this.unthrottledWeight = unthrottledTotal;
+        this.throttledWeight = throttledTotal;
+        this.throttle = throttledTotal > 0.0 ? throttle : null;
+    }
+
+    private static <E> WeightedSampler<E> sampler(E[] modifiers, double[] weights, double total) {
+        return total > 0.0 ? WeightedSampler.of(modifiers, weights) : null;
+    }
+
+    /**
+     * Compiles the settings of the given modifiers for one intensity profile: the defaults, then their group in
+     * the "modifiers" section, then the profile. Modifiers (and values) missing from a section keep what they had;
+     * a null section changes nothing.
+     *
+     * @param throttle scales the weights of throttled modifiers, or null to never throttle
+     * @throws IllegalArgumentException naming the offending path if a section contains an invalid or unknown entry
+     */
+    static <E extends Enum<E> & ModifierSpec> ModifierTable<E> compile(E[] modifiers, String group,
+                                                                       ConfigurationSection section,
+                                                                       IntensityProfile profile,
+                                                                       TickThrottle throttle) {
+        double[] weights = new double[modifiers.length];
+        boolean[] enabled = new boolean[modifiers.length];
+        boolean[] throttled = new boolean[modifiers.length];
+        Range[][] ranges = new Range[modifiers.length][];
+        for (E modifier : modifiers) {
+            int i = modifier.ordinal();
+            weights[i] = modifier.getRarity();
+            enabled[i] = true;
+            throttled[i] = modifier.isExpensive();
+            ranges[i] = modifier.getRanges().clone();
+        }
+        apply(modifiers, section == null ? null : section.getConfigurationSection(group), weights, enabled, throttled,
+                ranges);
+        if (profile.rangeScale != 1.0) {
+            for (Range[] modifierRanges : ranges) {
+                for (int i = 0; i < modifierRanges.length; i++) {
+                    modifierRanges[i] = modifierRanges[i].scaled(profile.rangeScale);
+                }
+            }
+        }
+        apply(modifiers, profile.modifiers == null ? null : profile.modifiers.getConfigurationSection(group),
+                weights, enabled, throttled, ranges);
+        for (int i = 0; i < weights.length; i++) {
+            if (!enabled[i] || !profile.enabled) {
+                weights[i] = 0.0;
+            }
+        }
+        return new ModifierTable<>(modifiers, weights, throttled, ranges, throttle);
+    }
+
+    private static <E extends Enum<E> & ModifierSpec> void apply(E[] modifiers, ConfigurationSection section,
+                                                                  double[] weights, boolean[] enabled,
+                                                                  boolean[] throttled, Range[][] ranges) {
+        if (section == null) {
+            return;
+        }
+        for (String key : section.getKeys(false)) {
+            E modifier = find(modifiers, key);
+            if (modifier == null) {
+                throw new IllegalArgumentException(path(section, key) + ": unknown modifier");
+            }
+            if (!section.isConfigurationSection(key)) {
+                throw new IllegalArgumentException(path(section, key) + ": expected a section");
+            }
+            ConfigurationSection settings = section.getConfigurationSection(key);
+            int i = modifier.ordinal();
+            enabled[i] = settings.getBoolean(ENABLED, enabled[i]);
+            throttled[i] = settings.getBoolean(THROTTLED, throttled[i]);
+            weights[i] = readWeight(settings, weights[i]);
+            readRanges(settings, ranges[i]);
+        }
+    }
+
+    private static double readWeight(ConfigurationSection settings, double current) {
+        if (!settings.contains(WEIGHT)) {
+            return current;
+        }
+        Object value = settings.get(WEIGHT);
+        double weight = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        if (!(weight >= 0.0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException(path(settings, WEIGHT) + ": expected a number >= 0, got " + value);
+        }
+        return weight;
+    }
+
+    private static void readRanges(ConfigurationSection settings, Range[] ranges) {
+        for (String key : settings.getKeys(false)) {
+            if (key.equals(ENABLED) || key.equals(WEIGHT) || key.equals(THROTTLED)) {
+                continue;
+            }
+            int index = indexOf(ranges, key);
+            if (index < 0) {
+                throw new IllegalArgumentException(path(settings, key) + ": unknown value");
+            }
+            Object value = settings.get(key);
+            try {
+                if (value instanceof Number) {
+                    double fixed = ((Number) value).doubleValue();
+                    ranges[index] = ranges[index].with(fixed, fixed);
+                } else if (value instanceof List && ((List<?>) value).size() == 2
+                        && ((List<?>) value).get(0) instanceof Number && ((List<?>) value).get(1) instanceof Number) {
+                    List<?> bounds = (List<?>) value;
+                    ranges[index] = ranges[index].with(((Number) bounds.get(0)).doubleValue(),
+                            ((Number) bounds.get(1)).doubleValue());
+                } else {
+                    throw new IllegalArgumentException("expected [min, max] or a single number, got " + value);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(path(settings, key) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static <E extends Enum<E> & ModifierSpec> E find(E[] modifiers, String key) {
+        for (E modifier : modifiers) {
+            if (key(modifier.name()).equals(key)) {
+                return modifier;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(Range[] ranges, String key) {
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i].getName().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String path(ConfigurationSection section, String key) {
+        String parent = section.getCurrentPath();
+        return parent == null || parent.isEmpty() ? key : parent + "." + key;
+    }
+
+    /** The config.yml key of a modifier: its name in lower case, dashes for underscores. */
+    public static String key(String name) {
+        return name.toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * Draws one modifier by weight, with throttled modifiers' weights scaled by the throttle, or returns null if
+     * every modifier is disabled (or throttled down to 0).
+     */
+    public E next(ChaosRandom random) {
+        double scale = throttle == null ? 1.0 : throttle.getScale();
+        if (scale >= 1.0) {
+            return sampler == null ? null : sampler.next(random);
+        }
+        double throttledShare = throttledWeight * scale;
+        if (throttledShare <= 0.0) {
+            return unthrottledSampler == null ? null : unthrottledSampler.next(random);
+        }
+        if (random.nextDouble() * (unthrottledWeight + throttledShare) < throttledShare) {
+            return throttledSampler.next(random);
+        }
+        return unthrottledSampler.next(random);
+    }
+
+    /**
+     * The modifier's configured weight (its chance, for modifiers rolled on their own), scaled by the throttle if
+     * the modifier is throttled; 0 when disabled.
+     */
+    public double weight(E modifier) {
+        int i = modifier.ordinal();
+        return throttled[i] && throttle != null ? weights[i] * throttle.getScale() : weights[i];
+    }
+
+    /** True if the modifier's weight is scaled down while the server is falling behind. */
+    public boolean isThrottled(E modifier) {
+        return throttled[modifier.ordinal()];
+    }
+
+    /** The modifier's configured ranges, at the positions of its default ones. */
+    public Range[] ranges(E modifier) {
+        return ranges[modifier.ordinal()];
+    }
+}
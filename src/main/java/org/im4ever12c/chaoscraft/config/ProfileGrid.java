@@ -0,0 +1,95 @@
+/*
+    @CLASS-TITLE: ProfileGrid.java
+    @CLASS-DESCRIPTION: Which intensity profile applies in each chunk of one world, precomputed when the settings
+    are loaded. The chunks covered by the world's regions are laid out in one flat array over their bounding box,
+    so finding a chunk's profile is a bounds check and one array read; chunks outside the box use the world's
+    profile. Immutable.
+ */
+
+package org.im4ever12c.chaoscraft.config;
+
+import java.util.Arrays;
+import java.util.List;
+
+final class ProfileGrid {
+
+    // Most chunks a world's region bounding box may cover (one byte each).
+    static final int MAX_CHUNKS = 1 << 22;
+
+    private final byte worldProfile;
+    private final int minX;
+    private final int minZ;
+    private final int width;
+    private final int depth;
+    private final byte[] profiles;
+
+    /**
+     * @param regions in config order; where regions overlap the later one wins
+     * @throws IllegalArgumentException if the regions' bounding box covers more than MAX_CHUNKS chunks
+     */
+    ProfileGrid(String world, int worldProfile, List<Region> regions) {
+        this.worldProfile = (byte) worldProfile;
+        if (regions.isEmpty()) {
+            minX = minZ = width = depth = 0;
+            profiles = new byte[0];
+            return;
+        }
+        int lowX = Integer.MAX_VALUE;
+        int lowZ = Integer.MAX_VALUE;
+        int highX = Integer.MIN_VALUE;
+        int highZ = Integer.MIN_VALUE;
+        for (Region region : regions) {
+            lowX = Math.min(lowX, region.minChunkX);
+            lowZ = Math.min(lowZ, region.minChunkZ);
+            highX = Math.max(highX, region.maxChunkX);
+            highZ = Math.max(highZ, region.maxChunkZ);
+        }
+        long chunks = ((long) highX - lowX + 1) * ((long) highZ - lowZ + 1);
+        if (chunks > MAX_CHUNKS) {
+            throw new IllegalArgumentException("intensity.regions: the regions of world " + world + " span " + chunks
+                    + " chunks, more than " + MAX_CHUNKS);
+        }
+        minX = lowX;
+        minZ = lowZ;
+        width = highX - lowX + 1;
+        depth = highZ - lowZ + 1;
+        profiles = new byte[width * depth];
+        Arrays.fill(profiles, this.worldProfile);
+        for (Region region : regions) {
+            for (int z = region.minChunkZ; z <= region.maxChunkZ; z++) {
+                int row = (z - minZ) * width;
+                Arrays.fill(profiles, row + region.minChunkX - minX, row + region.maxChunkX - minX + 1, (byte) region.profile);
+            }
+        }
+    }
+
+    int profileAt(int chunkX, int chunkZ) {
+        int dx = chunkX - minX;
+        int dz = chunkZ - minZ;
+        if (dx < 0 || dz < 0 || dx >= width || dz >= depth) {
+            return worldProfile;
+        }
+        return profiles[dz * width + dx];
+    }
+
+    int worldProfile() {
+        return worldProfile;
+    }
+
+    /** A rectangle of chunks (inclusive) assigned to a profile. */
+    static final class Region {
+        final int minChunkX;
+        final int minChunkZ;
+        final int maxChunkX;
+        final int maxChunkZ;
+        final int profile;
+
+        Region(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int profile) {
+            this.minChunkX = minChunkX;
+            this.minChunkZ = minChunkZ;
+            this.maxChunkX = maxChunkX;
+            this.maxChunkZ = maxChunkZ;
+            this.profile = profile;
+        }
+    }
+}
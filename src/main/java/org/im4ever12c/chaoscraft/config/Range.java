@@ -0,0 +1,106 @@
+/*
+    @CLASS-TITLE: Range.java
+    @CLASS-DESCRIPTION: A named [min, max] value range of a chaos modifier (how many mobs, how strong an explosion...).
+    The enum constants declare their default ranges; config.yml can override them within the declared limits.
+    Whole-number draws include both ends, decimal draws are in [min, max). Immutable.
+ */
+
+package org.im4ever12c.chaoscraft.config;
+
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+
+public final class Range {
+
+    // Default upper limit; keeps whole-number ranges far from int overflow.
+    private static final double MAX_LIMIT = 1_000_000.0;
+
+    private final String name;
+    private final double min;
+    private final double max;
+    private final double lowest;
+    private final double highest;
+    private final int intMin;
+    private final int intSpan;
+
+    private Range(String name, double min, double max, double lowest, double highest) {
+        this.name = name;
+        this.min = min;
+        this.max = max;
+        this.lowest = lowest;
+        this.highest = highest;
+        this.intMin = (int) Math.floor(min);
+        this.intSpan = (int) Math.floor(max) - intMin + 1;
+    }
+
+    /** A range whose configured values must stay within [0, 1,000,000]. */
+    public static Range of(String name, double min, double max) {
+        return of(name, min, max, 0.0, MAX_LIMIT);
+    }
+
+    /** A range whose configured values must stay within [lowest, highest]. */
+    public static Range of(String name, double min, double max, double lowest, double highest) {
+        return new Range(name, min, max, lowest, highest).check(min, max);
+    }
+
+    /**
+     * The same range with other bounds.
+     *
+     * @throws IllegalArgumentException if min > max or either is outside this range's limits
+     */
+    public Range with(double min, double max) {
+        return new Range(name, min, max, lowest, highest).check(min, max);
+    }
+
+    /**
+     * The range with both ends multiplied by the factor (an intensity profile's range-scale), kept within
+     * the limits.
+     */
+    Range scaled(double factor) {
+        if (factor == 1.0) {
+            return this;
+        }
+        double scaledMin = Math.max(lowest, Math.min(highest, min * factor));
+        double scaledMax = Math.max(lowest, Math.min(highest, max * factor));
+        return new Range(name, Math.min(scaledMin, scaledMax), Math.max(scaledMin, scaledMax), lowest, highest);
+    }
+
+    private Range check(double min, double max) {
+        if (!(min >= lowest && max <= highest && min <= max)) {
+            throw new IllegalArgumentException(name + " must be [min, max] with " + lowest + " <= min <= max <= "
+                    + highest + ", got [" + min + ", " + max + "]");
+        }
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /** Uniform whole number in [floor(min), floor(max)]. */
+    public int nextInt(ChaosRandom random) {
+        return intSpan == 1 ? intMin : intMin + random.nextInt(intSpan);
+    }
+
+    /** Uniform double in [min, max). */
+    public double nextDouble(ChaosRandom random) {
+        return min + random.nextDouble() * (max - min);
+    }
+
+    /** Uniform float in [min, max). */
+    public float nextFloat(ChaosRandom random) {
+        return (float) min + random.nextFloat() * (float) (max - min);
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + min + ", " + max + "]";
+    }
+}
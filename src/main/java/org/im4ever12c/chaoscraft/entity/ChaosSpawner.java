@@ -0,0 +1,187 @@
+/*
+    @CLASS-TITLE: ChaosSpawner.java
+    @CLASS-DESCRIPTION: The one way chaos effects spawn mobs. Every chaos-spawned entity is given a lineage
+    (depth and root, see SpawnLineage) before its spawn event fires, so clones of clones can be told apart
+    from natural mobs. A spawn is refused, before anything is created, when it would be deeper than the
+    maximum lineage depth or when the chunk already holds its category's cap of chaos-spawned mobs.
+    Counts are kept against the chunk an entity spawned in and released when it is removed for good. The
+    lineage is also stored on the entity (see SpawnLineageCodec): an entity unloaded with its chunk keeps its
+    count, and its table entry is rebuilt when it is loaded again, after a restart too. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityRemoveEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.plugin.Plugin;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.world.ChunkKeys;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public final class ChaosSpawner implements Listener {
+
+    /** Root id meaning "no parent": the spawned entity becomes the root of its own chain. */
+    public static final int NO_ROOT = -1;
+
+    private final SpawnLineage lineage = new SpawnLineage();
+    private final Map<UUID, ChunkSpawnCounts> counts = new HashMap<>();
+    // Entities unloaded this session whose counts are still held; they are not counted again once loaded.
+    private final Set<UUID> unloaded = new HashSet<>();
+    private final SpawnLineageCodec codec;
+    private final int maxDepth;
+    private final int[] chunkCaps;
+    private long spawned;
+    private long refusedDepth;
+    private long refusedCap;
+
+    /**
+     * @param chunkCaps cap per MobCategory, indexed by ordinal
+     */
+    public ChaosSpawner(Plugin plugin, int maxDepth, int[] chunkCaps) {
+        if (chunkCaps.length != MobCategory.values().length) {
+            throw new IllegalArgumentException("Expected one chunk cap per mob category");
+        }
+        this.codec = new SpawnLineageCodec(plugin);
+        this.maxDepth = maxDepth;
+        this.chunkCaps = chunkCaps.clone();
+    }
+
+    /**
+     * Spawns a chaos mob. Returns null if the spawn was refused (lineage too deep, chunk at its cap) or cancelled.
+     *
+     * @param parent the entity this spawn comes from (cloned, transformed, killed...), or null if none
+     */
+    public Entity spawn(Location location, EntityType type, Entity parent) {
+        if (parent == null) {
+            return spawn(location, type, 0, NO_ROOT);
+        }
+        return spawn(location, type, depthOf(parent), rootOf(parent));
+    }
+
+    /**
+     * Spawns a chaos mob from a parent lineage captured earlier (the parent may be gone by now).
+     *
+     * @param parentDepth depthOf(parent), or 0 if there is no parent
+     * @param rootId      rootOf(parent), or NO_ROOT if there is no parent
+     */
+    public Entity spawn(Location location, EntityType type, int parentDepth, int rootId) {
+        World world = location.getWorld();
+        if (world == null) {
+            return null;
+        }
+        int depth = parentDepth + 1;
+        if (depth > maxDepth) {
+            refusedDepth++;
+            return null;
+        }
+        MobCategory category = MobCategory.of(type);
+        long chunk = ChunkKeys.ofBlock(location.getBlockX(), location.getBlockZ());
+        ChunkSpawnCounts worldCounts = counts.computeIfAbsent(world.getUID(), k -> new ChunkSpawnCounts());
+        if (worldCounts.get(chunk, category) >= chunkCaps[category.ordinal()]) {
+            refusedCap++;
+            return null;
+        }
+        Entity entity;
+        Class<? extends Entity> entityClass = type.getEntityClass();
+        if (entityClass != null) {
+            // Record the lineage before the entity is added, so our own EntitySpawnEvent listeners already see it.
+            entity = world.spawn(location, entityClass, created ->
+                    lineage.put(created.getEntityId(), depth, rootId == NO_ROOT ? created.getEntityId() : rootId, category, chunk));
+        } else {
+            entity = world.spawnEntity(location, type);
+            lineage.put(entity.getEntityId(), depth, rootId == NO_ROOT ? entity.getEntityId() : rootId, category, chunk);
+        }
+        if (!entity.isValid()) {
+            // Spawn was cancelled by a listener; no remove event will follow.
+            lineage.remove(entity.getEntityId());
+            return null;
+        }
+        codec.write(entity, lineage, lineage.find(entity.getEntityId()));
+        worldCounts.increment(chunk, category);
+        spawned++;
+        ModifierCounters.countEntities(1);
+        return entity;
+    }
+
+    /** Lineage depth of an entity, 0 for natural entities. */
+    public int depthOf(Entity entity) {
+        return lineage.depthOf(entity.getEntityId());
+    }
+
+    /** Id of the first entity in this entity's chaos chain (its own id if it is natural). */
+    public int rootOf(Entity entity) {
+        return lineage.rootOf(entity.getEntityId());
+    }
+
+    public boolean isChaosSpawned(Entity entity) {
+        return lineage.contains(entity.getEntityId());
+    }
+
+    /**
+     * Rebuilds the lineage of already-loaded entities from what is stored on them (e.g. those loaded before the
+     * plugin enabled).
+     */
+    public void loadLineage(Iterable<? extends Entity> entities) {
+        for (Entity entity : entities) {
+            int slot = codec.load(entity, lineage);
+            if (slot >= 0 && !unloaded.remove(entity.getUniqueId())) {
+                counts.computeIfAbsent(entity.getWorld().getUID(), k -> new ChunkSpawnCounts())
+                        .increment(lineage.chunkAt(slot), lineage.categoryAt(slot));
+            }
+        }
+    }
+
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        loadLineage(event.getEntities());
+    }
+
+    @EventHandler
+    public void onEntityRemove(EntityRemoveEvent event) {
+        Entity entity = event.getEntity();
+        int slot = lineage.find(entity.getEntityId());
+        if (slot < 0) {
+            return;
+        }
+        // The entity gets a new id when it is loaded again, so only its count outlives an unload.
+        if (event.getCause() == EntityRemoveEvent.Cause.UNLOAD) {
+            unloaded.add(entity.getUniqueId());
+        } else {
+            ChunkSpawnCounts worldCounts = counts.get(entity.getWorld().getUID());
+            if (worldCounts != null) {
+                worldCounts.decrement(lineage.chunkAt(slot), lineage.categoryAt(slot));
+            }
+        }
+        lineage.removeAt(slot);
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Chaos-spawned entities currently alive and tracked. */
+    public int getTracked() {
+        return lineage.size();
+    }
+
+    public long getSpawned() {
+        return spawned;
+    }
+
+    public long getRefusedDepth() {
+        return refusedDepth;
+    }
+
+    public long getRefusedCap() {
+        return refusedCap;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+    @CLASS-TITLE: ChunkSpawnCounts.java
+    @CLASS-DESCRIPTION: Live chaos-spawned entity counts per chunk (ChunkKeys) and MobCategory, for one world.
+    Chunks drop out of the table when all their counts reach zero. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.im4ever12c.chaoscraft.util.LongKeyTable;
+
+import java.util.Arrays;
+
+public final class ChunkSpawnCounts extends LongKeyTable {
+
+    private static final int CATEGORIES = MobCategory.values().length;
+
+    // CATEGORIES counters per slot.
+    private int[] counts;
+
+    public ChunkSpawnCounts() {
+        super(64);
+        init();
+    }
+
+    public int get(long chunkKey, MobCategory category) {
+        int slot = find(chunkKey);
+        return slot < 0 ? 0 : counts[slot * CATEGORIES + category.ordinal()];
+    }
+
+    public void increment(long chunkKey, MobCategory category) {
+        int slot = insert(chunkKey);
+        counts[slot * CATEGORIES + category.ordinal()]++;
+    }
+
+    public void decrement(long chunkKey, MobCategory category) {
+        int slot = find(chunkKey);
+        if (slot < 0) {
+            return;
+        }
+        int base = slot * CATEGORIES;
+        if (counts[base + category.ordinal()] > 0) {
+            counts[base + category.ordinal()]--;
+        }
+        for (int i = 0; i < CATEGORIES; i++) {
+            if (counts[base + i] != 0) {
+                return;
+            }
+        }
+        removeAt(slot);
+    }
+
+    @Override
+    protected void allocateValues(int capacity) {
+        counts = new int[capacity * CATEGORIES];
+    }
+
+    @Override
+    protected void moveValues(int from, int to) {
+        System.arraycopy(counts, from * CATEGORIES, counts, to * CATEGORIES, CATEGORIES);
+    }
+
+    @Override
+    protected void clearValues(int slot) {
+        Arrays.fill(counts, slot * CATEGORIES, slot * CATEGORIES + CATEGORIES, 0);
+    }
+
+    @Override
+    protected void relocateValues(int[] targetSlots, int newCapacity) {
+        int[] oldCounts = counts;
+        allocateValues(newCapacity);
+        for (int i = 0; i < targetSlots.length; i++) {
+            if (targetSlots[i] >= 0) {
+                System.arraycopy(oldCounts, i * CATEGORIES, counts, targetSlots[i] * CATEGORIES, CATEGORIES);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+    @CLASS-TITLE: CountdownHolograms.java
+    @CLASS-DESCRIPTION: The one countdown used by timed explosions ("5", "4", ... then boom). The number is shown
+    on a TextDisplay, which does not tick like an armor stand and only sends an update when its text changes.
+    Displays are pooled per world: a finished countdown hides its display and the next countdown teleports
+    it into place instead of spawning a new entity. Displays are not persistent, so they vanish with their
+    chunk, and they are never LivingEntities, so chaos rolls skip them. At most maxActive countdowns run at
+    once; start() refuses more. Each step is a DelayedAction on the TimingWheel. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Display;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.TextDisplay;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.im4ever12c.chaoscraft.schedule.DelayedAction;
+import org.im4ever12c.chaoscraft.schedule.TimingWheel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public final class CountdownHolograms implements Listener {
+
+    private static final int TICKS_PER_SECOND = 20;
+    // Text is shown this far above the countdown's location, where an armor stand's name tag used to be.
+    private static final double LABEL_HEIGHT = 2.0;
+
+    private final TimingWheel wheel;
+    private final List<Countdown> active = new ArrayList<>();
+    private final Map<UUID, ArrayDeque<TextDisplay>> pools = new HashMap<>();
+    // Entity ids of every display we own, active or pooled.
+    private final Set<Integer> displayIds = new HashSet<>();
+    private final int maxActive;
+    private long started;
+    private long refused;
+    private long reused;
+
+    public CountdownHolograms(TimingWheel wheel, int maxActive) {
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("Countdown cap must be positive: " + maxActive);
+        }
+        this.wheel = wheel;
+        this.maxActive = maxActive;
+    }
+
+    /**
+     * Shows a countdown from seconds down to 1 at the location, then runs onFinish (which is not scheduled
+     * itself; the countdown runs it). Returns false, and never runs onFinish, if the cap of concurrent
+     * countdowns is reached. If the countdown is cancelled (its chunk unloads), onFinish is cancelled too.
+     */
+    public boolean start(Location location, int seconds, DelayedAction onFinish) {
+        World world = location.getWorld();
+        if (world == null || active.size() >= maxActive) {
+            refused++;
+            return false;
+        }
+        TextDisplay display = acquire(world, location.clone().add(0, LABEL_HEIGHT, 0));
+        display.setText(String.valueOf(seconds));
+        Countdown countdown = new Countdown(location, display, seconds, onFinish);
+        active.add(countdown);
+        wheel.schedule(countdown, TICKS_PER_SECOND);
+        started++;
+        return true;
+    }
+
+    /** True for displays owned by this manager; effects that touch every entity should leave them alone. */
+    public boolean isHologram(Entity entity) {
+        return entity instanceof TextDisplay && displayIds.contains(entity.getEntityId());
+    }
+
+    private TextDisplay acquire(World world, Location location) {
+        ArrayDeque<TextDisplay> pool = pools.get(world.getUID());
+        while (pool != null && !pool.isEmpty()) {
+            TextDisplay display = pool.pollFirst();
+            // Pooled displays are gone once their chunk unloaded.
+            if (display.isValid() && display.teleport(location)) {
+                display.setVisibleByDefault(true);
+                reused++;
+                return display;
+            }
+            forget(display);
+        }
+        return world.spawn(location, TextDisplay.class, created -> {
+            displayIds.add(created.getEntityId());
+            created.setPersistent(false);
+            created.setGravity(false);
+            created.setBillboard(Display.Billboard.CENTER);
+            created.setShadowed(true);
+        });
+    }
+
+    private void release(TextDisplay display) {
+        if (!display.isValid()) {
+            forget(display);
+            return;
+        }
+        ArrayDeque<TextDisplay> pool = pools.computeIfAbsent(display.getWorld().getUID(), k -> new ArrayDeque<>());
+        if (pool.size() >= maxActive) {
+            forget(display);
+            display.remove();
+            return;
+        }
+        display.setVisibleByDefault(false);
+        pool.addLast(display);
+    }
+
+    private void forget(TextDisplay display) {
+        displayIds.remove(display.getEntityId());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        ArrayDeque<TextDisplay> pool = pools.remove(event.getWorld().getUID());
+        if (pool != null) {
+            for (TextDisplay display : pool) {
+                forget(display);
+            }
+        }
+    }
+
+    private void finish(Countdown countdown) {
+        active.remove(countdown);
+        release(countdown.display);
+    }
+
+    /**
+     * Removes every display, active or pooled. Cancel the TimingWheel first so running countdowns
+     * are cancelled properly rather than just dropped.
+     */
+    public void removeAll() {
+        for (Countdown countdown : active) {
+            countdown.display.remove();
+        }
+        active.clear();
+        for (ArrayDeque<TextDisplay> pool : pools.values()) {
+            for (TextDisplay display : pool) {
+                display.remove();
+            }
+        }
+        pools.clear();
+        displayIds.clear();
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    public int getActive() {
+        return active.size();
+    }
+
+    public int getPooled() {
+        int pooled = 0;
+        for (ArrayDeque<TextDisplay> pool : pools.values()) {
+            pooled += pool.size();
+        }
+        return pooled;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    /** Countdowns refused because the cap was reached. */
+    public long getRefused() {
+        return refused;
+    }
+
+    /** Countdowns that reused a pooled display instead of spawning one. */
+    public long getReused() {
+        return reused;
+    }
+
+    /** One second of a countdown; reschedules itself until it reaches zero. */
+    private final class Countdown extends DelayedAction {
+        final TextDisplay display;
+        final DelayedAction onFinish;
+        int secondsLeft;
+
+        Countdown(Location location, TextDisplay display, int seconds, DelayedAction onFinish) {
+            super(location);
+            this.display = display;
+            this.secondsLeft = seconds;
+            this.onFinish = onFinish;
+        }
+
+        @Override
+        public void run() {
+            if (--secondsLeft > 0) {
+                if (display.isValid()) {
+                    display.setText(String.valueOf(secondsLeft));
+                }
+                wheel.schedule(this, TICKS_PER_SECOND);
+                return;
+            }
+            finish(this);
+            onFinish.run();
+        }
+
+        @Override
+        public void cancelled() {
+            finish(this);
+            onFinish.cancelled();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+    @CLASS-TITLE: EntityBucket.java
+    @CLASS-DESCRIPTION: One category of loaded entities in one world (see EntityRegistry). Entities are kept
+    densely in an array so visiting them is a plain array walk, and indexed by entity id so adding and
+    removing are O(1) (removal swaps the last entity into the gap). Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.entity.Entity;
+import org.im4ever12c.chaoscraft.util.IntKeyTable;
+
+import java.util.Arrays;
+
+final class EntityBucket extends IntKeyTable {
+
+    private Entity[] entities = new Entity[16];
+    private int count;
+    // Position in the entities array, per entity id slot.
+    private int[] positions;
+
+    EntityBucket() {
+        super(32);
+        init();
+    }
+
+    /** Adds the entity; returns false if it is already in the bucket. */
+    boolean addEntity(Entity entity) {
+        int id = entity.getEntityId();
+        if (contains(id)) {
+            return false;
+        }
+        if (count == entities.length) {
+            entities = Arrays.copyOf(entities, count * 2);
+        }
+        int slot = insert(id);
+        positions[slot] = count;
+        entities[count++] = entity;
+        return true;
+    }
+
+    /** Removes the entity with this id; returns false if it was not in the bucket. */
+    boolean removeEntity(int entityId) {
+        int slot = find(entityId);
+        if (slot < 0) {
+            return false;
+        }
+        int position = positions[slot];
+        removeAt(slot);
+        Entity last = entities[--count];
+        entities[count] = null;
+        if (position != count) {
+            entities[position] = last;
+            positions[find(last.getEntityId())] = position;
+        }
+        return true;
+    }
+
+    int count() {
+        return count;
+    }
+
+    Entity get(int position) {
+        return entities[position];
+    }
+
+    @Override
+    protected void allocateValues(int capacity) {
+        positions = new int[capacity];
+    }
+
+    @Override
+    protected void moveValues(int from, int to) {
+        positions[to] = positions[from];
+    }
+
+    @Override
+    protected void clearValues(int slot) {
+        positions[slot] = 0;
+    }
+
+    @Override
+    protected void relocateValues(int[] targetSlots, int newCapacity) {
+        int[] oldPositions = positions;
+        allocateValues(newCapacity);
+        for (int i = 0; i < targetSlots.length; i++) {
+            int slot = targetSlots[i];
+            if (slot >= 0) {
+                positions[slot] = oldPositions[i];
+            }
+        }
+    }
+}
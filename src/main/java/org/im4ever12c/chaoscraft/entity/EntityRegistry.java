@@ -0,0 +1,243 @@
+/*
+    @CLASS-TITLE: EntityRegistry.java
+    @CLASS-DESCRIPTION: Loaded players, mobs and projectiles of every world, bucketed by category and kept up to
+    date from spawn, load, unload and removal events, so server-wide effects can visit just the entities they
+    care about instead of copying World.getEntities() and filtering it. Chaos-spawned mobs are additionally
+    kept in their own bucket. Other entities (items, vehicles, hanging entities...) are not tracked.
+    Visiting walks the bucket in place; entities found invalid or in another world on the way (a mob that
+    went through a portal) are dropped or moved as they are met. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityRemoveEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.entity.ProjectileLaunchEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public final class EntityRegistry implements Listener {
+
+    public enum Category {
+        PLAYERS,
+        HOSTILE,
+        PASSIVE,
+        /** Living entities that are neither players, hostile nor passive (armor stands, golems...). */
+        OTHER_LIVING,
+        PROJECTILES,
+        /** Mobs spawned by ChaosSpawner; these are in their mob category too. */
+        CHAOS_SPAWNED
+    }
+
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final ChaosSpawner spawner;
+    private final Map<UUID, WorldEntities> worlds = new HashMap<>();
+
+    public EntityRegistry(ChaosSpawner spawner) {
+        this.spawner = spawner;
+    }
+
+    /** Adds every entity currently in the world; for worlds that were loaded before the registry existed. */
+    public void track(World world) {
+        for (Entity entity : world.getEntities()) {
+            add(entity);
+        }
+    }
+
+    /**
+     * Calls the visitor with each tracked entity of the category in the world. The visitor may remove,
+     * spawn or teleport entities; entities added during the visit may or may not be visited.
+     */
+    public void forEach(World world, Category category, Consumer<? super Entity> visitor) {
+        WorldEntities entities = worlds.get(world.getUID());
+        if (entities != null) {
+            forEach(entities, category, visitor);
+        }
+    }
+
+    /** Calls the visitor with each tracked entity of the category, in every world. */
+    public void forEach(Category category, Consumer<? super Entity> visitor) {
+        // Copy first: visiting may move entities into a world that had no buckets yet.
+        for (WorldEntities entities : worlds.values().toArray(new WorldEntities[0])) {
+            forEach(entities, category, visitor);
+        }
+    }
+
+    private void forEach(WorldEntities entities, Category category, Consumer<? super Entity> visitor) {
+        World world = entities.world;
+        EntityBucket bucket = entities.buckets[category.ordinal()];
+        // Walk backwards: removing the current entity swaps in one that was already visited.
+        for (int i = bucket.count() - 1; i >= 0; i--) {
+            if (i >= bucket.count()) {
+                // The visitor removed several entities at once.
+                continue;
+            }
+            Entity entity = bucket.get(i);
+            if (!entity.isValid()) {
+                // Dead players stay tracked until they quit; they respawn as the same entity.
+                if (!(entity instanceof Player)) {
+                    remove(world, entity);
+                }
+                continue;
+            }
+            if (!entity.getWorld().equals(world)) {
+                remove(world, entity);
+                add(entity);
+                continue;
+            }
+            visitor.accept(entity);
+        }
+    }
+
+    /** Tracked entities of the category in the world (including any not yet found to be gone). */
+    public int count(World world, Category category) {
+        WorldEntities entities = worlds.get(world.getUID());
+        return entities == null ? 0 : entities.buckets[category.ordinal()].count();
+    }
+
+    /** The category an entity is tracked under, or null if entities like it are not tracked. */
+    public static Category categoryOf(Entity entity) {
+        if (entity instanceof Player) {
+            return Category.PLAYERS;
+        }
+        if (entity instanceof Projectile) {
+            return Category.PROJECTILES;
+        }
+        if (!(entity instanceof LivingEntity)) {
+            return null;
+        }
+        switch (MobCategory.of(entity.getType())) {
+            case HOSTILE:
+                return Category.HOSTILE;
+            case PASSIVE:
+                return Category.PASSIVE;
+            default:
+                return Category.OTHER_LIVING;
+        }
+    }
+
+    private void add(Entity entity) {
+        Category category = categoryOf(entity);
+        if (category == null) {
+            return;
+        }
+        World world = entity.getWorld();
+        EntityBucket[] buckets = worlds.computeIfAbsent(world.getUID(), k -> new WorldEntities(world)).buckets;
+        buckets[category.ordinal()].addEntity(entity);
+        if (category != Category.PLAYERS && spawner.isChaosSpawned(entity)) {
+            buckets[Category.CHAOS_SPAWNED.ordinal()].addEntity(entity);
+        }
+    }
+
+    private void remove(World world, Entity entity) {
+        Category category = categoryOf(entity);
+        if (category == null) {
+            return;
+        }
+        WorldEntities entities = worlds.get(world.getUID());
+        if (entities != null) {
+            entities.buckets[category.ordinal()].removeEntity(entity.getEntityId());
+            entities.buckets[Category.CHAOS_SPAWNED.ordinal()].removeEntity(entity.getEntityId());
+        }
+    }
+
+    /* ------------------- Tracking ------------------- */
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntitySpawn(EntitySpawnEvent event) {
+        add(event.getEntity());
+    }
+
+    // Projectile launches have their own handler list, separate from EntitySpawnEvent's.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onProjectileLaunch(ProjectileLaunchEvent event) {
+        add(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            add(entity);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            remove(event.getWorld(), entity);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemove(EntityRemoveEvent event) {
+        remove(event.getEntity().getWorld(), event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        add(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        remove(event.getPlayer().getWorld(), event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        remove(event.getFrom(), event.getPlayer());
+        add(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        track(event.getWorld());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Tracked entities of the category across all worlds. */
+    public int getTracked(Category category) {
+        int tracked = 0;
+        for (WorldEntities entities : worlds.values()) {
+            tracked += entities.buckets[category.ordinal()].count();
+        }
+        return tracked;
+    }
+
+    private static final class WorldEntities {
+        final World world;
+        final EntityBucket[] buckets = new EntityBucket[CATEGORIES.length];
+
+        WorldEntities(World world) {
+            this.world = world;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new EntityBucket();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+    @CLASS-TITLE: MobCategory.java
+    @CLASS-DESCRIPTION: Coarse mob categories that chaos spawn caps are counted in.
+    Resolved from the EntityType alone, so a spawn can be refused before the entity exists.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.entity.AbstractVillager;
+import org.bukkit.entity.Ambient;
+import org.bukkit.entity.Animals;
+import org.bukkit.entity.Enemy;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.WaterMob;
+
+public enum MobCategory {
+    HOSTILE,
+    PASSIVE,
+    OTHER;
+
+    private static final MobCategory[] BY_TYPE = new MobCategory[EntityType.values().length];
+
+    static {
+        for (EntityType type : EntityType.values()) {
+            BY_TYPE[type.ordinal()] = classify(type.getEntityClass());
+        }
+    }
+
+    public static MobCategory of(EntityType type) {
+        return BY_TYPE[type.ordinal()];
+    }
+
+    private static MobCategory classify(Class<? extends Entity> type) {
+        if (type == null) {
+            return OTHER;
+        }
+        if (Enemy.class.isAssignableFrom(type)) {
+            return HOSTILE;
+        }
+        if (Animals.class.isAssignableFrom(type) || WaterMob.class.isAssignableFrom(type)
+                || Ambient.class.isAssignableFrom(type) || AbstractVillager.class.isAssignableFrom(type)) {
+            return PASSIVE;
+        }
+        return OTHER;
+    }
+}
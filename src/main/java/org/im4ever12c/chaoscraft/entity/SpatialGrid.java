@@ -0,0 +1,416 @@
+/*
+    @CLASS-TITLE: SpatialGrid.java
+    @CLASS-DESCRIPTION: Uniform spatial hash of every tracked living entity (players and mobs from the
+    EntityRegistry), for effects that touch "everything nearby". Each world is cut into square columns of
+    cells; every tick the grid reads each entity's position once and moves it between cells only when it
+    crossed a border. A radius query visits the cells overlapping the sphere and hands matching entities to
+    a visitor: the category mask and distance are checked against the positions cached at the start of the
+    tick, before the entity is touched, and nothing is collected into a list. Entities spawned during the
+    current tick show up from the next one. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityRemoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.im4ever12c.chaoscraft.util.IntKeyTable;
+import org.im4ever12c.chaoscraft.util.LongKeyTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public final class SpatialGrid implements Listener, Runnable {
+
+    private static final EntityRegistry.Category[] TRACKED = {
+            EntityRegistry.Category.PLAYERS,
+            EntityRegistry.Category.HOSTILE,
+            EntityRegistry.Category.PASSIVE,
+            EntityRegistry.Category.OTHER_LIVING
+    };
+
+    /** Category mask matching every entity in the grid. */
+    public static final int LIVING = mask(TRACKED);
+    /** Category mask matching everything but players. */
+    public static final int MOBS = mask(EntityRegistry.Category.HOSTILE, EntityRegistry.Category.PASSIVE,
+            EntityRegistry.Category.OTHER_LIVING);
+
+    private final EntityRegistry registry;
+    private final int cellShift;
+    private final Map<UUID, WorldGrid> worlds = new HashMap<>();
+    private final Entries entries = new Entries();
+    // Reused for every position read during the update.
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private final Consumer<Entity> updater = this::update;
+    private WorldGrid lastGrid;
+    private long moves;
+
+    /**
+     * @param cellSize cell edge in blocks, rounded up to a power of two
+     */
+    public SpatialGrid(EntityRegistry registry, int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.registry = registry;
+        this.cellShift = 32 - Integer.numberOfLeadingZeros(cellSize - 1);
+    }
+
+    /** Mask for forEachNearby matching the given registry categories. */
+    public static int mask(EntityRegistry.Category... categories) {
+        int mask = 0;
+        for (EntityRegistry.Category category : categories) {
+            mask |= 1 << category.ordinal();
+        }
+        return mask;
+    }
+
+    /** Visits every living entity within radius of the center. Returns how many were visited. */
+    public int forEachNearby(Location center, double radius, Consumer<? super LivingEntity> visitor) {
+        return forEachNearby(center, radius, LIVING, null, visitor);
+    }
+
+    /**
+     * Visits every entity within radius of the center whose category is in the mask and which passes the
+     * filter (null for none). The visitor may teleport, damage or remove entities; positions are not
+     * re-read until the next tick. Returns how many entities were visited.
+     */
+    public int forEachNearby(Location center, double radius, int categoryMask,
+                             Predicate<? super LivingEntity> filter, Consumer<? super LivingEntity> visitor) {
+        World world = center.getWorld();
+        WorldGrid grid = world == null ? null : worlds.get(world.getUID());
+        if (grid == null) {
+            return 0;
+        }
+        double x = center.getX();
+        double y = center.getY();
+        double z = center.getZ();
+        double radiusSquared = radius * radius;
+        int minCellX = (int) Math.floor(x - radius) >> cellShift;
+        int maxCellX = (int) Math.floor(x + radius) >> cellShift;
+        int minCellZ = (int) Math.floor(z - radius) >> cellShift;
+        int maxCellZ = (int) Math.floor(z + radius) >> cellShift;
+        int visited = 0;
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                Cell cell = grid.get(cellKey(cellX, cellZ));
+                if (cell == null) {
+                    continue;
+                }
+                // Backwards, so an entity removed by the visitor swaps in one that was already checked.
+                for (int i = cell.count - 1; i >= 0; i--) {
+                    if (i >= cell.count || (categoryMask & 1 << cell.categories[i]) == 0) {
+                        continue;
+                    }
+                    double dx = cell.coords[i * 3] - x;
+                    double dy = cell.coords[i * 3 + 1] - y;
+                    double dz = cell.coords[i * 3 + 2] - z;
+                    if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+                        continue;
+                    }
+                    LivingEntity entity = cell.entities[i];
+                    if (!entity.isValid() || (filter != null && !filter.test(entity))) {
+                        continue;
+                    }
+                    visitor.accept(entity);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Re-reads the position of every tracked entity and moves the ones that changed cell.
+     */
+    @Override
+    public void run() {
+        lastGrid = null;
+        for (EntityRegistry.Category category : TRACKED) {
+            registry.forEach(category, updater);
+        }
+    }
+
+    private void update(Entity entity) {
+        entity.getLocation(scratch);
+        WorldGrid grid = gridOf(scratch.getWorld());
+        double x = scratch.getX();
+        double y = scratch.getY();
+        double z = scratch.getZ();
+        long key = cellKey((int) Math.floor(x) >> cellShift, (int) Math.floor(z) >> cellShift);
+        int slot = entries.find(entity.getEntityId());
+        if (slot >= 0) {
+            Cell cell = entries.cells[slot];
+            int position = entries.positions[slot];
+            if (cell.grid == grid && cell.key == key) {
+                cell.setCoords(position, x, y, z);
+                return;
+            }
+            removeFromCell(cell, position);
+            moves++;
+        }
+        Cell cell = grid.getOrCreate(key);
+        int position = cell.add((LivingEntity) entity, (byte) EntityRegistry.categoryOf(entity).ordinal(), x, y, z);
+        slot = entries.put(entity.getEntityId());
+        entries.cells[slot] = cell;
+        entries.positions[slot] = position;
+    }
+
+    private WorldGrid gridOf(World world) {
+        if (lastGrid != null && lastGrid.world == world) {
+            return lastGrid;
+        }
+        WorldGrid grid = worlds.get(world.getUID());
+        if (grid == null) {
+            grid = new WorldGrid(world);
+            worlds.put(world.getUID(), grid);
+        }
+        lastGrid = grid;
+        return grid;
+    }
+
+    private void remove(Entity entity) {
+        int slot = entries.find(entity.getEntityId());
+        if (slot < 0) {
+            return;
+        }
+        Cell cell = entries.cells[slot];
+        int position = entries.positions[slot];
+        entries.removeAt(slot);
+        removeFromCell(cell, position);
+    }
+
+    // Takes the entity at position out of the cell; the cell's last entity moves into the gap.
+    private void removeFromCell(Cell cell, int position) {
+        LivingEntity moved = cell.removeAt(position);
+        if (moved != null) {
+            entries.positions[entries.find(moved.getEntityId())] = position;
+        }
+        if (cell.count == 0) {
+            cell.grid.remove(cell.key);
+        }
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemove(EntityRemoveEvent event) {
+        remove(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            remove(entity);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        remove(event.getPlayer());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        WorldGrid grid = worlds.remove(event.getWorld().getUID());
+        if (grid == null) {
+            return;
+        }
+        lastGrid = null;
+        // Rare: collect the entities that lived in this world first, since removing shifts slots around.
+        int[] ids = new int[entries.size()];
+        int count = 0;
+        for (int slot = 0; slot < entries.capacity(); slot++) {
+            if (entries.isOccupied(slot) && entries.cells[slot].grid == grid) {
+                ids[count++] = entries.keyAt(slot);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            entries.remove(ids[i]);
+        }
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    public int getTracked() {
+        return entries.size();
+    }
+
+    public int getCells() {
+        int cells = 0;
+        for (WorldGrid grid : worlds.values()) {
+            cells += grid.size();
+        }
+        return cells;
+    }
+
+    /** Entities moved from one cell to another. */
+    public long getMoves() {
+        return moves;
+    }
+
+    /* ------------------- Storage ------------------- */
+
+    /** Entities of one cell, with their positions as of the last update. */
+    private static final class Cell {
+        final WorldGrid grid;
+        final long key;
+        LivingEntity[] entities = new LivingEntity[4];
+        byte[] categories = new byte[4];
+        double[] coords = new double[12];
+        int count;
+
+        Cell(WorldGrid grid, long key) {
+            this.grid = grid;
+            this.key = key;
+        }
+
+        int add(LivingEntity entity, byte category, double x, double y, double z) {
+            if (count == entities.length) {
+                entities = Arrays.copyOf(entities, count * 2);
+                categories = Arrays.copyOf(categories, count * 2);
+                coords = Arrays.copyOf(coords, count * 6);
+            }
+            entities[count] = entity;
+            categories[count] = category;
+            setCoords(count, x, y, z);
+            return count++;
+        }
+
+        void setCoords(int position, double x, double y, double z) {
+            coords[position * 3] = x;
+            coords[position * 3 + 1] = y;
+            coords[position * 3 + 2] = z;
+        }
+
+        // Returns the entity that moved into position, or null if position was the last one.
+        LivingEntity removeAt(int position) {
+            int last = --count;
+            LivingEntity moved = null;
+            if (position != last) {
+                moved = entities[last];
+                entities[position] = moved;
+                categories[position] = categories[last];
+                System.arraycopy(coords, last * 3, coords, position * 3, 3);
+            }
+            entities[last] = null;
+            return moved;
+        }
+    }
+
+    /** Cells of one world, keyed by packed cell x/z. */
+    private static final class WorldGrid extends LongKeyTable {
+        final World world;
+        private Cell[] cells;
+
+        WorldGrid(World world) {
+            super(64);
+            this.world = world;
+            init();
+        }
+
+        Cell get(long key) {
+            int slot = find(key);
+            return slot < 0 ? null : cells[slot];
+        }
+
+        Cell getOrCreate(long key) {
+            int slot = find(key);
+            if (slot >= 0) {
+                return cells[slot];
+            }
+            Cell cell = new Cell(this, key);
+            // Insert first: it may grow the table and replace the cells array.
+            slot = insert(key);
+            cells[slot] = cell;
+            return cell;
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            cells = new Cell[capacity];
+        }
+
+        @Override
+        protected void moveValues(int from, int to) {
+            cells[to] = cells[from];
+        }
+
+        @Override
+        protected void clearValues(int slot) {
+            cells[slot] = null;
+        }
+
+        @Override
+        protected void relocateValues(int[] targetSlots, int newCapacity) {
+            Cell[] oldCells = cells;
+            allocateValues(newCapacity);
+            for (int i = 0; i < targetSlots.length; i++) {
+                if (targetSlots[i] >= 0) {
+                    cells[targetSlots[i]] = oldCells[i];
+                }
+            }
+        }
+    }
+
+    /** Entity id -> the cell holding it and its position there. */
+    private static final class Entries extends IntKeyTable {
+        Cell[] cells;
+        int[] positions;
+
+        Entries() {
+            super(256);
+            init();
+        }
+
+        int put(int entityId) {
+            return insert(entityId);
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            cells = new Cell[capacity];
+            positions = new int[capacity];
+        }
+
+        @Override
+        protected void moveValues(int from, int to) {
+            cells[to] = cells[from];
+            positions[to] = positions[from];
+        }
+
+        @Override
+        protected void clearValues(int slot) {
+            cells[slot] = null;
+            positions[slot] = 0;
+        }
+
+        @Override
+        protected void relocateValues(int[] targetSlots, int newCapacity) {
+            Cell[] oldCells = cells;
+            int[] oldPositions = positions;
+            allocateValues(newCapacity);
+            for (int i = 0; i < targetSlots.length; i++) {
+                int slot = targetSlots[i];
+                if (slot >= 0) {
+                    cells[slot] = oldCells[i];
+                    positions[slot] = oldPositions[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+    @CLASS-TITLE: SpawnHandle.java
+    @CLASS-DESCRIPTION: Returned by SpawnQueue.submit(...) for a spawn that will happen on a later tick.
+    Lets the caller configure the entity once it exists (name, velocity, ...) or cancel the spawn while
+    it is still queued. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.entity.Entity;
+
+import java.util.function.Consumer;
+
+public final class SpawnHandle {
+
+    public enum State { PENDING, SPAWNED, REFUSED, CANCELLED }
+
+    private State state = State.PENDING;
+    private Entity entity;
+    private Consumer<? super Entity> configurer;
+
+    SpawnHandle() {
+    }
+
+    /**
+     * Runs the action on the entity once it has spawned (right away if it already has).
+     * Never runs if the spawn is refused or cancelled.
+     */
+    public SpawnHandle onSpawn(Consumer<? super Entity> action) {
+        if (state == State.SPAWNED) {
+            action.accept(entity);
+        } else if (state == State.PENDING) {
+            Consumer<? super Entity> previous = configurer;
+            configurer = previous == null ? action : created -> {
+                previous.accept(created);
+                action.accept(created);
+            };
+        }
+        return this;
+    }
+
+    /**
+     * Cancels the spawn if it is still queued. Returns false if it already spawned or was refused.
+     */
+    public boolean cancel() {
+        if (state != State.PENDING) {
+            return false;
+        }
+        state = State.CANCELLED;
+        configurer = null;
+        return true;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** The spawned entity, or null until (or unless) it spawned. */
+    public Entity getEntity() {
+        return entity;
+    }
+
+    boolean isPending() {
+        return state == State.PENDING;
+    }
+
+    void spawned(Entity created) {
+        state = State.SPAWNED;
+        entity = created;
+        Consumer<? super Entity> action = configurer;
+        configurer = null;
+        if (action != null) {
+            action.accept(created);
+        }
+    }
+
+    void refused() {
+        state = State.REFUSED;
+        configurer = null;
+    }
+}
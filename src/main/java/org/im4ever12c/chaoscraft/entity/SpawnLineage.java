@@ -0,0 +1,104 @@
+/*
+    @CLASS-TITLE: SpawnLineage.java
+    @CLASS-DESCRIPTION: Lineage of every entity ChaosCraft spawned, keyed by entity id: how many chaos spawns
+    deep it is (1 = spawned by chaos from a natural entity or from nothing), the id of the root entity the chain
+    started from, its mob category, and the chunk it was counted against. Entities that are not in the
+    table are natural (depth 0). Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.im4ever12c.chaoscraft.util.IntKeyTable;
+
+public final class SpawnLineage extends IntKeyTable {
+
+    private static final MobCategory[] CATEGORIES = MobCategory.values();
+
+    private byte[] depths;
+    private byte[] categories;
+    private int[] roots;
+    private long[] chunks;
+
+    public SpawnLineage() {
+        super(256);
+        init();
+    }
+
+    public void put(int entityId, int depth, int rootId, MobCategory category, long chunkKey) {
+        int slot = insert(entityId);
+        depths[slot] = (byte) Math.min(depth, Byte.MAX_VALUE);
+        roots[slot] = rootId;
+        categories[slot] = (byte) category.ordinal();
+        chunks[slot] = chunkKey;
+    }
+
+    /** Lineage depth of an entity, 0 if it is not chaos-spawned. */
+    public int depthOf(int entityId) {
+        int slot = find(entityId);
+        return slot < 0 ? 0 : depths[slot];
+    }
+
+    /** Root of the entity's chain: the entity itself if it is not chaos-spawned. */
+    public int rootOf(int entityId) {
+        int slot = find(entityId);
+        return slot < 0 ? entityId : roots[slot];
+    }
+
+    public int depthAt(int slot) {
+        return depths[slot];
+    }
+
+    public int rootAt(int slot) {
+        return roots[slot];
+    }
+
+    public MobCategory categoryAt(int slot) {
+        return CATEGORIES[categories[slot]];
+    }
+
+    public long chunkAt(int slot) {
+        return chunks[slot];
+    }
+
+    @Override
+    protected void allocateValues(int capacity) {
+        depths = new byte[capacity];
+        categories = new byte[capacity];
+        roots = new int[capacity];
+        chunks = new long[capacity];
+    }
+
+    @Override
+    protected void moveValues(int from, int to) {
+        depths[to] = depths[from];
+        categories[to] = categories[from];
+        roots[to] = roots[from];
+        chunks[to] = chunks[from];
+    }
+
+    @Override
+    protected void clearValues(int slot) {
+        depths[slot] = 0;
+        categories[slot] = 0;
+        roots[slot] = 0;
+        chunks[slot] = 0L;
+    }
+
+    @Override
+    protected void relocateValues(int[] targetSlots, int newCapacity) {
+        byte[] oldDepths = depths;
+        byte[] oldCategories = categories;
+        int[] oldRoots = roots;
+        long[] oldChunks = chunks;
+        allocateValues(newCapacity);
+        for (int i = 0; i < targetSlots.length; i++) {
+            int slot = targetSlots[i];
+            if (slot >= 0) {
+                depths[slot] = oldDepths[i];
+                categories[slot] = oldCategories[i];
+                roots[slot] = oldRoots[i];
+                chunks[slot] = oldChunks[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+    @CLASS-TITLE: SpawnLineageCodec.java
+    @CLASS-DESCRIPTION: Stores a chaos-spawned entity's lineage (depth, root, mob category and the chunk it is
+    counted against) as one compact binary value under a single NamespacedKey in its PersistentDataContainer,
+    so lineage and chunk caps survive chunk unloads and restarts and disappear together with the entity.
+    Layout: [version byte][depth byte][category byte][root int][chunk key long], big-endian.
+    Entity ids are handed out anew every time an entity is loaded, so a root read back from an earlier load
+    still ties the chain's members together but no longer names a live entity.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+public final class SpawnLineageCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int SIZE = 1 + 1 + 1 + 4 + 8;
+    private static final MobCategory[] CATEGORIES = MobCategory.values();
+
+    private final NamespacedKey key;
+
+    public SpawnLineageCodec(Plugin plugin) {
+        this.key = new NamespacedKey(plugin, "lineage");
+    }
+
+    /** Writes the entity's lineage entry from the given slot of the table. */
+    public void write(Entity entity, SpawnLineage lineage, int slot) {
+        entity.getPersistentDataContainer().set(key, PersistentDataType.BYTE_ARRAY,
+                encode(lineage.depthAt(slot), lineage.rootAt(slot), lineage.categoryAt(slot), lineage.chunkAt(slot)));
+    }
+
+    /**
+     * Reads the entity's stored lineage into the table under its current id. Returns the slot, or -1 if it has
+     * none (or an unknown version).
+     */
+    public int load(Entity entity, SpawnLineage lineage) {
+        byte[] data = entity.getPersistentDataContainer().get(key, PersistentDataType.BYTE_ARRAY);
+        if (data == null || data.length != SIZE || data[0] != VERSION || data[2] < 0 || data[2] >= CATEGORIES.length) {
+            return -1;
+        }
+        int root = (int) readBigEndian(data, 3, 4);
+        long chunk = readBigEndian(data, 7, 8);
+        lineage.put(entity.getEntityId(), data[1], root, CATEGORIES[data[2]], chunk);
+        return lineage.find(entity.getEntityId());
+    }
+
+    public static byte[] encode(int depth, int root, MobCategory category, long chunkKey) {
+        byte[] data = new byte[SIZE];
+        data[0] = VERSION;
+        data[1] = (byte) Math.min(depth, Byte.MAX_VALUE);
+        data[2] = (byte) category.ordinal();
+        writeBigEndian(data, 3, 4, root);
+        writeBigEndian(data, 7, 8, chunkKey);
+        return data;
+    }
+
+    private static void writeBigEndian(byte[] data, int position, int bytes, long value) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            data[position + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readBigEndian(byte[] data, int position, int bytes) {
+        long value = 0L;
+        for (int i = 0; i < bytes; i++) {
+            value = value << 8 | (data[position + i] & 0xFF);
+        }
+        return bytes == 4 ? (int) value : value;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+    @CLASS-TITLE: SpawnQueue.java
+    @CLASS-DESCRIPTION: Spreads bulk chaos spawns (multi-shot, sheep bursts, summons, death spawns...) across ticks.
+    Every spawn is queued in a lane for its owner (the player it was triggered by, otherwise its world), and
+    the queue takes one spawn from each lane in turn until the per-tick count or time budget is spent, so
+    one player's spawn storm cannot starve everybody else. Mobs go through the ChaosSpawner with the lineage
+    of their parent captured when they were queued; other entities (projectiles) are spawned directly.
+    Spawns whose chunk is no longer loaded are refused instead of loading it. A spawn is credited to the modifier
+    that queued it. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public final class SpawnQueue implements Listener, Runnable {
+
+    private final ChaosSpawner spawner;
+    private final Map<UUID, Lane> lanes = new HashMap<>();
+    // Lanes with pending spawns, in round-robin order.
+    private final ArrayDeque<Lane> active = new ArrayDeque<>();
+    private final int maxPerTick;
+    private final int maxPendingPerOwner;
+    private final long budgetNanos;
+    private int pending;
+    private int spawnedLastTick;
+    private long totalSpawned;
+    private long totalRefused;
+    private long totalCancelled;
+    private long totalOverflowed;
+
+    /**
+     * @param maxPerTick         most spawns drained per tick
+     * @param budgetMicros       most time spent draining per tick
+     * @param maxPendingPerOwner spawns beyond this many queued for one owner are refused immediately
+     */
+    public SpawnQueue(ChaosSpawner spawner, int maxPerTick, long budgetMicros, int maxPendingPerOwner) {
+        if (maxPerTick <= 0 || budgetMicros <= 0 || maxPendingPerOwner <= 0) {
+            throw new IllegalArgumentException("Spawn queue limits must be positive");
+        }
+        this.spawner = spawner;
+        this.maxPerTick = maxPerTick;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+        this.maxPendingPerOwner = maxPendingPerOwner;
+    }
+
+    /**
+     * Queues a spawn for a later tick.
+     *
+     * @param owner  the player that triggered the spawn, or null to share the lane of the location's world
+     * @param parent the entity this spawn comes from, or null if none; its lineage is captured now
+     */
+    public SpawnHandle submit(UUID owner, Location location, EntityType type, Entity parent) {
+        SpawnHandle handle = new SpawnHandle();
+        World world = location.getWorld();
+        if (world == null) {
+            handle.refused();
+            return handle;
+        }
+        UUID key = owner == null ? world.getUID() : owner;
+        Lane lane = lanes.get(key);
+        if (lane == null) {
+            lane = new Lane(key);
+            lanes.put(key, lane);
+        }
+        if (lane.requests.size() >= maxPendingPerOwner) {
+            totalOverflowed++;
+            handle.refused();
+            return handle;
+        }
+        int parentDepth = parent == null ? 0 : spawner.depthOf(parent);
+        int rootId = parent == null ? ChaosSpawner.NO_ROOT : spawner.rootOf(parent);
+        if (lane.requests.isEmpty()) {
+            active.addLast(lane);
+        }
+        lane.requests.addLast(new Request(location.clone(), type, parentDepth, rootId, handle, ModifierCounters.current()));
+        pending++;
+        return handle;
+    }
+
+    /**
+     * Owner lane for a spawn triggered by the given source (a shooter, damager...): the player's id,
+     * or null when the source is not a player.
+     */
+    public static UUID ownerOf(Object source) {
+        return source instanceof Player ? ((Player) source).getUniqueId() : null;
+    }
+
+    /**
+     * Spawns right away, for single spawns that must exist before the caller continues
+     * (e.g. a replacement that only removes the original once it exists). Same rules as queued mobs.
+     */
+    public Entity spawnNow(Location location, EntityType type, Entity parent) {
+        if (!type.isAlive()) {
+            World world = location.getWorld();
+            if (world == null) {
+                return null;
+            }
+            ModifierCounters.countEntities(1);
+            return world.spawnEntity(location, type);
+        }
+        return spawner.spawn(location, type, parent);
+    }
+
+    /**
+     * Drains the queue for one tick, one spawn per owner in turn. At least one spawn is attempted per tick.
+     */
+    @Override
+    public void run() {
+        int spawned = 0;
+        if (!active.isEmpty()) {
+            long deadline = System.nanoTime() + budgetNanos;
+            int attempts = 0;
+            do {
+                Lane lane = active.pollFirst();
+                Request request = lane.requests.pollFirst();
+                pending--;
+                if (lane.requests.isEmpty()) {
+                    lanes.remove(lane.owner);
+                } else {
+                    active.addLast(lane);
+                }
+                if (!request.handle.isPending()) {
+                    totalCancelled++;
+                    continue;
+                }
+                attempts++;
+                // Follow-up work of the modifier that queued it, so a slow tick of the queue names that modifier.
+                long start = request.counters == null ? 0L : request.counters.begin();
+                Entity entity;
+                try {
+                    entity = spawn(request);
+                } finally {
+                    if (request.counters != null) {
+                        request.counters.endFollowUp(start);
+                    }
+                }
+                if (entity == null) {
+                    totalRefused++;
+                    request.handle.refused();
+                } else {
+                    totalSpawned++;
+                    spawned++;
+                    if (request.counters != null) {
+                        request.counters.addEntities(1);
+                    }
+                    request.handle.spawned(entity);
+                }
+            } while (!active.isEmpty() && attempts < maxPerTick && System.nanoTime() < deadline);
+        }
+        spawnedLastTick = spawned;
+    }
+
+    private Entity spawn(Request request) {
+        Location location = request.location;
+        World world = location.getWorld();
+        if (world == null || !world.isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
+            return null;
+        }
+        if (!request.type.isAlive()) {
+            return world.spawnEntity(location, request.type);
+        }
+        return spawner.spawn(location, request.type, request.parentDepth, request.rootId);
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        Iterator<Lane> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            Lane lane = iterator.next();
+            lane.requests.removeIf(request -> {
+                if (!world.equals(request.location.getWorld())) {
+                    return false;
+                }
+                request.handle.cancel();
+                pending--;
+                totalCancelled++;
+                return true;
+            });
+            if (lane.requests.isEmpty()) {
+                lanes.remove(lane.owner);
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Cancels everything still queued, e.g. when the plugin is disabled. */
+    public void cancelAll() {
+        for (Lane lane : active) {
+            for (Request request : lane.requests) {
+                request.handle.cancel();
+            }
+            totalCancelled += lane.requests.size();
+        }
+        active.clear();
+        lanes.clear();
+        pending = 0;
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Spawns waiting in the queue (including cancelled ones not yet drained). */
+    public int getPending() {
+        return pending;
+    }
+
+    /** Owners (players or worlds) with spawns waiting. */
+    public int getActiveOwners() {
+        return active.size();
+    }
+
+    public int getSpawnedLastTick() {
+        return spawnedLastTick;
+    }
+
+    public long getTotalSpawned() {
+        return totalSpawned;
+    }
+
+    /** Spawns refused when drained: chunk unloaded, lineage too deep, chunk cap reached or spawn cancelled. */
+    public long getTotalRefused() {
+        return totalRefused;
+    }
+
+    public long getTotalCancelled() {
+        return totalCancelled;
+    }
+
+    /** Spawns refused at submit time because their owner already had too many queued. */
+    public long getTotalOverflowed() {
+        return totalOverflowed;
+    }
+
+    /* ------------------- Queue entries ------------------- */
+
+    private static final class Lane {
+        final UUID owner;
+        final ArrayDeque<Request> requests = new ArrayDeque<>();
+
+        Lane(UUID owner) {
+            this.owner = owner;
+        }
+    }
+
+    private static final class Request {
+        final Location location;
+        final EntityType type;
+        final int parentDepth;
+        final int rootId;
+        final SpawnHandle handle;
+        // The modifier that queued the spawn, or null.
+        final ModifierCounters counters;
+
+        Request(Location location, EntityType type, int parentDepth, int rootId, SpawnHandle handle,
+                ModifierCounters counters) {
+            this.location = location;
+            this.type = type;
+            this.parentDepth = parentDepth;
+            this.rootId = rootId;
+            this.handle = handle;
+            this.counters = counters;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+    @CLASS-TITLE: TeleportPipeline.java
+    @CLASS-DESCRIPTION: Moves every entity of a world to one destination (TELEPORT_ALL_ENTITIES) without
+    freezing the server. The destination chunk is loaded first (asynchronously where the server supports
+    it, see AsyncChunks) and held with a plugin chunk ticket while the job runs. Entities are
+    then teleported chunk by chunk, at most a fixed number per tick, reading one chunk's entities at a time
+    instead of copying the whole world's entity list. Configured entity types, vehicles carrying passengers,
+    entities riding something and countdown holograms are left where they are. One job per world at a time;
+    progress is available while it runs and the totals are logged when it finishes. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.entity;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.im4ever12c.chaoscraft.world.AsyncChunks;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public final class TeleportPipeline implements Listener, Runnable {
+
+    private final Plugin plugin;
+    private final CountdownHolograms holograms;
+    private final Set<EntityType> skippedTypes;
+    private final boolean skipVehiclesWithPassengers;
+    private final int entitiesPerTick;
+    private final List<Job> jobs = new ArrayList<>();
+
+    /**
+     * @param skippedTypes               entity types never teleported
+     * @param skipVehiclesWithPassengers leave vehicles that carry passengers (and so their passengers) in place
+     * @param entitiesPerTick            most entities looked at per tick, across all jobs
+     */
+    public TeleportPipeline(Plugin plugin, CountdownHolograms holograms, Set<EntityType> skippedTypes,
+                            boolean skipVehiclesWithPassengers, int entitiesPerTick) {
+        if (entitiesPerTick <= 0) {
+            throw new IllegalArgumentException("Entities per tick must be positive: " + entitiesPerTick);
+        }
+        this.plugin = plugin;
+        this.holograms = holograms;
+        this.skippedTypes = skippedTypes.isEmpty() ? EnumSet.noneOf(EntityType.class) : EnumSet.copyOf(skippedTypes);
+        this.skipVehiclesWithPassengers = skipVehiclesWithPassengers;
+        this.entitiesPerTick = entitiesPerTick;
+    }
+
+    /**
+     * Starts teleporting every entity in the world to the destination. Returns false if a job is
+     * already running in that world.
+     */
+    public boolean start(World world, Location destination) {
+        for (Job job : jobs) {
+            if (job.world.equals(world)) {
+                return false;
+            }
+        }
+        Job job = new Job(world, destination.clone());
+        jobs.add(job);
+        loadDestination(job);
+        return true;
+    }
+
+    private void loadDestination(Job job) {
+        AsyncChunks.load(plugin, job.world, job.destination.getBlockX() >> 4, job.destination.getBlockZ() >> 4, chunk -> {
+            if (chunk == null) {
+                finish(job);
+            } else {
+                destinationLoaded(job, chunk);
+            }
+        });
+    }
+
+    private void destinationLoaded(Job job, Chunk chunk) {
+        if (!jobs.contains(job)) {
+            return;
+        }
+        chunk.addPluginChunkTicket(plugin);
+        job.destinationChunk = chunk;
+        // The destination chunk goes first, before anything has been moved into it.
+        Chunk[] loaded = job.world.getLoadedChunks();
+        job.chunks = new ArrayList<>(loaded.length);
+        job.chunks.add(chunk);
+        for (Chunk other : loaded) {
+            if (other.getX() != chunk.getX() || other.getZ() != chunk.getZ()) {
+                job.chunks.add(other);
+            }
+        }
+    }
+
+    /**
+     * Moves up to entitiesPerTick entities, oldest job first.
+     */
+    @Override
+    public void run() {
+        int budget = entitiesPerTick;
+        Iterator<Job> iterator = jobs.iterator();
+        while (iterator.hasNext() && budget > 0) {
+            Job job = iterator.next();
+            if (job.chunks == null) {
+                continue;
+            }
+            budget = job.step(budget);
+            if (job.isDone()) {
+                iterator.remove();
+                release(job);
+                plugin.getLogger().info(String.format("Teleported %d entities to %s (%d skipped) in %d ticks, %d ms",
+                        job.moved, job.world.getName(), job.skipped, job.ticks,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - job.startedNanos)));
+            }
+        }
+    }
+
+    private boolean shouldSkip(Entity entity) {
+        // Riders travel with (or stay with) their vehicle; teleporting them alone would dismount them.
+        return skippedTypes.contains(entity.getType())
+                || entity.isInsideVehicle()
+                || (skipVehiclesWithPassengers && !entity.getPassengers().isEmpty())
+                || holograms.isHologram(entity);
+    }
+
+    private void finish(Job job) {
+        if (jobs.remove(job)) {
+            release(job);
+        }
+    }
+
+    private void release(Job job) {
+        if (job.destinationChunk != null) {
+            job.destinationChunk.removePluginChunkTicket(plugin);
+        }
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        Iterator<Job> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            if (job.world.equals(event.getWorld())) {
+                iterator.remove();
+                release(job);
+            }
+        }
+    }
+
+    /** Abandons every running job, e.g. when the plugin is disabled. */
+    public void cancelAll() {
+        for (Job job : jobs) {
+            release(job);
+        }
+        jobs.clear();
+    }
+
+    /* ------------------- Progress ------------------- */
+
+    public int getRunningJobs() {
+        return jobs.size();
+    }
+
+    /**
+     * Progress of the job in a world as a fraction of its chunks processed (0 while the destination loads),
+     * or -1 if no job is running there.
+     */
+    public double getProgress(World world) {
+        for (Job job : jobs) {
+            if (job.world.equals(world)) {
+                return job.chunks == null ? 0.0 : (double) job.chunkIndex / job.chunks.size();
+            }
+        }
+        return -1.0;
+    }
+
+    private final class Job {
+        final World world;
+        final Location destination;
+        final long startedNanos = System.nanoTime();
+        Chunk destinationChunk;
+        // Chunks to empty, destination first; null until the destination is loaded.
+        List<Chunk> chunks;
+        int chunkIndex;
+        Entity[] current;
+        int entityIndex;
+        int moved;
+        int skipped;
+        int ticks;
+
+        Job(World world, Location destination) {
+            this.world = world;
+            this.destination = destination;
+        }
+
+        /** Processes entities until the budget is spent or the job is done. Returns the budget left. */
+        int step(int budget) {
+            ticks++;
+            while (budget > 0 && !isDone()) {
+                if (current == null || entityIndex >= current.length) {
+                    Chunk chunk = chunks.get(chunkIndex);
+                    if (current != null) {
+                        chunkIndex++;
+                        current = null;
+                        continue;
+                    }
+                    // A chunk that unloaded since the job started has nothing left to move.
+                    current = chunk.isLoaded() ? chunk.getEntities() : new Entity[0];
+                    entityIndex = 0;
+                    continue;
+                }
+                Entity entity = current[entityIndex++];
+                budget--;
+                if (!entity.isValid() || shouldSkip(entity)) {
+                    skipped++;
+                } else if (entity.teleport(destination)) {
+                    moved++;
+                } else {
+                    skipped++;
+                }
+            }
+            return budget;
+        }
+
+        boolean isDone() {
+            return chunkIndex >= chunks.size();
+        }
+    }
+}
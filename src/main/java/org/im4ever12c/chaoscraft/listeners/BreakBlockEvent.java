@@ -9,67 +9,80 @@ package org.im4ever12c.chaoscraft.listeners;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.World;
-import org.bukkit.entity.ArmorStand;
+import org.bukkit.block.Block;
 import org.bukkit.entity.EntityType;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.im4ever12c.chaoscraft.ChaosCraft;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.config.Range;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.CountdownHolograms;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.schedule.DelayedExplosion;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 
 public class BreakBlockEvent implements Listener {
 
-    private final Random random = new Random();
+    private final ChaosRandom random;
+    private final ChaosSpawner spawner;
+    private final CountdownHolograms holograms;
+    private final ExplosionLimiter explosions;
+    private final ModifierSettings.Group<BlockBreakModifier> modifiers;
+    private final ModifierMetrics.Group<BlockBreakModifier> stats;
 
-    @EventHandler
-    public void onBlockBreak(BlockBreakEvent event) {
-        // Pick exactly ONE random modifier based on weighted rarities.
-        BlockBreakModifier chosen = getRandomModifier();
-        if (chosen != null) {
-            chosen.apply(event, random);
-        }
+    public BreakBlockEvent(ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics, ChaosSpawner spawner,
+                           CountdownHolograms holograms, ExplosionLimiter explosions) {
+        this.random = random;
+        this.spawner = spawner;
+        this.holograms = holograms;
+        this.explosions = explosions;
+        this.modifiers = settings.register("block-break", BlockBreakModifier.values());
+        this.stats = metrics.register(modifiers.getKey(), BlockBreakModifier.values());
     }
 
-    /**
-     * Picks exactly one modifier from BlockBreakModifier based on each modifier's rarity weight.
-     * If NO_EVENT is chosen, nothing will happen.
-     */
-    private BlockBreakModifier getRandomModifier() {
-        double totalWeight = 0.0;
-        for (BlockBreakModifier mod : BlockBreakModifier.values()) {
-            totalWeight += mod.getRarity();
-        }
-        double roll = random.nextDouble() * totalWeight;
-        for (BlockBreakModifier mod : BlockBreakModifier.values()) {
-            if (roll < mod.getRarity()) {
-                return mod;
+    @EventHandler
+    public void onBlockBreak(BlockBreakEvent event) {
+        // Pick exactly ONE random modifier based on the weighted rarities of the block's intensity profile.
+        // If NO_EVENT is chosen, nothing will happen.
+        Block block = event.getBlock();
+        ModifierTable<BlockBreakModifier> table = modifiers.at(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+        BlockBreakModifier modifier = table.next(random);
+        if (modifier != null) {
+            ModifierCounters counters = stats.of(modifier);
+            long start = counters.begin();
+            try {
+                modifier.apply(event, random, spawner, holograms, explosions, table.ranges(modifier));
+            } finally {
+                counters.end(start);
             }
-            roll -= mod.getRarity();
         }
-        return null; // Should not happen
     }
 
     /**
      * Enum describing possible block break modifiers.
      * Each modifier has:
-     *   - A "rarity" (chance weight)
-     *   - An "apply()" method that is called if chosen.
+     *   - A "rarity" (default chance weight) and default value ranges, both overridable in config.yml
+     *   - An "apply()" method that is called if chosen, with the configured ranges.
      * <p>
      * No modifier here is intended to be deadly to players.
      */
-    private enum BlockBreakModifier {
+    enum BlockBreakModifier implements ModifierSpec {
         /**
          * No effect.
          */
         NO_EVENT(0.20) {
             @Override
-            public void apply(BlockBreakEvent event, Random random) {
+            public void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 // Do nothing.
             }
         },
@@ -78,8 +91,10 @@ public class BreakBlockEvent implements Listener {
          */
         SPAWN_RANDOM_MOB(0.15) {
             @Override
-            public void apply(BlockBreakEvent event, Random random) {
-                World world = event.getBlock().getWorld();
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 Location loc = event.getBlock().getLocation().add(0.5, 0, 0.5);
                 List<EntityType> possibleMobs = Arrays.asList(
                         EntityType.COW,
@@ -91,53 +106,35 @@ public class BreakBlockEvent implements Listener {
                         EntityType.WITHER
                 );
                 EntityType chosenType = possibleMobs.get(random.nextInt(possibleMobs.size()));
-                world.spawnEntity(loc, chosenType);
+                spawner.spawn(loc, chosenType, null);
             }
         },
         /**
-         * Timed Explosion: Instead of exploding immediately, spawn a temporarily invisible ArmorStand
-         * with a visible countdown name tag (from "5" down to "1"). After 5 seconds, remove the ArmorStand
-         * and create an explosion at that location. The explosion strength is randomly chosen between
-         * 1× and 10× a creeper explosion (base value of 3).
+         * Timed Explosion: Instead of exploding immediately, show a countdown hologram (from "5" down to "1").
+         * After 5 seconds, create an explosion at that location. The explosion strength is randomly chosen
+         * between 1× and 10× a creeper explosion (base value of 3).
          */
-        TIMED_EXPLOSION(0.10) {
+        TIMED_EXPLOSION(0.10, Range.of("power-multiplier", 1, 10)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
-            public void apply(BlockBreakEvent event, Random random) {
-                World world = event.getBlock().getWorld();
+            public void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 // Use the center of the broken block.
                 final Location center = event.getBlock().getLocation().clone().add(0.5, 0.5, 0.5);
-                // Spawn an ArmorStand to display the countdown.
-                final ArmorStand timerStand = world.spawn(center, ArmorStand.class);
-                timerStand.setGravity(false);
-                timerStand.setVisible(false);
-                timerStand.setCustomNameVisible(true);
-                timerStand.setCustomName("5");
-                // Schedule a countdown task.
-                new BukkitRunnable() {
-                    int countdown = 5;
-                    @Override
-                    public void run() {
-                        if (countdown > 0) {
-                            timerStand.setCustomName(String.valueOf(countdown));
-                            countdown--;
-                        } else {
-                            timerStand.remove();
-                            // Determine explosion power: base creeper explosion is ~3,
-                            // multiplied by a random factor between 1 and 10.
-                            float explosionPower = 3.0F * (1 + random.nextInt(10));
-                            world.createExplosion(center.getX(), center.getY(), center.getZ(), explosionPower, false, true);
-                            cancel();
-                        }
-                    }
-                }.runTaskTimer(ChaosCraft.getPlugin(ChaosCraft.class), 0L, 20L);
+                // Determine explosion power: base creeper explosion is ~3,
+                // multiplied by a random factor between 1 and 10.
+                float explosionPower = 3.0F * ranges[0].nextInt(random);
+                holograms.start(center, 5, new DelayedExplosion(explosions, center, explosionPower, null));
             }
         },
         /**
          * Cancel normal block drops and replace them with random "precious" loot.
          */
-        CHANGE_DROPS(0.20) {
+        CHANGE_DROPS(0.20, Range.of("drops", 1, 3)) {
             @Override
-            public void apply(BlockBreakEvent event, Random random) {
+            public void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 event.setDropItems(false);
                 List<Material> precious = Arrays.asList(
                         Material.DIAMOND,
@@ -147,7 +144,7 @@ public class BreakBlockEvent implements Listener {
                         Material.APPLE
                 );
                 Location dropLoc = event.getBlock().getLocation().add(0.5, 0.5, 0.5);
-                int dropCount = 1 + random.nextInt(3);
+                int dropCount = ranges[0].nextInt(random);
                 for (int i = 0; i < dropCount; i++) {
                     Material chosen = precious.get(random.nextInt(precious.size()));
                     event.getBlock().getWorld().dropItemNaturally(dropLoc, new ItemStack(chosen));
@@ -157,21 +154,23 @@ public class BreakBlockEvent implements Listener {
         /**
          * Change XP dropped from block break to a random amount (0..30).
          */
-        CHANGE_XP(0.20) {
+        CHANGE_XP(0.20, Range.of("xp", 0, 30)) {
             @Override
-            public void apply(BlockBreakEvent event, Random random) {
-                event.setExpToDrop(random.nextInt(31));
+            public void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
+                event.setExpToDrop(ranges[0].nextInt(random));
             }
         },
         /**
          * Strike lightning near the block location.
          */
-        SUMMON_LIGHTNING(0.10) {
+        SUMMON_LIGHTNING(0.10, Range.of("offset", -1, 1, -16, 16)) {
             @Override
-            public void apply(BlockBreakEvent event, Random random) {
+            public void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 Location loc = event.getBlock().getLocation();
-                int xOffset = random.nextInt(3) - 1; // -1, 0, or 1
-                int zOffset = random.nextInt(3) - 1;
+                int xOffset = ranges[0].nextInt(random); // -1, 0, or 1 by default
+                int zOffset = ranges[0].nextInt(random);
                 Location strikeLoc = loc.add(xOffset, 0, zOffset);
                 if (strikeLoc.getWorld() != null) {
                     strikeLoc.getWorld().strikeLightning(strikeLoc);
@@ -180,8 +179,13 @@ public class BreakBlockEvent implements Listener {
         };
 
         private final double rarity;
-        BlockBreakModifier(double rarity) { this.rarity = rarity; }
+        private final Range[] ranges;
+        BlockBreakModifier(double rarity, Range... ranges) { this.rarity = rarity; this.ranges = ranges; }
+        @Override
         public double getRarity() { return rarity; }
-        public abstract void apply(BlockBreakEvent event, Random random);
+        @Override
+        public Range[] getRanges() { return ranges; }
+        public abstract void apply(BlockBreakEvent event, ChaosRandom random, ChaosSpawner spawner,
+                                   CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges);
     }
 }
\ No newline at end of file
@@ -1,221 +1,277 @@
 package org.im4ever12c.chaoscraft.listeners;
 
 import org.bukkit.Location;
-import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.Entity;
-import org.bukkit.entity.EntityType;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityRemoveEvent;
 import org.bukkit.event.entity.EntitySpawnEvent;
-import org.bukkit.metadata.FixedMetadataValue;
-import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.potion.PotionEffectType;
-import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.Vector;
-import org.im4ever12c.chaoscraft.ChaosCraft;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.entity.CountdownHolograms;
+import org.im4ever12c.chaoscraft.entity.SpatialGrid;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.schedule.DelayedExplosion;
+import org.im4ever12c.chaoscraft.schedule.TimingWheel;
+import org.im4ever12c.chaoscraft.traits.EntityTrait;
+import org.im4ever12c.chaoscraft.traits.EntityTraitCodec;
+import org.im4ever12c.chaoscraft.traits.EntityTraitIndex;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
 
-import java.util.Random;
+import java.util.UUID;
 
 public class EntityEvents implements Listener {
 
-    private final Random random = new Random();
+    private static final EntityTrait[] TRAITS = EntityTrait.values();
+
+    private final ChaosRandom random;
+    private final ModifierSettings.Group<EntityTrait> traitSettings;
+    private final ModifierMetrics.Group<EntityTrait> traitStats;
+    private final ExplosionLimiter explosions;
+    private final SpawnQueue spawns;
+    private final CountdownHolograms holograms;
+    private final TimingWheel wheel;
+    private final SpatialGrid grid;
+    private final EntityTraitIndex traitIndex = new EntityTraitIndex();
+    private final EntityTraitCodec traitCodec;
+
+    public EntityEvents(Plugin plugin, ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics,
+                        ExplosionLimiter explosions, SpawnQueue spawns, CountdownHolograms holograms, TimingWheel wheel,
+                        SpatialGrid grid) {
+        this.random = random;
+        this.traitSettings = settings.register("entity-traits", TRAITS);
+        this.traitStats = metrics.register(traitSettings.getKey(), TRAITS);
+        this.explosions = explosions;
+        this.spawns = spawns;
+        this.holograms = holograms;
+        this.wheel = wheel;
+        this.grid = grid;
+        this.traitCodec = new EntityTraitCodec(plugin);
+    }
+
+    /**
+     * Reads the persisted traits of already-loaded entities into the index (e.g. those loaded before the plugin enabled).
+     */
+    public void loadTraits(Iterable<? extends Entity> entities) {
+        for (Entity entity : entities) {
+            if (entity instanceof LivingEntity) {
+                traitCodec.load(entity, traitIndex);
+            }
+        }
+    }
 
     /**
-     * On creature spawn, assign metadata based on weighted probabilities.
+     * On creature spawn, roll every trait independently and record the result in the trait index.
      */
     @EventHandler
     public void onCreatureSpawn(EntitySpawnEvent event) {
         // Only affect LivingEntities.
         if (!(event.getEntity() instanceof LivingEntity)) return;
         LivingEntity entity = (LivingEntity) event.getEntity();
-        JavaPlugin plugin = ChaosCraft.getPlugin(ChaosCraft.class);
 
-        // bombOnDamage (20% chance)
-        if (random.nextDouble() < 0.20) {
-            entity.setMetadata("bombOnDamage", new FixedMetadataValue(plugin, true));
-        }
-        // extraLootMultiplier (25% chance, value 1 to 10)
-        if (random.nextDouble() < 0.25) {
-            double multiplier = 1 + random.nextInt(10);
-            entity.setMetadata("extraLootMultiplier", new FixedMetadataValue(plugin, multiplier));
-        }
-        // extraSpawnOnDeath (10% chance, value 1 to 25)
-        if (random.nextDouble() < 0.10) {
-            int extraCount = 1 + random.nextInt(25);
-            entity.setMetadata("extraSpawnOnDeath", new FixedMetadataValue(plugin, extraCount));
-        }
-        // fireOnDamage (15% chance)
-        if (random.nextDouble() < 0.15) {
-            entity.setMetadata("fireOnDamage", new FixedMetadataValue(plugin, true));
-        }
-        // freezeOnDamage (10% chance)
-        if (random.nextDouble() < 0.10) {
-            entity.setMetadata("freezeOnDamage", new FixedMetadataValue(plugin, true));
-        }
-        // cloneOnDamage (10% chance)
-        if (random.nextDouble() < 0.10) {
-            entity.setMetadata("cloneOnDamage", new FixedMetadataValue(plugin, true));
-        }
-        // speedBoostOnDamage (10% chance)
-        if (random.nextDouble() < 0.10) {
-            entity.setMetadata("speedBoostOnDamage", new FixedMetadataValue(plugin, true));
-        }
-        // explodeOnDeathDelayed (5% chance)
-        if (random.nextDouble() < 0.05) {
-            entity.setMetadata("explodeOnDeathDelayed", new FixedMetadataValue(plugin, true));
-        }
-        // lightningOnDeath (5% chance)
-        if (random.nextDouble() < 0.05) {
-            entity.setMetadata("lightningOnDeath", new FixedMetadataValue(plugin, true));
+        ModifierTable<EntityTrait> table = traitSettings.at(entity.getLocation());
+        long rolled = 0L;
+        for (EntityTrait trait : TRAITS) {
+            if (random.nextDouble() < table.weight(trait)) {
+                rolled |= trait.bit();
+            }
         }
-        // randomPotionOnDeath (5% chance)
-        if (random.nextDouble() < 0.05) {
-            entity.setMetadata("randomPotionOnDeath", new FixedMetadataValue(plugin, true));
+        if (rolled == 0L) {
+            return;
         }
+        // extraLootMultiplier: value 1 to 10. extraSpawnOnDeath: value 1 to 25 (by default).
+        int lootMultiplier = EntityTrait.EXTRA_LOOT_MULTIPLIER.isIn(rolled)
+                ? table.ranges(EntityTrait.EXTRA_LOOT_MULTIPLIER)[0].nextInt(random) : 0;
+        int extraSpawns = EntityTrait.EXTRA_SPAWN_ON_DEATH.isIn(rolled)
+                ? table.ranges(EntityTrait.EXTRA_SPAWN_ON_DEATH)[0].nextInt(random) : 0;
+        traitIndex.put(entity.getEntityId(), rolled, lootMultiplier, extraSpawns);
+        traitCodec.write(entity, rolled, lootMultiplier, extraSpawns);
     }
 
     /**
-     * When an entity is damaged, check for metadata keys and apply effects.
+     * When an entity is damaged, look up its traits once and apply the one-shot damage effects.
      */
     @EventHandler
     public void onEntityDamage(EntityDamageEvent event) {
         if (!(event.getEntity() instanceof LivingEntity)) return;
         LivingEntity entity = (LivingEntity) event.getEntity();
+        int slot = traitIndex.find(entity.getEntityId());
+        if (slot < 0) return;
+        long stored = traitIndex.traitsAt(slot);
+        long traits = stored & EntityTrait.DAMAGE_TRAITS;
+        if (traits == 0L) return;
+        // Every damage trait only fires once.
+        traitCodec.write(entity, stored & ~traits, traitIndex.lootMultiplierAt(slot), traitIndex.extraSpawnsAt(slot));
+        traitIndex.clearAt(slot, traits);
         Location loc = entity.getLocation();
-        JavaPlugin plugin = ChaosCraft.getPlugin(ChaosCraft.class);
 
         // bombOnDamage: Turn the entity into a timed bomb.
-        if (entity.hasMetadata("bombOnDamage")) {
-            entity.removeMetadata("bombOnDamage", plugin);
-            event.setCancelled(true);
-            if (loc.getWorld() == null) {
-                return;
-            }
-            final ArmorStand timerStand = (ArmorStand) loc.getWorld().spawnEntity(loc, EntityType.ARMOR_STAND);
-            timerStand.setGravity(false);
-            timerStand.setVisible(false);
-            timerStand.setCustomNameVisible(true);
-            timerStand.setCustomName("5");
-            entity.setInvulnerable(true);
-            new BukkitRunnable() {
-                int count = 5;
-                @Override
-                public void run() {
-                    if (count > 0) {
-                        timerStand.setCustomName(String.valueOf(count));
-                        count--;
-                    } else {
-                        timerStand.remove();
-                        float explosionPower = 3.0F * (1 + random.nextInt(10));
-                        loc.getWorld().createExplosion(loc.getX(), loc.getY(), loc.getZ(), explosionPower, false, true);
-                        entity.remove();
-                        cancel();
-                    }
+        if (EntityTrait.BOMB_ON_DAMAGE.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.BOMB_ON_DAMAGE);
+            long start = counters.begin();
+            try {
+                event.setCancelled(true);
+                if (loc.getWorld() == null) {
+                    return;
                 }
-            }.runTaskTimer(plugin, 0L, 20L);
+                float explosionPower = 3.0F * traitSettings.at(loc).ranges(EntityTrait.BOMB_ON_DAMAGE)[0].nextInt(random);
+                if (holograms.start(loc, 5, new DelayedExplosion(explosions, loc, explosionPower, entity))) {
+                    entity.setInvulnerable(true);
+                }
+            } finally {
+                counters.end(start);
+            }
         }
 
         // fireOnDamage: Set the entity on fire for 5 seconds.
-        if (entity.hasMetadata("fireOnDamage")) {
-            entity.removeMetadata("fireOnDamage", plugin);
-            entity.setFireTicks(100);
+        if (EntityTrait.FIRE_ON_DAMAGE.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.FIRE_ON_DAMAGE);
+            long start = counters.begin();
+            try {
+                entity.setFireTicks(100);
+            } finally {
+                counters.end(start);
+            }
         }
 
         // freezeOnDamage: Cancel damage and freeze the entity.
-        if (entity.hasMetadata("freezeOnDamage")) {
-            entity.removeMetadata("freezeOnDamage", plugin);
-            event.setCancelled(true);
-            entity.setVelocity(new Vector(0, 0, 0));
-            // (Optional: apply a slowness potion effect here.)
+        if (EntityTrait.FREEZE_ON_DAMAGE.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.FREEZE_ON_DAMAGE);
+            long start = counters.begin();
+            try {
+                event.setCancelled(true);
+                entity.setVelocity(new Vector(0, 0, 0));
+                // (Optional: apply a slowness potion effect here.)
+            } finally {
+                counters.end(start);
+            }
         }
 
         // cloneOnDamage: Spawn one duplicate of the entity.
-        if (entity.hasMetadata("cloneOnDamage")) {
-            entity.removeMetadata("cloneOnDamage", plugin);
-            if (loc.getWorld() == null) {
-                return;
+        if (EntityTrait.CLONE_ON_DAMAGE.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.CLONE_ON_DAMAGE);
+            long start = counters.begin();
+            try {
+                if (loc.getWorld() == null) {
+                    return;
+                }
+                spawns.spawnNow(loc, entity.getType(), entity);
+            } finally {
+                counters.end(start);
             }
-            loc.getWorld().spawnEntity(loc, entity.getType());
         }
 
         // speedBoostOnDamage: Apply a temporary speed boost for 5 seconds.
-        if (entity.hasMetadata("speedBoostOnDamage")) {
-            entity.removeMetadata("speedBoostOnDamage", plugin);
-            entity.addPotionEffect(new org.bukkit.potion.PotionEffect(
-                    org.bukkit.potion.PotionEffectType.SPEED, 20 * 5, 1, false, true));
+        if (EntityTrait.SPEED_BOOST_ON_DAMAGE.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.SPEED_BOOST_ON_DAMAGE);
+            long start = counters.begin();
+            try {
+                entity.addPotionEffect(new org.bukkit.potion.PotionEffect(
+                        org.bukkit.potion.PotionEffectType.SPEED, 20 * 5, 1, false, true));
+            } finally {
+                counters.end(start);
+            }
         }
     }
 
     /**
-     * When an entity dies, check for metadata keys to modify drops and spawn extra entities.
+     * When an entity dies, look up its traits once to modify drops and spawn extra entities.
      */
     @EventHandler
     public void onEntityDeath(org.bukkit.event.entity.EntityDeathEvent event) {
         LivingEntity entity = event.getEntity();
+        int slot = traitIndex.find(entity.getEntityId());
+        if (slot < 0) return;
+        long traits = traitIndex.traitsAt(slot);
+        int lootMultiplier = traitIndex.lootMultiplierAt(slot);
+        int extraCount = traitIndex.extraSpawnsAt(slot);
+        traitIndex.removeAt(slot);
         Location loc = entity.getLocation();
         org.bukkit.World world = loc.getWorld();
-        JavaPlugin plugin = ChaosCraft.getPlugin(ChaosCraft.class);
 
         // extraLootMultiplier: Multiply the drops.
-        if (entity.hasMetadata("extraLootMultiplier")) {
-            double multiplier = entity.getMetadata("extraLootMultiplier").get(0).asDouble();
-            event.getDrops().forEach(drop -> {
-                int extraCopies = (int) multiplier - 1;
-                for (int i = 0; i < extraCopies; i++) {
-                    if (world == null) {
-                        return;
+        if (EntityTrait.EXTRA_LOOT_MULTIPLIER.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.EXTRA_LOOT_MULTIPLIER);
+            long start = counters.begin();
+            try {
+                event.getDrops().forEach(drop -> {
+                    int extraCopies = lootMultiplier - 1;
+                    for (int i = 0; i < extraCopies; i++) {
+                        if (world == null) {
+                            return;
+                        }
+                        world.dropItemNaturally(loc, drop.clone());
                     }
-                    world.dropItemNaturally(loc, drop.clone());
-                }
-            });
+                });
+            } finally {
+                counters.end(start);
+            }
         }
 
-        // extraSpawnOnDeath: Spawn additional copies of the same entity.
-        if (entity.hasMetadata("extraSpawnOnDeath")) {
-            int extraCount = entity.getMetadata("extraSpawnOnDeath").get(0).asInt();
-            for (int i = 0; i < extraCount; i++) {
+        // extraSpawnOnDeath: Queue additional copies of the same entity (their lineage is taken from it now).
+        if (EntityTrait.EXTRA_SPAWN_ON_DEATH.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.EXTRA_SPAWN_ON_DEATH);
+            long start = counters.begin();
+            try {
                 if (world == null) {
                     return;
                 }
-                world.spawnEntity(loc, entity.getType());
+                UUID owner = SpawnQueue.ownerOf(entity.getKiller());
+                for (int i = 0; i < extraCount; i++) {
+                    spawns.submit(owner, loc, entity.getType(), entity);
+                }
+            } finally {
+                counters.end(start);
             }
         }
 
         // explodeOnDeathDelayed: Schedule a delayed explosion (3 seconds later).
-        if (entity.hasMetadata("explodeOnDeathDelayed")) {
-            entity.removeMetadata("explodeOnDeathDelayed", plugin);
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    float explosionPower = 3.0F * (1 + random.nextInt(10));
-                    if (world == null) {
-                        return;
-                    }
-                    world.createExplosion(loc.getX(), loc.getY(), loc.getZ(), explosionPower, false, true);
+        if (EntityTrait.EXPLODE_ON_DEATH_DELAYED.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.EXPLODE_ON_DEATH_DELAYED);
+            long start = counters.begin();
+            try {
+                if (world == null) {
+                    return;
                 }
-            }.runTaskLater(plugin, 60L);
+                float explosionPower = 3.0F * traitSettings.at(loc).ranges(EntityTrait.EXPLODE_ON_DEATH_DELAYED)[0].nextInt(random);
+                wheel.schedule(new DelayedExplosion(explosions, loc, explosionPower, null), 60L);
+            } finally {
+                counters.end(start);
+            }
         }
 
         // lightningOnDeath: Strike lightning at the entity's death location.
-        if (entity.hasMetadata("lightningOnDeath")) {
-            entity.removeMetadata("lightningOnDeath", plugin);
-            if (world == null) {
-                return;
+        if (EntityTrait.LIGHTNING_ON_DEATH.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.LIGHTNING_ON_DEATH);
+            long start = counters.begin();
+            try {
+                if (world == null) {
+                    return;
+                }
+                world.strikeLightning(loc);
+            } finally {
+                counters.end(start);
             }
-            world.strikeLightning(loc);
         }
 
         // randomPotionOnDeath: Apply a random potion effect to all nearby living entities for 10 seconds.
-        if (entity.hasMetadata("randomPotionOnDeath")) {
-            entity.removeMetadata("randomPotionOnDeath", plugin);
-            if (world == null) {
-                return;
-            }
-            for (Entity e : world.getNearbyEntities(loc, 10, 10, 10)) {
-                if (e instanceof LivingEntity) {
-                    LivingEntity le = (LivingEntity) e;
+        if (EntityTrait.RANDOM_POTION_ON_DEATH.isIn(traits)) {
+            ModifierCounters counters = traitStats.of(EntityTrait.RANDOM_POTION_ON_DEATH);
+            long start = counters.begin();
+            try {
+                if (world == null) {
+                    return;
+                }
+                grid.forEachNearby(loc, 10, le -> {
                     org.bukkit.potion.PotionEffectType[] effects = {
                             org.bukkit.potion.PotionEffectType.SPEED,
                             PotionEffectType.SLOWNESS,
@@ -225,8 +281,27 @@ public class EntityEvents implements Listener {
                     };
                     org.bukkit.potion.PotionEffectType effect = effects[random.nextInt(effects.length)];
                     le.addPotionEffect(new org.bukkit.potion.PotionEffect(effect, 20 * 10, 1, false, true));
-                }
+                });
+            } finally {
+                counters.end(start);
             }
         }
     }
+
+    /**
+     * Entities coming back from disk (chunk load, restart) get their persisted traits indexed again.
+     */
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        loadTraits(event.getEntities());
+    }
+
+    /**
+     * Drop the in-memory traits of entities that leave the world without dying (despawn, chunk unload,
+     * plugin removal). Unloaded entities keep their traits in their PersistentDataContainer.
+     */
+    @EventHandler
+    public void onEntityRemove(EntityRemoveEvent event) {
+        traitIndex.remove(event.getEntity().getEntityId());
+    }
 }
\ No newline at end of file
@@ -3,7 +3,6 @@ package org.im4ever12c.chaoscraft.listeners;
 import org.bukkit.Location;
 import org.bukkit.attribute.Attribute;
 import org.bukkit.entity.Animals;
-import org.bukkit.entity.ArmorStand;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.event.EventHandler;
@@ -11,70 +10,98 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntitySpawnEvent;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
-import org.im4ever12c.chaoscraft.ChaosCraft;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.config.Range;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.CountdownHolograms;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.schedule.DelayedExplosion;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 
 public class EntitySpawnEvents implements Listener {
 
-    private final Random random = new Random();
+    private final ChaosRandom random;
+    private final ChaosSpawner spawner;
+    private final CountdownHolograms holograms;
+    private final ExplosionLimiter explosions;
+    private final ModifierSettings.Group<AnimalSpawnModifier> animalModifiers;
+    private final ModifierSettings.Group<CreatureSpawnModifier> creatureModifiers;
+    private final ModifierMetrics.Group<AnimalSpawnModifier> animalStats;
+    private final ModifierMetrics.Group<CreatureSpawnModifier> creatureStats;
+
+    public EntitySpawnEvents(ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics,
+                             ChaosSpawner spawner, CountdownHolograms holograms, ExplosionLimiter explosions) {
+        this.random = random;
+        this.spawner = spawner;
+        this.holograms = holograms;
+        this.explosions = explosions;
+        this.animalModifiers = settings.register("animal-spawn", AnimalSpawnModifier.values());
+        this.creatureModifiers = settings.register("creature-spawn", CreatureSpawnModifier.values());
+        this.animalStats = metrics.register(animalModifiers.getKey(), AnimalSpawnModifier.values());
+        this.creatureStats = metrics.register(creatureModifiers.getKey(), CreatureSpawnModifier.values());
+    }
 
     @EventHandler
     public void onCreatureSpawn(EntitySpawnEvent event) {
         // Only affect living entities.
         if (!(event.getEntity() instanceof LivingEntity)) return;
         LivingEntity entity = (LivingEntity) event.getEntity();
+        Location location = entity.getLocation();
         // If it's a passive animal, use the Animal modifier pool.
         if (entity instanceof Animals) {
-            AnimalSpawnModifier modifier = getRandomAnimalModifier();
+            ModifierTable<AnimalSpawnModifier> table = animalModifiers.at(location);
+            AnimalSpawnModifier modifier = table.next(random);
             if (modifier != null) {
-                modifier.apply(entity, random);
+                ModifierCounters counters = animalStats.of(modifier);
+                long start = counters.begin();
+                try {
+                    modifier.apply(entity, random, spawner, table.ranges(modifier));
+                } finally {
+                    counters.end(start);
+                }
             }
         } else {
             // Otherwise, use the Creature modifier pool.
-            CreatureSpawnModifier modifier = getRandomCreatureModifier();
+            ModifierTable<CreatureSpawnModifier> table = creatureModifiers.at(location);
+            CreatureSpawnModifier modifier = table.next(random);
             if (modifier != null) {
-                modifier.apply(entity, random);
+                ModifierCounters counters = creatureStats.of(modifier);
+                long start = counters.begin();
+                try {
+                    modifier.apply(entity, random, spawner, holograms, explosions, table.ranges(modifier));
+                } finally {
+                    counters.end(start);
+                }
             }
         }
     }
 
     // --- Animal Modifiers ---
 
-    private AnimalSpawnModifier getRandomAnimalModifier() {
-        double total = 0.0;
-        for (AnimalSpawnModifier mod : AnimalSpawnModifier.values()) {
-            total += mod.getRarity();
-        }
-        double roll = random.nextDouble() * total;
-        for (AnimalSpawnModifier mod : AnimalSpawnModifier.values()) {
-            if (roll < mod.getRarity()) {
-                return mod;
-            }
-            roll -= mod.getRarity();
-        }
-        return null;
-    }
-
-    private enum AnimalSpawnModifier {
+    enum AnimalSpawnModifier implements ModifierSpec {
         NONE(0.40) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 // Do nothing.
             }
         },
-        ATTRIBUTE_BOOST(0.15) {
+        ATTRIBUTE_BOOST(0.15, Range.of("factor", 1.5, 3.0)) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 if (entity.getAttribute(Attribute.GENERIC_MOVEMENT_SPEED) != null) {
-                    double factor = 1.5 + random.nextDouble() * 1.5; // 1.5x to 3x
+                    double factor = ranges[0].nextDouble(random); // 1.5x to 3x by default
                     entity.getAttribute(Attribute.GENERIC_MOVEMENT_SPEED)
                             .setBaseValue(entity.getAttribute(Attribute.GENERIC_MOVEMENT_SPEED).getBaseValue() * factor);
                 }
                 if (entity.getAttribute(Attribute.GENERIC_MAX_HEALTH) != null) {
-                    double factor = 1.5 + random.nextDouble() * 1.5;
+                    double factor = ranges[0].nextDouble(random);
                     double newMax = entity.getAttribute(Attribute.GENERIC_MAX_HEALTH).getBaseValue() * factor;
                     entity.getAttribute(Attribute.GENERIC_MAX_HEALTH).setBaseValue(newMax);
                     entity.setHealth(newMax);
@@ -83,16 +110,16 @@ public class EntitySpawnEvents implements Listener {
         },
         NAME_TAG_CHANGE(0.10) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 List<String> names = Arrays.asList("Fluffy", "Moo Moo", "Baa Baa", "Clucky", "Wiggly");
                 String chosen = names.get(random.nextInt(names.size()));
                 entity.setCustomName(chosen);
                 entity.setCustomNameVisible(true);
             }
         },
-        POTION_EFFECT(0.10) {
+        POTION_EFFECT(0.10, Range.of("seconds", 10, 30), Range.of("amplifier", 0, 1, 0, 255)) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 List<PotionEffectType> effects = Arrays.asList(
                         PotionEffectType.SPEED,
                         PotionEffectType.REGENERATION,
@@ -101,22 +128,24 @@ public class EntitySpawnEvents implements Listener {
                         PotionEffectType.RESISTANCE
                 );
                 PotionEffectType chosen = effects.get(random.nextInt(effects.size()));
-                int duration = 20 * (10 + random.nextInt(21)); // 10-30 seconds
-                int amplifier = random.nextInt(2); // 0 or 1
+                int duration = 20 * ranges[0].nextInt(random); // 10-30 seconds by default
+                int amplifier = ranges[1].nextInt(random); // 0 or 1 by default
                 entity.addPotionEffect(new PotionEffect(chosen, duration, amplifier, false, true));
             }
         },
         ANIMAL_CLONE(0.10) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 // Spawn a duplicate of the animal at the same location.
                 Location loc = entity.getLocation();
-                entity.getWorld().spawnEntity(loc, entity.getType());
+                spawner.spawn(loc, entity.getType(), entity);
             }
         },
         ENTITY_TYPE_CHANGE(0.10) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 // Change animal type based on a simple mapping.
                 EntityType current = entity.getType();
                 EntityType newType = null;
@@ -135,105 +164,80 @@ public class EntitySpawnEvents implements Listener {
                         newType = allowed.get(random.nextInt(allowed.size()));
                         break;
                 }
+                // Spawn the replacement first (it inherits the lineage); keep the original if it was refused.
                 Location loc = entity.getLocation();
-                entity.remove();
-                if (loc.getWorld() == null) {
-                    return;
+                if (spawner.spawn(loc, newType, entity) != null) {
+                    entity.remove();
                 }
-                loc.getWorld().spawnEntity(loc, newType);
             }
         },
-        LAUNCH_ANIMAL(0.05) {
+        LAUNCH_ANIMAL(0.05, Range.of("velocity", 0.5, 1.0, 0.0, 10.0)) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges) {
                 // Give the animal a small upward velocity.
-                entity.setVelocity(entity.getVelocity().setY(0.5 + random.nextDouble() * 0.5));
+                entity.setVelocity(entity.getVelocity().setY(ranges[0].nextDouble(random)));
             }
         };
 
         private final double rarity;
-        AnimalSpawnModifier(double rarity) { this.rarity = rarity; }
+        private final Range[] ranges;
+        AnimalSpawnModifier(double rarity, Range... ranges) { this.rarity = rarity; this.ranges = ranges; }
+        @Override
         public double getRarity() { return rarity; }
-        public abstract void apply(LivingEntity entity, Random random);
+        @Override
+        public Range[] getRanges() { return ranges; }
+        public abstract void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner, Range[] ranges);
     }
 
     // --- Creature (Hostile) Modifiers ---
 
-    private CreatureSpawnModifier getRandomCreatureModifier() {
-        double total = 0.0;
-        for (CreatureSpawnModifier mod : CreatureSpawnModifier.values()) {
-            total += mod.getRarity();
-        }
-        double roll = random.nextDouble() * total;
-        for (CreatureSpawnModifier mod : CreatureSpawnModifier.values()) {
-            if (roll < mod.getRarity()) {
-                return mod;
-            }
-            roll -= mod.getRarity();
-        }
-        return null;
-    }
-
-    private enum CreatureSpawnModifier {
+    enum CreatureSpawnModifier implements ModifierSpec {
         NONE(0.40) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 // Do nothing.
             }
         },
-        TIMER_EXPLOSION(0.10) {
+        TIMER_EXPLOSION(0.10, Range.of("power-multiplier", 1, 10)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 Location loc = entity.getLocation();
                 if (loc.getWorld() == null) {
                     return;
                 }
-                // Spawn an invisible ArmorStand to display a countdown.
-                ArmorStand timerStand = (ArmorStand) loc.getWorld().spawnEntity(loc, EntityType.ARMOR_STAND);
-                timerStand.setGravity(false);
-                timerStand.setVisible(false);
-                timerStand.setCustomNameVisible(true);
-                timerStand.setCustomName("5");
-                entity.setInvulnerable(true);
-                new org.bukkit.scheduler.BukkitRunnable() {
-                    int count = 5;
-                    @Override
-                    public void run() {
-                        if (count > 0) {
-                            timerStand.setCustomName(String.valueOf(count));
-                            count--;
-                        } else {
-                            timerStand.remove();
-                            float explosionPower = 3.0F * (1 + random.nextInt(10));
-                            loc.getWorld().createExplosion(loc.getX(), loc.getY(), loc.getZ(), explosionPower, false, true);
-                            entity.remove();
-                            cancel();
-                        }
-                    }
-                }.runTaskTimer(ChaosCraft.getPlugin(ChaosCraft.class), 0L, 20L);
+                // Show a countdown above the entity, then blow it up.
+                float explosionPower = 3.0F * ranges[0].nextInt(random);
+                if (holograms.start(loc, 5, new DelayedExplosion(explosions, loc, explosionPower, entity))) {
+                    entity.setInvulnerable(true);
+                }
             }
         },
-        ATTRIBUTE_BOOST(0.15) {
+        ATTRIBUTE_BOOST(0.15, Range.of("factor", 1.5, 3.0), Range.of("knockback-resistance-factor", 1.0, 2.0)) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 if (entity.getAttribute(Attribute.GENERIC_MOVEMENT_SPEED) != null) {
-                    double factor = 1.5 + random.nextDouble() * 1.5;
+                    double factor = ranges[0].nextDouble(random);
                     entity.getAttribute(Attribute.GENERIC_MOVEMENT_SPEED)
                             .setBaseValue(entity.getAttribute(Attribute.GENERIC_MOVEMENT_SPEED).getBaseValue() * factor);
                 }
                 if (entity.getAttribute(Attribute.GENERIC_MAX_HEALTH) != null) {
-                    double factor = 1.5 + random.nextDouble() * 1.5;
+                    double factor = ranges[0].nextDouble(random);
                     double newMax = entity.getAttribute(Attribute.GENERIC_MAX_HEALTH).getBaseValue() * factor;
                     entity.getAttribute(Attribute.GENERIC_MAX_HEALTH).setBaseValue(newMax);
                     entity.setHealth(newMax);
                 }
                 if (entity.getAttribute(Attribute.GENERIC_ATTACK_DAMAGE) != null) {
-                    double factor = 1.5 + random.nextDouble() * 1.5;
+                    double factor = ranges[0].nextDouble(random);
                     entity.getAttribute(Attribute.GENERIC_ATTACK_DAMAGE)
                             .setBaseValue(entity.getAttribute(Attribute.GENERIC_ATTACK_DAMAGE).getBaseValue() * factor);
                 }
                 if (entity.getAttribute(Attribute.GENERIC_KNOCKBACK_RESISTANCE) != null) {
-                    double factor = 1.0 + random.nextDouble();
+                    double factor = ranges[1].nextDouble(random);
                     entity.getAttribute(Attribute.GENERIC_KNOCKBACK_RESISTANCE)
                             .setBaseValue(entity.getAttribute(Attribute.GENERIC_KNOCKBACK_RESISTANCE).getBaseValue() * factor);
                 }
@@ -241,7 +245,8 @@ public class EntitySpawnEvents implements Listener {
         },
         NAME_TAG_CHANGE(0.10) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 List<String> names = Arrays.asList(
                         "Silly Billy",
                         "Party Animal",
@@ -254,9 +259,10 @@ public class EntitySpawnEvents implements Listener {
                 entity.setCustomNameVisible(true);
             }
         },
-        POTION_EFFECT(0.10) {
+        POTION_EFFECT(0.10, Range.of("seconds", 10, 30), Range.of("amplifier", 0, 1, 0, 255)) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 List<PotionEffectType> effects = Arrays.asList(
                         PotionEffectType.SPEED,
                         PotionEffectType.REGENERATION,
@@ -265,14 +271,15 @@ public class EntitySpawnEvents implements Listener {
                         PotionEffectType.RESISTANCE
                 );
                 PotionEffectType chosen = effects.get(random.nextInt(effects.size()));
-                int duration = 20 * (10 + random.nextInt(21));
-                int amplifier = random.nextInt(2);
+                int duration = 20 * ranges[0].nextInt(random);
+                int amplifier = ranges[1].nextInt(random);
                 entity.addPotionEffect(new PotionEffect(chosen, duration, amplifier, false, true));
             }
         },
         ENTITY_TYPE_CHANGE(0.10) {
             @Override
-            public void apply(LivingEntity entity, Random random) {
+            public void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                              CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges) {
                 EntityType current = entity.getType();
                 EntityType newType = null;
                 switch (current) {
@@ -286,18 +293,22 @@ public class EntitySpawnEvents implements Listener {
                         newType = allowed.get(random.nextInt(allowed.size()));
                         break;
                 }
+                // Spawn the replacement first (it inherits the lineage); keep the original if it was refused.
                 Location loc = entity.getLocation();
-                entity.remove();
-                if (loc.getWorld() == null) {
-                    return;
+                if (spawner.spawn(loc, newType, entity) != null) {
+                    entity.remove();
                 }
-                loc.getWorld().spawnEntity(loc, newType);
             }
         };
 
         private final double rarity;
-        CreatureSpawnModifier(double rarity) { this.rarity = rarity; }
+        private final Range[] ranges;
+        CreatureSpawnModifier(double rarity, Range... ranges) { this.rarity = rarity; this.ranges = ranges; }
+        @Override
         public double getRarity() { return rarity; }
-        public abstract void apply(LivingEntity entity, Random random);
+        @Override
+        public Range[] getRanges() { return ranges; }
+        public abstract void apply(LivingEntity entity, ChaosRandom random, ChaosSpawner spawner,
+                                   CountdownHolograms holograms, ExplosionLimiter explosions, Range[] ranges);
     }
 }
\ No newline at end of file
@@ -3,72 +3,150 @@
     @CLASS-DESCRIPTION: This class modifies explosion sizes by applying a random modifier.
     Explosion sources can be either blocks or entities. Explosion size refers to the
     distance/blocks affected by the explosion source.
+    An explosion close to one that rolled an effect modifier in the same tick joins it instead of rolling,
+    and the effect is applied once per cluster on the next tick (see ExplosionAggregator).
  */
 
 package org.im4ever12c.chaoscraft.listeners;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.attribute.Attribute;
 import org.bukkit.block.Block;
-import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockExplodeEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.config.Range;
+import org.im4ever12c.chaoscraft.entity.SpatialGrid;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.BlockEditJob;
+import org.im4ever12c.chaoscraft.world.BlockKeys;
+import org.im4ever12c.chaoscraft.world.ExplosionAggregator;
+import org.im4ever12c.chaoscraft.world.ExplosionCluster;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+import org.im4ever12c.chaoscraft.world.ExplosionPlanner;
 
-import java.util.Random;
+import java.util.List;
+import java.util.function.Predicate;
 
-public class ExplosionEvents implements Listener {
-    Random random = new Random();
+public class ExplosionEvents implements Listener, Runnable {
+    // Limiter tokens an effect modifier costs, on the same scale as explosion power.
+    private static final double EFFECT_COST = 3.0;
+
+    private final ChaosRandom random;
+    private final ExplosionPlanner planner;
+    private final ExplosionAggregator<ExplosionModifier> aggregator;
+    private final ExplosionLimiter limiter;
+    private final SpatialGrid grid;
+    private final SpawnQueue spawns;
+    private final ModifierSettings.Group<ExplosionModifier> modifiers;
+    private final ModifierMetrics.Group<ExplosionModifier> stats;
+
+    public ExplosionEvents(ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics, ExplosionPlanner planner,
+                           ExplosionLimiter limiter, SpatialGrid grid, SpawnQueue spawns, double mergeDistance) {
+        this.random = random;
+        this.modifiers = settings.register("explosion", ExplosionModifier.values());
+        this.stats = metrics.register(modifiers.getKey(), ExplosionModifier.values());
+        this.planner = planner;
+        this.limiter = limiter;
+        this.grid = grid;
+        this.spawns = spawns;
+        this.aggregator = new ExplosionAggregator<>(mergeDistance);
+    }
 
     @EventHandler
     public void onEntityExplode(EntityExplodeEvent event) {
-        ExplosionModifier modifier = getRandomModifier();
-        if (modifier == null) {
-            return;
-        }
-        if (modifier.isYieldModifier()) {
-            float newYield = modifier.modifySize(event.getYield(), random);
-            event.setYield(newYield);
-        } else {
-            modifier.applyEffect(event, random);
-            event.setYield(0);
-        }
+        event.setYield(onExplosion(event.getEntity().getLocation(), event.getYield(), event.blockList()));
     }
 
     @EventHandler
     public void onBlockExplode(BlockExplodeEvent event) {
-        ExplosionModifier modifier = getRandomModifier();
-        if (modifier == null) {
-            return;
-        }
-        if (modifier.isYieldModifier()) {
-            float newYield = modifier.modifySize(event.getYield(), random);
-            event.setYield(newYield);
-        } else {
-            modifier.applyEffect(event, random);
-            event.setYield(0);
-        }
+        Location center = event.getBlock().getLocation().clone().add(0.5, 0.5, 0.5);
+        event.setYield(onExplosion(center, event.getYield(), event.blockList()));
     }
 
     /**
-     * Weighted random selection of an explosion modifier.
-     * (The sum of the rarities is 1.0.)
+     * Rolls (or joins) the modifier for one explosion and returns its new yield.
+     * Yield modifiers act on each explosion right away. Effect modifiers are collected into a cluster with the
+     * other explosions of this tick close by, and the cluster's effect is applied once on the next tick.
      */
-    private ExplosionModifier getRandomModifier() {
-        double total = 0.0;
-        for (ExplosionModifier mod : ExplosionModifier.values()) {
-            total += mod.getRarity();
+    private float onExplosion(Location center, float yield, List<Block> blocks) {
+        World world = center.getWorld();
+        ExplosionCluster<ExplosionModifier> cluster = aggregator.join(world, center.getX(), center.getY(), center.getZ(), yield);
+        if (cluster == null) {
+            ModifierTable<ExplosionModifier> table = modifiers.at(world, center.getBlockX() >> 4, center.getBlockZ() >> 4);
+            ExplosionModifier modifier = table.next(random);
+            if (modifier == null) {
+                // Every modifier is disabled.
+                return yield;
+            }
+            if (!modifier.isYieldModifier()
+                    && !limiter.tryAcquire(world, center.getBlockX(), center.getBlockZ(), EFFECT_COST)) {
+                // The region is out of explosion budget: downgrade to the cheapest modifier.
+                modifier = ExplosionModifier.NONE;
+            }
+            if (modifier.isYieldModifier()) {
+                ModifierCounters counters = stats.of(modifier);
+                long start = counters.begin();
+                try {
+                    return modifier.modifySize(yield, random, table.ranges(modifier));
+                } finally {
+                    counters.end(start);
+                }
+            }
+            cluster = aggregator.open(world, center.getX(), center.getY(), center.getZ(), yield, modifier);
         }
-        double roll = random.nextDouble() * total;
-        for (ExplosionModifier mod : ExplosionModifier.values()) {
-            if (roll < mod.getRarity()) {
-                return mod;
+        if (cluster.getEffect().usesBlockList()) {
+            for (Block block : blocks) {
+                if (isWithinBlast(block, center, yield)) {
+                    cluster.addBlock(block.getX(), block.getY(), block.getZ());
+                }
             }
-            roll -= mod.getRarity();
         }
-        return null; // Should never happen
+        return 0;
+    }
+
+    /**
+     * Applies the merged effect of every explosion cluster collected during the last tick.
+     */
+    @Override
+    public void run() {
+        aggregator.drain(this::applyEffect);
+    }
+
+    private void applyEffect(ExplosionCluster<ExplosionModifier> cluster) {
+        ExplosionModifier effect = cluster.getEffect();
+        ModifierCounters counters = stats.of(effect);
+        long start = counters.begin();
+        try {
+            effect.applyEffect(cluster, random, planner, grid, spawns, modifiers.at(cluster.getCenter()).ranges(effect));
+        } finally {
+            counters.end(start);
+        }
+    }
+
+    public ExplosionAggregator<?> getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * True if the block's center lies within the blast radius, compared as squared distances
+     * so no Location is allocated and no square root is taken.
+     */
+    private static boolean isWithinBlast(Block block, Location center, float blastRadius) {
+        double dx = block.getX() + 0.5 - center.getX();
+        double dy = block.getY() + 0.5 - center.getY();
+        double dz = block.getZ() + 0.5 - center.getZ();
+        return dx * dx + dy * dy + dz * dz <= (double) blastRadius * blastRadius;
     }
 
     /**
@@ -82,7 +160,7 @@ public class ExplosionEvents implements Listener {
     /**
      * Returns a random block material used for randomizing blocks.
      */
-    private static Material getRandomBlockMaterial(Random random) {
+    private static Material getRandomBlockMaterial(ChaosRandom random) {
         Material[] materials = { Material.GLASS, Material.TNT, Material.SLIME_BLOCK, Material.HONEY_BLOCK, Material.DIAMOND_BLOCK, Material.GOLD_BLOCK, Material.EMERALD_BLOCK };
         return materials[random.nextInt(materials.length)];
     }
@@ -91,8 +169,9 @@ public class ExplosionEvents implements Listener {
      * Enum of explosion modifiers.
      * Some modifiers are yield modifiers (which change the explosion’s force/radius),
      * and others are effect modifiers (which apply a special effect within the blast radius).
+     * Effect modifiers are applied to an ExplosionCluster: one or more explosions of the same tick merged together.
      * <p>
-     * Rarity values (the sum of all modifiers’ rarities is 1.0):
+     * Default rarity values (the sum of all modifiers’ rarities is 1.0; config.yml can change them):
      *   NONE: 0.50 – do nothing
      *   INCREASE: 0.06
      *   DECREASE: 0.06
@@ -104,107 +183,98 @@ public class ExplosionEvents implements Listener {
      *   SET_FIRE_IN_RADIUS: 0.04
      *   CHANGE_BLOCKS_TO_RANDOM: 0.08
      */
-    private enum ExplosionModifier {
+    enum ExplosionModifier implements ModifierSpec {
         NONE(0.50) {
             @Override
             public boolean isYieldModifier() { return true; }
             @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
-            @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) { }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
             @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) { }
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) { }
         },
-        INCREASE(0.06) {
+        INCREASE(0.06, Range.of("multiplier", 2, 7)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
             public boolean isYieldModifier() { return true; }
             @Override
-            public float modifySize(float currentSize, Random random) {
-                // Increase yield by a factor between 2x and 7x.
-                return currentSize * (2 + random.nextInt(6));
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) {
+                // Increase yield by a factor between 2x and 7x (by default).
+                return currentSize * ranges[0].nextInt(random);
             }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) { }
-            @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) { }
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) { }
         },
-        DECREASE(0.06) {
+        DECREASE(0.06, Range.of("multiplier", 0.5, 1.0)) {
             @Override
             public boolean isYieldModifier() { return true; }
             @Override
-            public float modifySize(float currentSize, Random random) {
-                // Decrease yield by a factor between 0.5 and 1.0.
-                return currentSize * (0.5f + random.nextFloat() * 0.5f);
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) {
+                // Decrease yield by a factor between 0.5 and 1.0 (by default).
+                return currentSize * ranges[0].nextFloat(random);
             }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) { }
-            @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) { }
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) { }
         },
-        RANDOM(0.06) {
+        RANDOM(0.06, Range.of("multiplier", 0.0, 5.0)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
             public boolean isYieldModifier() { return true; }
             @Override
-            public float modifySize(float currentSize, Random random) {
-                // Multiply yield by a random float between 0 and 5.
-                return currentSize * (random.nextFloat() * 5f);
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) {
+                // Multiply yield by a random float between 0 and 5 (by default).
+                return currentSize * ranges[0].nextFloat(random);
             }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) { }
-            @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) { }
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) { }
         },
         REPLACE_BLOCKS(0.04) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
             public boolean isYieldModifier() { return false; }
             @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
+            public boolean usesBlockList() { return true; }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) {
-                Material replacement = getReplacementMaterialStatic(random);
-                float blastRadius = event.getYield();
-                Location center = event.getEntity().getLocation();
-                for (Block block : event.blockList()) {
-                    Location blockCenter = block.getLocation().clone().add(0.5, 0.5, 0.5);
-                    if (blockCenter.distance(center) <= blastRadius) {
-                        block.setType(replacement);
-                    }
-                }
-            }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
             @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) {
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) {
                 Material replacement = getReplacementMaterialStatic(random);
-                float blastRadius = event.getYield();
-                Location center = event.getBlock().getLocation().clone().add(0.5, 0.5, 0.5);
-                for (Block block : event.blockList()) {
-                    Location blockCenter = block.getLocation().clone().add(0.5, 0.5, 0.5);
-                    if (blockCenter.distance(center) <= blastRadius) {
-                        block.setType(replacement);
+                planner.submit(blast.getWorld(), blast.getBlockCount(), blocks -> {
+                    BlockEditJob.Builder edits = editsAround(blast);
+                    for (int i = 0; i < blast.getBlockCount(); i++) {
+                        long block = blast.getBlock(i);
+                        edits.add(BlockKeys.x(block), BlockKeys.y(block), BlockKeys.z(block), replacement);
                     }
-                }
+                    return edits.build();
+                });
             }
         },
-        SPAWN_RANDOM_MOBS(0.06) {
+        SPAWN_RANDOM_MOBS(0.06, Range.of("mobs", 3, 7)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
             public boolean isYieldModifier() { return false; }
             @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) {
-                spawnMobs(event.getEntity().getLocation(), event.getYield(), random, event.getEntity().getWorld());
-            }
-            @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) {
-                spawnMobs(event.getBlock().getLocation(), event.getYield(), random, event.getBlock().getWorld());
-            }
-            private void spawnMobs(Location center, float blastRadius, Random random, org.bukkit.World world) {
-                int count = 3 + random.nextInt(5); // spawn 3-7 mobs
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) {
+                Location center = blast.getCenter();
+                double blastRadius = blast.getRadius();
+                int count = ranges[0].nextInt(random); // spawn 3-7 mobs by default
                 for (int i = 0; i < count; i++) {
                     double offsetX = (random.nextDouble() * 2 - 1) * blastRadius;
                     double offsetY = (random.nextDouble() * 2 - 1) * blastRadius;
                     double offsetZ = (random.nextDouble() * 2 - 1) * blastRadius;
                     Location spawnLoc = center.clone().add(offsetX, offsetY, offsetZ);
-                    world.spawnEntity(spawnLoc, org.bukkit.entity.EntityType.ZOMBIE);
+                    spawns.submit(null, spawnLoc, org.bukkit.entity.EntityType.ZOMBIE, null);
                 }
             }
         },
@@ -212,121 +282,140 @@ public class ExplosionEvents implements Listener {
             @Override
             public boolean isYieldModifier() { return false; }
             @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
-            @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) {
-                healEntities(event.getEntity().getLocation(), event.getYield(), random, event.getEntity().getWorld());
-            }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
             @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) {
-                healEntities(event.getBlock().getLocation(), event.getYield(), random, event.getBlock().getWorld());
-            }
-            private void healEntities(Location center, float blastRadius, Random random, org.bukkit.World world) {
-                for (Entity e : world.getNearbyEntities(center, blastRadius, blastRadius, blastRadius)) {
-                    if (e instanceof org.bukkit.entity.LivingEntity) {
-                        org.bukkit.entity.LivingEntity le = (org.bukkit.entity.LivingEntity) e;
-                        if (le.getAttribute(Attribute.GENERIC_MAX_HEALTH) != null) {
-                            le.setHealth(le.getAttribute(Attribute.GENERIC_MAX_HEALTH).getValue());
-                        }
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) {
+                grid.forEachNearby(blast.getCenter(), blast.getRadius(), SpatialGrid.LIVING, inBlast(blast), le -> {
+                    if (le.getAttribute(Attribute.GENERIC_MAX_HEALTH) != null) {
+                        le.setHealth(le.getAttribute(Attribute.GENERIC_MAX_HEALTH).getValue());
                     }
-                }
+                });
             }
         },
         LAUNCH_ENTITIES(0.04) {
             @Override
             public boolean isYieldModifier() { return false; }
             @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
-            @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) {
-                launchEntities(event.getEntity().getLocation(), event.getYield(), random, event.getEntity().getWorld());
-            }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
             @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) {
-                launchEntities(event.getBlock().getLocation(), event.getYield(), random, event.getBlock().getWorld());
-            }
-            private void launchEntities(Location center, float blastRadius, Random random, org.bukkit.World world) {
-                for (Entity e : world.getNearbyEntities(center, blastRadius, blastRadius, blastRadius)) {
-                    if (e instanceof org.bukkit.entity.LivingEntity) {
-                        e.setVelocity(e.getVelocity().setY(2.0));
-                    }
-                }
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) {
+                grid.forEachNearby(blast.getCenter(), blast.getRadius(), SpatialGrid.LIVING, inBlast(blast),
+                        e -> e.setVelocity(e.getVelocity().setY(2.0)));
             }
         },
         SET_FIRE_IN_RADIUS(0.04) {
             @Override
-            public boolean isYieldModifier() { return false; }
-            @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
+            public boolean isExpensive() { return true; }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) {
-                setFire(event.getEntity().getLocation(), event.getYield(), random, event.getEntity().getWorld());
-            }
+            public boolean isYieldModifier() { return false; }
             @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) {
-                setFire(event.getBlock().getLocation(), event.getYield(), random, event.getBlock().getWorld());
-            }
-            private void setFire(Location center, float blastRadius, Random random, org.bukkit.World world) {
-                int r = (int) Math.ceil(blastRadius);
-                for (int x = -r; x <= r; x++) {
-                    for (int y = -r; y <= r; y++) {
-                        for (int z = -r; z <= r; z++) {
-                            Location loc = center.clone().add(x, y, z);
-                            if (loc.distance(center) <= blastRadius) {
-                                if (loc.getBlock().getType() == Material.AIR) {
-                                    loc.getBlock().setType(Material.FIRE);
-                                }
-                            }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
+            @Override
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) {
+                // Every member's own blast, each block once: merging never sets fire further than the
+                // explosions would have reached alone.
+                Location center = blast.getCenter();
+                int x = center.getBlockX();
+                int z = center.getBlockZ();
+                int reach = (int) Math.ceil(blast.getRadius()) + 1;
+                int cells = blast.getBlastCells();
+                planner.submit(blast.getWorld(), x - reach, z - reach, x + reach, z + reach, cells, blocks -> {
+                    // Planned against what was air when the blast happened; the queue checks again when it
+                    // applies each edit, so fire only lands where there is still room.
+                    BlockEditJob.Builder edits = editsAround(blast).onlyReplaceAir();
+                    for (long block : blast.blastBlocks()) {
+                        int bx = BlockKeys.x(block);
+                        int by = BlockKeys.y(block);
+                        int bz = BlockKeys.z(block);
+                        if (blocks.getType(bx, by, bz) == Material.AIR) {
+                            edits.add(bx, by, bz, Material.FIRE);
                         }
                     }
-                }
+                    return edits.build();
+                });
             }
         },
         CHANGE_BLOCKS_TO_RANDOM(0.08) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
             public boolean isYieldModifier() { return false; }
             @Override
-            public float modifySize(float currentSize, Random random) { return currentSize; }
+            public boolean usesBlockList() { return true; }
             @Override
-            public void applyEffect(EntityExplodeEvent event, Random random) {
-                changeBlocks(event.getEntity().getLocation(), event.getYield(), random, event.blockList(), event.getEntity().getWorld());
-            }
+            public float modifySize(float currentSize, ChaosRandom random, Range[] ranges) { return currentSize; }
             @Override
-            public void applyEffect(BlockExplodeEvent event, Random random) {
-                changeBlocks(event.getBlock().getLocation(), event.getYield(), random, event.blockList(), event.getBlock().getWorld());
-            }
-            private void changeBlocks(Location center, float blastRadius, Random random, Iterable<Block> blocks, org.bukkit.World world) {
-                for (Block block : blocks) {
-                    Location blockCenter = block.getLocation().clone().add(0.5, 0.5, 0.5);
-                    if (blockCenter.distance(center) <= blastRadius) {
-                        block.setType(getRandomBlockMaterial(random));
+            public void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                    SpatialGrid grid, SpawnQueue spawns, Range[] ranges) {
+                // The plan may run on a worker thread, so it gets its own split of the random stream.
+                ChaosRandom planRandom = random.split();
+                planner.submit(blast.getWorld(), blast.getBlockCount(), blocks -> {
+                    BlockEditJob.Builder edits = editsAround(blast);
+                    for (int i = 0; i < blast.getBlockCount(); i++) {
+                        long block = blast.getBlock(i);
+                        edits.add(BlockKeys.x(block), BlockKeys.y(block), BlockKeys.z(block), getRandomBlockMaterial(planRandom));
                     }
-                }
+                    return edits.build();
+                });
             }
         };
 
         private final double rarity;
+        private final Range[] ranges;
 
-        ExplosionModifier(double rarity) {
+        ExplosionModifier(double rarity, Range... ranges) {
             this.rarity = rarity;
+            this.ranges = ranges;
         }
 
+        @Override
         public double getRarity() {
             return rarity;
         }
 
+        @Override
+        public Range[] getRanges() {
+            return ranges;
+        }
+
         public abstract boolean isYieldModifier();
 
-        public abstract float modifySize(float currentSize, Random random);
+        /**
+         * True if the effect works on the exploded blocks, so each member explosion contributes its blockList().
+         */
+        public boolean usesBlockList() {
+            return false;
+        }
 
-        public abstract void applyEffect(EntityExplodeEvent event, Random random);
+        public abstract float modifySize(float currentSize, ChaosRandom random, Range[] ranges);
 
-        public abstract void applyEffect(BlockExplodeEvent event, Random random);
+        public abstract void applyEffect(ExplosionCluster<ExplosionModifier> blast, ChaosRandom random, ExplosionPlanner planner,
+                                         SpatialGrid grid, SpawnQueue spawns, Range[] ranges);
 
         // Helper static method accessible by enum constants:
-        private static Material getReplacementMaterialStatic(Random random) {
+        private static Material getReplacementMaterialStatic(ChaosRandom random) {
             Material[] materials = { Material.DIAMOND_ORE, Material.OBSIDIAN, Material.BEDROCK };
             return materials[random.nextInt(materials.length)];
         }
+
+        /**
+         * Starts a batch of block edits that the BlockEditQueue applies outward from the blast center.
+         * Safe to call from a planner worker: the cluster is no longer modified once it is applied.
+         */
+        /** Accepts entities standing in at least one member's blast. */
+        private static Predicate<LivingEntity> inBlast(ExplosionCluster<ExplosionModifier> blast) {
+            return e -> {
+                Location location = e.getLocation();
+                return blast.covers(location.getX(), location.getY(), location.getZ());
+            };
+        }
+
+        private static BlockEditJob.Builder editsAround(ExplosionCluster<ExplosionModifier> blast) {
+            Location center = blast.getCenter();
+            return BlockEditJob.builder(blast.getWorld(), center.getBlockX(), center.getBlockY(), center.getBlockZ());
+        }
     }
-}
\ No newline at end of file
+}
@@ -6,23 +6,44 @@ import org.bukkit.entity.*;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityRemoveEvent;
 import org.bukkit.event.entity.ProjectileHitEvent;
 import org.bukkit.event.entity.ProjectileLaunchEvent;
-import org.bukkit.metadata.FixedMetadataValue;
-import org.bukkit.metadata.MetadataValue;
-import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.Vector;
-
-import java.util.List;
-import java.util.Random;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.config.Range;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.traits.ProjectileStateTable;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+
+import java.util.UUID;
 
 public class ProjectileFireEvents implements Listener {
 
-    private final JavaPlugin plugin;
-    private final Random random = new Random();
-
-    public ProjectileFireEvents(JavaPlugin plugin) {
-        this.plugin = plugin;
+    private static final ProjectileModifier[] MODIFIERS = ProjectileModifier.values();
+
+    private final ChaosRandom random;
+    private final ModifierSettings.Group<ProjectileModifier> modifiers;
+    private final ModifierMetrics.Group<ProjectileModifier> stats;
+    private final ProjectileStateTable states;
+    private final ExplosionLimiter explosions;
+    private final SpawnQueue spawns;
+    // Scratch record the launch handler fills in; only copied into the table if a stateful modifier was rolled.
+    private final PendingState pending = new PendingState();
+
+    public ProjectileFireEvents(ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics,
+                                ProjectileStateTable states, ExplosionLimiter explosions, SpawnQueue spawns) {
+        this.random = random;
+        this.modifiers = settings.register("projectile-launch", ProjectileModifier.values());
+        this.stats = metrics.register(modifiers.getKey(), ProjectileModifier.values());
+        this.states = states;
+        this.explosions = explosions;
+        this.spawns = spawns;
     }
 
     @EventHandler
@@ -31,11 +52,24 @@ public class ProjectileFireEvents implements Listener {
         if (projectile.getShooter() == null) return;
 
         // Check each modifier. If the random roll is within its chance, apply it.
-        for (ProjectileModifier mod : ProjectileModifier.values()) {
-            if (random.nextDouble() < mod.getRarity()) {
-                mod.applyModifier(projectile, plugin, random);
+        ModifierTable<ProjectileModifier> table = modifiers.at(projectile.getLocation());
+        pending.reset();
+        for (ProjectileModifier mod : MODIFIERS) {
+            if (random.nextDouble() < table.weight(mod)) {
+                ModifierCounters counters = stats.of(mod);
+                long start = counters.begin();
+                try {
+                    mod.applyModifier(projectile, pending, random, table.ranges(mod), spawns);
+                } finally {
+                    counters.end(start);
+                }
             }
         }
+        // TRANSFORM removes the original projectile; there is nothing left to attach state to.
+        if (pending.modifiers != 0L && !projectile.isDead()) {
+            states.put(projectile.getEntityId(), pending.modifiers,
+                    pending.knockbackFactor, pending.damageFactor, pending.explosionSize);
+        }
     }
 
     /**
@@ -44,36 +78,54 @@ public class ProjectileFireEvents implements Listener {
     @EventHandler
     public void onProjectileHit(ProjectileHitEvent event) {
         Projectile projectile = event.getEntity();
-
-        // 1) Explosive check
-        if (hasModifier(projectile, ProjectileModifier.EXPLOSIVE)) {
-            float explosionSize = getStoredExplosionSize(projectile);
-            if (explosionSize <= 0) {
-                // If we didn't store a fixed explosion size, randomize from creeper(3F) to 10x creeper(30F)
-                explosionSize = 3F + random.nextFloat() * 27F;
+        int slot = states.find(projectile.getEntityId());
+        if (slot < 0) return;
+        long modifiers = states.modifiersAt(slot);
+        float storedExplosionSize = states.explosionSizeAt(slot);
+        ModifierTable<ProjectileModifier> table = this.modifiers.at(projectile.getLocation());
+
+        // 1) Explosive check (the hit is part of what the launch modifier did, not another application)
+        if (ProjectileModifier.EXPLOSIVE.isIn(modifiers)) {
+            ModifierCounters counters = stats.of(ProjectileModifier.EXPLOSIVE);
+            long start = counters.begin();
+            try {
+                float explosionSize = storedExplosionSize;
+                if (explosionSize <= 0) {
+                    // If we didn't store a fixed explosion size, randomize (by default from creeper(3F) to 10x creeper(30F))
+                    explosionSize = table.ranges(ProjectileModifier.EXPLOSIVE)[0].nextFloat(random);
+                }
+                Location loc = projectile.getLocation();
+                // Create explosion (fire=false, breakBlocks=true)
+                explosions.createExplosion(projectile.getWorld(), loc.getX(), loc.getY(), loc.getZ(), explosionSize, false, true);
+
+                // Remove projectile
+                projectile.remove();
+            } finally {
+                counters.endFollowUp(start);
             }
-            Location loc = projectile.getLocation();
-            // Create explosion (fire=false, breakBlocks=true)
-            projectile.getWorld().createExplosion(loc.getX(), loc.getY(), loc.getZ(), explosionSize, false, true);
-
-            // Remove projectile
-            projectile.remove();
         }
 
         // 2) Sheep explosion check
-        if (hasModifier(projectile, ProjectileModifier.SHEEP_EXPLOSION)) {
-            int numberOfSheep = 3 + random.nextInt(5); // 3..7 sheep
-            Location loc = projectile.getLocation();
-
-            for (int i = 0; i < numberOfSheep; i++) {
+        if (ProjectileModifier.SHEEP_EXPLOSION.isIn(modifiers)) {
+            ModifierCounters counters = stats.of(ProjectileModifier.SHEEP_EXPLOSION);
+            long start = counters.begin();
+            try {
+                int numberOfSheep = table.ranges(ProjectileModifier.SHEEP_EXPLOSION)[0].nextInt(random); // 3..7 sheep by default
+                Location loc = projectile.getLocation();
                 if (loc.getWorld() == null) {
                     return;
                 }
-                Sheep sheep = (Sheep) loc.getWorld().spawnEntity(loc, EntityType.SHEEP);
-                sheep.setCustomName("Baah!!");
-                sheep.setCustomNameVisible(true);
+                UUID owner = SpawnQueue.ownerOf(projectile.getShooter());
+                for (int i = 0; i < numberOfSheep; i++) {
+                    spawns.submit(owner, loc, EntityType.SHEEP, null).onSpawn(sheep -> {
+                        sheep.setCustomName("Baah!!");
+                        sheep.setCustomNameVisible(true);
+                    });
+                }
+                projectile.remove();
+            } finally {
+                counters.endFollowUp(start);
             }
-            projectile.remove();
         }
 
         // 3) Other silly on-hit effects can go here...
@@ -87,136 +139,176 @@ public class ProjectileFireEvents implements Listener {
         Entity damager = event.getDamager();
         if (!(damager instanceof Projectile)) return;
 
-        Projectile projectile = (Projectile) damager;
+        // One lookup decides every modifier.
+        int slot = states.find(damager.getEntityId());
+        if (slot < 0) return;
+        long modifiers = states.modifiersAt(slot);
 
         // Knockback check
-        if (hasModifier(projectile, ProjectileModifier.KNOCKBACK)) {
-            double kbFactor = getMetadataDouble(projectile, ProjectileModifier.KNOCKBACK.name());
+        if (ProjectileModifier.KNOCKBACK.isIn(modifiers)) {
+            double kbFactor = states.knockbackFactorAt(slot);
             if (event.getEntity() instanceof LivingEntity) {
                 LivingEntity target = (LivingEntity) event.getEntity();
-                Vector kbVec = target.getLocation().toVector().subtract(projectile.getLocation().toVector());
+                Vector kbVec = target.getLocation().toVector().subtract(damager.getLocation().toVector());
                 kbVec.normalize().multiply(kbFactor);
                 target.setVelocity(kbVec);
             }
         }
 
         // Damage boost check
-        if (hasModifier(projectile, ProjectileModifier.DAMAGE_BOOST)) {
-            double dmgFactor = getMetadataDouble(projectile, ProjectileModifier.DAMAGE_BOOST.name());
+        if (ProjectileModifier.DAMAGE_BOOST.isIn(modifiers)) {
+            double dmgFactor = states.damageFactorAt(slot);
             event.setDamage(event.getDamage() * dmgFactor);
         }
 
         // One-Punch check (silly example)
-        if (hasModifier(projectile, ProjectileModifier.ONE_PUNCH)) {
+        if (ProjectileModifier.ONE_PUNCH.isIn(modifiers)) {
             // Instantly kill for demonstration (be careful with balancing!)
             event.setDamage(1000.0);
         }
     }
 
-    /* ------------------------------------------------------------------------
-       UTILITIES FOR METADATA
-       ------------------------------------------------------------------------ */
-
-    private boolean hasModifier(Projectile projectile, ProjectileModifier modifier) {
-        return projectile.hasMetadata(modifier.name());
-    }
-
-    private double getMetadataDouble(Projectile projectile, String key) {
-        List<MetadataValue> values = projectile.getMetadata(key);
-        if (!values.isEmpty()) {
-            return values.get(0).asDouble();
+    /**
+     * Free a projectile's modifier state as soon as it leaves the world.
+     */
+    @EventHandler
+    public void onEntityRemove(EntityRemoveEvent event) {
+        if (event.getEntity() instanceof Projectile) {
+            states.remove(event.getEntity().getEntityId());
         }
-        return 0.0;
     }
 
-    private float getStoredExplosionSize(Projectile projectile) {
-        List<MetadataValue> values = projectile.getMetadata(ProjectileModifier.EXPLOSIVE.name());
-        if (!values.isEmpty()) {
-            return (float) values.get(0).asDouble();
+    /* ------------------------------------------------------------------------
+       LAUNCH-TIME STATE
+       ------------------------------------------------------------------------ */
+
+    private static final class PendingState {
+        long modifiers;
+        float knockbackFactor;
+        float damageFactor;
+        float explosionSize;
+
+        void reset() {
+            modifiers = 0L;
+            knockbackFactor = 0F;
+            damageFactor = 0F;
+            explosionSize = 0F;
         }
-        return 0;
     }
 
     /* ------------------------------------------------------------------------
        ENUM: PROJECTILE MODIFIERS (Multiple can apply!)
        ------------------------------------------------------------------------ */
 
-    private enum ProjectileModifier {
-        MULTI_SHOT(0.10),      // 10% chance
-        SPEED_BOOST(0.15),     // 15% chance
-        TRANSFORM(0.08),       // 8% chance
-        EXPLOSIVE(0.05),       // 5% chance
-        KNOCKBACK(0.10),       // 10% chance
-        DAMAGE_BOOST(0.10),    // 10% chance
-        SHEEP_EXPLOSION(0.02), // 2% chance (silly effect)
-        ONE_PUNCH(0.01),       // 1% chance (insta-kill, extremely silly!)
-        PLAY_SOUND(0.12);      // 12% chance (e.g., random mob sound)
+    // Default chances; config.yml can change them.
+    private enum ProjectileModifier implements ModifierSpec {
+        MULTI_SHOT(0.10, Range.of("duplicates", 2, 20)),        // 10% chance
+        SPEED_BOOST(0.15, Range.of("multiplier", 2.0, 10.0)),   // 15% chance
+        TRANSFORM(0.08),                                        // 8% chance
+        EXPLOSIVE(0.05, Range.of("power", 3.0, 30.0)),          // 5% chance
+        KNOCKBACK(0.10, Range.of("factor", 2.0, 40.0)),         // 10% chance
+        DAMAGE_BOOST(0.10, Range.of("factor", 1.5, 3.0)),       // 10% chance
+        SHEEP_EXPLOSION(0.02, Range.of("sheep", 3, 7)),         // 2% chance (silly effect)
+        ONE_PUNCH(0.01),                                        // 1% chance (insta-kill, extremely silly!)
+        PLAY_SOUND(0.12, Range.of("pitch", 0.5, 2.0, 0.5, 2.0)); // 12% chance (e.g., random mob sound)
 
         private final double rarity;
+        private final Range[] ranges;
 
-        ProjectileModifier(double rarity) {
+        ProjectileModifier(double rarity, Range... ranges) {
             this.rarity = rarity;
+            this.ranges = ranges;
         }
 
+        @Override
         public double getRarity() {
             return rarity;
         }
 
+        @Override
+        public Range[] getRanges() {
+            return ranges;
+        }
+
+        @Override
+        public boolean isExpensive() {
+            switch (this) {
+                case MULTI_SHOT:
+                case EXPLOSIVE:
+                case SHEEP_EXPLOSION:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        public long bit() {
+            return 1L << ordinal();
+        }
+
+        public boolean isIn(long modifiers) {
+            return (modifiers & bit()) != 0;
+        }
+
         /**
          * The main entry point for applying this modifier.
-         * Each case calls an appropriate function or sets metadata.
+         * Each case calls an appropriate function or records state for the hit/damage handlers.
          */
-        public void applyModifier(Projectile projectile, JavaPlugin plugin, Random random) {
+        public void applyModifier(Projectile projectile, PendingState state, ChaosRandom random, Range[] ranges,
+                                  SpawnQueue spawns) {
             switch (this) {
                 case MULTI_SHOT:
-                    applyMultiShot(projectile, random);
+                    applyMultiShot(projectile, random, ranges[0], spawns);
                     break;
                 case SPEED_BOOST:
-                    applySpeedBoost(projectile, random);
+                    applySpeedBoost(projectile, random, ranges[0]);
                     break;
                 case TRANSFORM:
                     transformProjectile(projectile, random);
                     break;
                 case EXPLOSIVE:
-                    markExplosive(projectile, plugin);
+                    markExplosive(state);
                     break;
                 case KNOCKBACK:
-                    markKnockback(projectile, plugin, random);
+                    markKnockback(state, random, ranges[0]);
                     break;
                 case DAMAGE_BOOST:
-                    markDamageBoost(projectile, plugin, random);
+                    markDamageBoost(state, random, ranges[0]);
                     break;
                 case SHEEP_EXPLOSION:
-                    markSheepExplosion(projectile, plugin);
+                    markSheepExplosion(state);
                     break;
                 case ONE_PUNCH:
-                    markOnePunch(projectile, plugin);
+                    markOnePunch(state);
                     break;
                 case PLAY_SOUND:
-                    playRandomSound(projectile, random);
+                    playRandomSound(projectile, random, ranges[0]);
                     break;
             }
         }
 
         /* ------------------- Implementation of Each Modifier ------------------- */
 
-        private static void applyMultiShot(Projectile original, Random random) {
-            // Spawn additional projectiles (2..20)
-            int duplicates = 2 + random.nextInt(19);
+        private static void applyMultiShot(Projectile original, ChaosRandom random, Range duplicateCount,
+                                           SpawnQueue spawns) {
+            // Queue additional projectiles (2..20 by default) from the launch point; they trail the original over a few ticks.
+            int duplicates = duplicateCount.nextInt(random);
+            UUID owner = SpawnQueue.ownerOf(original.getShooter());
+            Location launch = original.getLocation();
+            Vector velocity = original.getVelocity();
             for (int i = 0; i < duplicates; i++) {
-                Projectile extra = (Projectile) original.getWorld()
-                        .spawnEntity(original.getLocation(), original.getType());
-                extra.setVelocity(original.getVelocity());
+                spawns.submit(owner, launch, original.getType(), null)
+                        .onSpawn(extra -> extra.setVelocity(velocity));
             }
         }
 
-        private static void applySpeedBoost(Projectile projectile, Random random) {
-            double speedMultiplier = 2.0 + (random.nextDouble() * 8.0); // 2..10
+        private static void applySpeedBoost(Projectile projectile, ChaosRandom random, Range multiplier) {
+            double speedMultiplier = multiplier.nextDouble(random); // 2..10 by default
             Vector newVelocity = projectile.getVelocity().multiply(speedMultiplier);
             projectile.setVelocity(newVelocity);
         }
 
-        private static void transformProjectile(Projectile original, Random random) {
+        private static void transformProjectile(Projectile original, ChaosRandom random) {
             EntityType[] possibleTypes = {
                     EntityType.ARROW,
                     EntityType.SPECTRAL_ARROW,
@@ -236,40 +328,37 @@ public class ProjectileFireEvents implements Listener {
                 return;
             }
             Projectile transformed = (Projectile) loc.getWorld().spawnEntity(loc, newType);
+            ModifierCounters.countEntities(1);
             transformed.setVelocity(velocity);
         }
 
-        private static void markExplosive(Projectile projectile, JavaPlugin plugin) {
-            // Optionally store a fixed explosion size in metadata:
-            // float fixedSize = 3F + random.nextFloat() * 27F; // 3..30
+        private static void markExplosive(PendingState state) {
+            // Optionally store a fixed explosion size:
+            // state.explosionSize = 3F + random.nextFloat() * 27F; // 3..30
             // Instead of 0, store that float if you want the same size every time.
-            projectile.setMetadata(EXPLOSIVE.name(),
-                    new FixedMetadataValue(plugin, 0)); // 0 => pick random on impact
+            state.modifiers |= EXPLOSIVE.bit();
+            state.explosionSize = 0F; // 0 => pick random on impact
         }
 
-        private static void markKnockback(Projectile projectile, JavaPlugin plugin, Random random) {
-            double factor = 2.0 + random.nextDouble() * 38.0; // 2..40
-            projectile.setMetadata(KNOCKBACK.name(),
-                    new FixedMetadataValue(plugin, factor));
+        private static void markKnockback(PendingState state, ChaosRandom random, Range factor) {
+            state.modifiers |= KNOCKBACK.bit();
+            state.knockbackFactor = factor.nextFloat(random); // 2..40 by default
         }
 
-        private static void markDamageBoost(Projectile projectile, JavaPlugin plugin, Random random) {
-            double dmgFactor = 1.5 + (random.nextDouble() * 1.5); // 1.5..3.0
-            projectile.setMetadata(DAMAGE_BOOST.name(),
-                    new FixedMetadataValue(plugin, dmgFactor));
+        private static void markDamageBoost(PendingState state, ChaosRandom random, Range factor) {
+            state.modifiers |= DAMAGE_BOOST.bit();
+            state.damageFactor = factor.nextFloat(random); // 1.5..3.0 by default
         }
 
-        private static void markSheepExplosion(Projectile projectile, JavaPlugin plugin) {
-            projectile.setMetadata(SHEEP_EXPLOSION.name(),
-                    new FixedMetadataValue(plugin, true));
+        private static void markSheepExplosion(PendingState state) {
+            state.modifiers |= SHEEP_EXPLOSION.bit();
         }
 
-        private static void markOnePunch(Projectile projectile, JavaPlugin plugin) {
-            projectile.setMetadata(ONE_PUNCH.name(),
-                    new FixedMetadataValue(plugin, true));
+        private static void markOnePunch(PendingState state) {
+            state.modifiers |= ONE_PUNCH.bit();
         }
 
-        private static void playRandomSound(Projectile projectile, Random random) {
+        private static void playRandomSound(Projectile projectile, ChaosRandom random, Range pitchRange) {
             // Just a fun effect: play a random mob sound at the projectile location
             Location loc = projectile.getLocation();
             Sound[] possibleSounds = {
@@ -281,12 +370,12 @@ public class ProjectileFireEvents implements Listener {
             };
             Sound sound = possibleSounds[random.nextInt(possibleSounds.length)];
             float volume = 1.0F;
-            float pitch = 0.5F + random.nextFloat() * 1.5F; // 0.5..2.0
+            float pitch = pitchRange.nextFloat(random); // 0.5..2.0 by default
             projectile.getWorld().playSound(loc, sound, volume, pitch);
         }
 
         /* ------------------- Shared Helper ------------------- */
-        private static EntityType pickDifferentType(EntityType current, EntityType[] pool, Random random) {
+        private static EntityType pickDifferentType(EntityType current, EntityType[] pool, ChaosRandom random) {
             EntityType newType = current;
             while (newType == current) {
                 newType = pool[random.nextInt(pool.length)];
@@ -1,6 +1,5 @@
 package org.im4ever12c.chaoscraft.listeners;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Color;
 import org.bukkit.FireworkEffect;
 import org.bukkit.FireworkEffect.Type;
@@ -16,39 +15,67 @@ import org.bukkit.inventory.meta.FireworkMeta;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 import org.bukkit.Sound;
-import org.im4ever12c.chaoscraft.ChaosCraft;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.config.Range;
+import org.im4ever12c.chaoscraft.entity.ChaosSpawner;
+import org.im4ever12c.chaoscraft.entity.SpatialGrid;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.schedule.DelayedAction;
+import org.im4ever12c.chaoscraft.schedule.TimingWheel;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+import org.im4ever12c.chaoscraft.world.SurfaceLocator;
 
-import java.util.Random;
+import java.util.UUID;
 
 public class ProjectileHitEvents implements Listener {
 
-    private final Random random = new Random();
+    // Random destinations tried before a teleport is skipped (lava, void, nether roof...).
+    private static final int SURFACE_ATTEMPTS = 8;
+
+    private final ChaosRandom random;
+    private final ExplosionLimiter explosions;
+    private final SpatialGrid grid;
+    private final SurfaceLocator surfaces;
+    private final SpawnQueue spawns;
+    private final ChaosSpawner spawner;
+    private final TimingWheel wheel;
+    private final ModifierSettings.Group<ProjectileHitModifier> modifiers;
+    private final ModifierMetrics.Group<ProjectileHitModifier> stats;
+
+    public ProjectileHitEvents(ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics,
+                               ExplosionLimiter explosions, SpatialGrid grid, SurfaceLocator surfaces,
+                               SpawnQueue spawns, ChaosSpawner spawner, TimingWheel wheel) {
+        this.random = random;
+        this.explosions = explosions;
+        this.grid = grid;
+        this.surfaces = surfaces;
+        this.spawns = spawns;
+        this.spawner = spawner;
+        this.wheel = wheel;
+        this.modifiers = settings.register("projectile-hit", ProjectileHitModifier.values());
+        this.stats = metrics.register(modifiers.getKey(), ProjectileHitModifier.values());
+    }
 
     @EventHandler
     public void onProjectileHit(ProjectileHitEvent event) {
         // Pick exactly one random modifier based on weighted rarity.
-        ProjectileHitModifier modifier = getRandomModifier();
+        ModifierTable<ProjectileHitModifier> table = modifiers.at(getImpactLocation(event));
+        ProjectileHitModifier modifier = table.next(random);
         if (modifier != null) {
-            modifier.apply(event, random);
-        }
-    }
-
-    /**
-     * Weighted random selection of a projectile hit modifier.
-     */
-    private ProjectileHitModifier getRandomModifier() {
-        double totalWeight = 0.0;
-        for (ProjectileHitModifier mod : ProjectileHitModifier.values()) {
-            totalWeight += mod.getRarity();
-        }
-        double roll = random.nextDouble() * totalWeight;
-        for (ProjectileHitModifier mod : ProjectileHitModifier.values()) {
-            if (roll < mod.getRarity()) {
-                return mod;
+            ModifierCounters counters = stats.of(modifier);
+            long start = counters.begin();
+            try {
+                modifier.apply(event, random, explosions, grid, surfaces, spawns, spawner, wheel,
+                        table.ranges(modifier));
+            } finally {
+                counters.end(start);
             }
-            roll -= mod.getRarity();
         }
-        return null; // Fallback (should not happen)
     }
 
     /**
@@ -70,78 +97,94 @@ public class ProjectileHitEvents implements Listener {
 
     /**
      * Enum of 15 funny projectile hit modifiers.
-     * Each modifier uses its weighted rarity to determine its chance of occurring.
+     * Each modifier uses its weighted rarity (overridable in config.yml) to determine its chance of occurring.
      * Effects affect blocks, players, and other living entities.
      */
-    private enum ProjectileHitModifier {
+    enum ProjectileHitModifier implements ModifierSpec {
         // 1. Explosive Impact: Create an explosion at the impact location.
-        EXPLOSIVE_IMPACT(0.10) {
+        EXPLOSIVE_IMPACT(0.10, Range.of("power", 3.0, 10.0)) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                float power = 3.0F + random.nextFloat() * 7.0F; // Explosion power between 3 and 10
-                world.createExplosion(loc.getX(), loc.getY(), loc.getZ(), power, false, true);
+                float power = ranges[0].nextFloat(random); // Explosion power between 3 and 10 by default
+                explosions.createExplosion(world, loc.getX(), loc.getY(), loc.getZ(), power, false, true);
             }
         },
 
         // 2. Teleport Nearby: Teleport all nearby living entities (players, mobs, animals) to a random nearby location.
         TELEPORT_NEARBY(0.07) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                for (Entity e : world.getNearbyEntities(loc, 5, 5, 5)) {
-                    // Exclude projectiles
-                    if (e instanceof LivingEntity && !(e instanceof Projectile)) {
-                        double newX = loc.getX() + (random.nextDouble() * 100 - 50);
-                        double newZ = loc.getZ() + (random.nextDouble() * 100 - 50);
-                        double newY = world.getHighestBlockYAt((int) newX, (int) newZ) + 1;
-                        e.teleport(new Location(world, newX, newY, newZ));
+                grid.forEachNearby(loc, 5, e -> {
+                    Location target = surfaces.randomSurface(world, loc.getX(), loc.getZ(), 50, random,
+                            SURFACE_ATTEMPTS);
+                    if (target != null) {
+                        e.teleport(target);
                     }
-                }
+                });
             }
         },
 
         // 3. Summon Cows: Spawn 3–5 cows at the impact location.
-        SUMMON_COWS(0.08) {
+        SUMMON_COWS(0.08, Range.of("cows", 3, 5)) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                int count = 3 + random.nextInt(3); // 3 to 5 cows
+                int count = ranges[0].nextInt(random); // 3 to 5 cows by default
+                UUID owner = SpawnQueue.ownerOf(event.getEntity().getShooter());
                 for (int i = 0; i < count; i++) {
-                    world.spawnEntity(loc, EntityType.COW);
+                    spawns.submit(owner, loc, EntityType.COW, null);
                 }
             }
         },
 
         // 4. Summon Chickens: Spawn 5–10 chickens at the impact location.
-        SUMMON_CHICKENS(0.08) {
+        SUMMON_CHICKENS(0.08, Range.of("chickens", 5, 10)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                int count = 5 + random.nextInt(6); // 5 to 10 chickens
+                int count = ranges[0].nextInt(random); // 5 to 10 chickens by default
+                UUID owner = SpawnQueue.ownerOf(event.getEntity().getShooter());
                 for (int i = 0; i < count; i++) {
-                    world.spawnEntity(loc, EntityType.CHICKEN);
+                    spawns.submit(owner, loc, EntityType.CHICKEN, null);
                 }
             }
         },
 
         // 5. Drop Item Rain: Drop several random valuable items from above at the impact location.
-        DROP_ITEM_RAIN(0.12) {
+        DROP_ITEM_RAIN(0.12, Range.of("items", 3, 6)) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
                 Material[] items = { Material.DIAMOND, Material.GOLD_INGOT, Material.IRON_INGOT, Material.EMERALD, Material.APPLE };
-                int count = 3 + random.nextInt(4); // 3 to 6 items
+                int count = ranges[0].nextInt(random); // 3 to 6 items by default
                 for (int i = 0; i < count; i++) {
                     Material item = items[random.nextInt(items.length)];
                     Location dropLoc = loc.clone().add(0, 10, 0);
@@ -153,7 +196,9 @@ public class ProjectileHitEvents implements Listener {
         // 6. Play Funny Sound: Play a random humorous sound at the impact location.
         PLAY_FUNNY_SOUND(0.10) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
@@ -170,15 +215,18 @@ public class ProjectileHitEvents implements Listener {
         },
 
         // 7. Launch Firework: Spawn a firework that explodes shortly after at the impact location.
-        LAUNCH_FIREWORK(0.07) {
+        LAUNCH_FIREWORK(0.07, Range.of("power", 1, 3, 0, 127)) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
                 Firework fw = (Firework) world.spawnEntity(loc, EntityType.FIREWORK_ROCKET);
+                ModifierCounters.countEntities(1);
                 FireworkMeta meta = fw.getFireworkMeta();
-                meta.setPower(1 + random.nextInt(3)); // Power between 1 and 3
+                meta.setPower(ranges[0].nextInt(random)); // Power between 1 and 3 by default
                 FireworkEffect effect = FireworkEffect.builder()
                         .withColor(Color.fromRGB(random.nextInt(256), random.nextInt(256), random.nextInt(256)))
                         .withFade(Color.fromRGB(random.nextInt(256), random.nextInt(256), random.nextInt(256)))
@@ -188,18 +236,18 @@ public class ProjectileHitEvents implements Listener {
                         .build();
                 meta.addEffect(effect);
                 fw.setFireworkMeta(meta);
-                Bukkit.getScheduler().runTaskLater(
-                        ChaosCraft.getPlugin(ChaosCraft.class),
-                        fw::detonate,
-                        5L
-                );
+                wheel.schedule(new FireworkDetonation(fw), 5L);
             }
         },
 
         // 8. Create Fire: Set a 3x3 area at the impact location on fire.
         CREATE_FIRE(0.06) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
@@ -208,6 +256,7 @@ public class ProjectileHitEvents implements Listener {
                         Location fireLoc = loc.clone().add(x, 0, z);
                         if (fireLoc.getBlock().getType() == Material.AIR) {
                             fireLoc.getBlock().setType(Material.FIRE);
+                            ModifierCounters.countBlocks(1);
                         }
                     }
                 }
@@ -217,7 +266,9 @@ public class ProjectileHitEvents implements Listener {
         // 9. Summon Lightning: Strike lightning at the impact location.
         SUMMON_LIGHTNING(0.05) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
@@ -228,28 +279,32 @@ public class ProjectileHitEvents implements Listener {
         // 10. Reverse Gravity: Give all nearby living entities (players, mobs, animals) a burst of upward velocity.
         REVERSE_GRAVITY(0.04) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                for (Entity e : world.getNearbyEntities(loc, 7, 7, 7)) {
-                    if (e instanceof LivingEntity && !(e instanceof Projectile)) {
-                        e.setVelocity(e.getVelocity().setY(2.0));
-                    }
-                }
+                grid.forEachNearby(loc, 7,
+                        e -> e.setVelocity(e.getVelocity().setY(2.0)));
             }
         },
 
         // 11. Spawn Slime: Spawn 2–5 slimes at the impact location.
-        SPAWN_SLIME(0.06) {
+        SPAWN_SLIME(0.06, Range.of("slimes", 2, 5)) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                int count = 2 + random.nextInt(4);
+                int count = ranges[0].nextInt(random);
+                UUID owner = SpawnQueue.ownerOf(event.getEntity().getShooter());
                 for (int i = 0; i < count; i++) {
-                    world.spawnEntity(loc, EntityType.SLIME);
+                    spawns.submit(owner, loc, EntityType.SLIME, null);
                 }
             }
         },
@@ -257,11 +312,14 @@ public class ProjectileHitEvents implements Listener {
         // 12. Spawn Villager Shout: Spawn a villager with a custom name at the impact location.
         SPAWN_VILLAGER_SHOUT(0.05) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                Villager villager = (Villager) world.spawnEntity(loc, EntityType.VILLAGER);
+                Villager villager = (Villager) spawner.spawn(loc, EntityType.VILLAGER, null);
+                if (villager == null) return;
                 villager.setCustomName("No, sir!");
                 villager.setCustomNameVisible(true);
             }
@@ -270,26 +328,31 @@ public class ProjectileHitEvents implements Listener {
         // 13. Grow Tall: If a block was hit and it is dirt or grass, replace it with grass and tall grass.
         GROW_TALL(0.08) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 if (event.getHitBlock() != null) {
                     Location loc = event.getHitBlock().getLocation();
                     Material type = loc.getBlock().getType();
                     if (type == Material.DIRT || type == Material.GRASS_BLOCK) {
                         loc.getBlock().setType(Material.GRASS_BLOCK);
                         loc.clone().add(0, 1, 0).getBlock().setType(Material.TALL_GRASS);
+                        ModifierCounters.countBlocks(2);
                     }
                 }
             }
         },
 
         // 14. Advance Time: Advance the world's time by a random amount.
-        ADVANCE_TIME(0.03) {
+        ADVANCE_TIME(0.03, Range.of("ticks", 6000, 12000)) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 World world = getImpactLocation(event).getWorld();
                 if (world == null) return;
                 long currentTime = world.getTime();
-                long add = 6000 + random.nextInt(6000); // add between 6000 and 12000 ticks
+                long add = ranges[0].nextInt(random); // add between 6000 and 12000 ticks by default
                 world.setTime(currentTime + add);
             }
         },
@@ -297,29 +360,38 @@ public class ProjectileHitEvents implements Listener {
         // 15. Confuse Players: Apply a confusion effect to all nearby living entities (players, mobs, etc.).
         CONFUSE_PLAYERS(0.07) {
             @Override
-            public void apply(ProjectileHitEvent event, Random random) {
+            public void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                              SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                              TimingWheel wheel, Range[] ranges) {
                 Location loc = getImpactLocation(event);
                 World world = loc.getWorld();
                 if (world == null) return;
-                for (Entity e : world.getNearbyEntities(loc, 10, 10, 10)) {
-                    if (e instanceof LivingEntity && !(e instanceof Projectile)) {
-                        ((LivingEntity) e).addPotionEffect(new PotionEffect(PotionEffectType.NAUSEA, 200, 5));
-                    }
-                }
+                grid.forEachNearby(loc, 10,
+                        e -> e.addPotionEffect(new PotionEffect(PotionEffectType.NAUSEA, 200, 5)));
             }
         };
 
         private final double rarity;
+        private final Range[] ranges;
 
-        ProjectileHitModifier(double rarity) {
+        ProjectileHitModifier(double rarity, Range... ranges) {
             this.rarity = rarity;
+            this.ranges = ranges;
         }
 
+        @Override
         public double getRarity() {
             return rarity;
         }
 
-        public abstract void apply(ProjectileHitEvent event, Random random);
+        @Override
+        public Range[] getRanges() {
+            return ranges;
+        }
+
+        public abstract void apply(ProjectileHitEvent event, ChaosRandom random, ExplosionLimiter explosions,
+                                   SpatialGrid grid, SurfaceLocator surfaces, SpawnQueue spawns, ChaosSpawner spawner,
+                                   TimingWheel wheel, Range[] ranges);
 
         // Helper method to determine the impact location.
         private static Location getImpactLocation(ProjectileHitEvent event) {
@@ -333,4 +405,21 @@ public class ProjectileHitEvents implements Listener {
             }
         }
     }
+
+    /** LAUNCH_FIREWORK: blows the rocket up shortly after it was spawned. */
+    private static final class FireworkDetonation extends DelayedAction {
+        private final Firework firework;
+
+        FireworkDetonation(Firework firework) {
+            super(firework.getLocation());
+            this.firework = firework;
+        }
+
+        @Override
+        public void run() {
+            if (firework.isValid()) {
+                firework.detonate();
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -1,14 +1,11 @@
 package org.im4ever12c.chaoscraft.listeners;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.attribute.Attribute;
 import org.bukkit.entity.Entity;
-import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
-import org.bukkit.entity.Projectile;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.world.TimeSkipEvent;
@@ -16,16 +13,47 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 import org.bukkit.util.Vector;
+import org.im4ever12c.chaoscraft.config.ModifierSettings;
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+import org.im4ever12c.chaoscraft.config.Range;
+import org.im4ever12c.chaoscraft.entity.EntityRegistry;
+import org.im4ever12c.chaoscraft.entity.SpawnQueue;
+import org.im4ever12c.chaoscraft.entity.TeleportPipeline;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.metrics.ModifierMetrics;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+import org.im4ever12c.chaoscraft.world.DestinationPool;
+import org.im4ever12c.chaoscraft.world.SurfaceLocator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.function.Consumer;
 
 public class TimeSkipEvents implements Listener {
 
-    private final Random random = new Random();
+    private final ChaosRandom random;
+    private final TeleportPipeline teleports;
+    private final DestinationPool destinations;
+    private final SpawnQueue spawns;
+    private final SurfaceLocator surfaces;
+    private final EntityRegistry registry;
+    private final ModifierSettings.Group<TimeSkipModifier> modifiers;
+    private final ModifierMetrics.Group<TimeSkipModifier> stats;
+
+    public TimeSkipEvents(ChaosRandom random, ModifierSettings settings, ModifierMetrics metrics,
+                          TeleportPipeline teleports, DestinationPool destinations, SpawnQueue spawns,
+                          SurfaceLocator surfaces, EntityRegistry registry) {
+        this.random = random;
+        this.teleports = teleports;
+        this.destinations = destinations;
+        this.spawns = spawns;
+        this.surfaces = surfaces;
+        this.registry = registry;
+        this.modifiers = settings.register("time-skip", TimeSkipModifier.values());
+        this.stats = metrics.register(modifiers.getKey(), TimeSkipModifier.values());
+    }
 
     @EventHandler
     public void onTimeSkip(TimeSkipEvent event) {
@@ -35,57 +63,51 @@ public class TimeSkipEvents implements Listener {
         }
 
         // Pick exactly ONE random modifier based on weight/rarity.
-        TimeSkipModifier chosen = getRandomModifier();
-        if (chosen == null) {
-            return; // No modifier selected
-        }
-
-        chosen.apply(random);
-    }
-
-    /**
-     * Picks exactly one modifier from the TimeSkipModifier enum
-     * based on each modifier's rarity weight.
-     */
-    private TimeSkipModifier getRandomModifier() {
-        double totalWeight = 0.0;
-        for (TimeSkipModifier mod : TimeSkipModifier.values()) {
-            totalWeight += mod.getRarity();
-        }
-        double roll = random.nextDouble() * totalWeight;
-        for (TimeSkipModifier mod : TimeSkipModifier.values()) {
-            if (roll < mod.getRarity()) {
-                return mod;
+        // Regions do not apply here: the whole world skipped the night. The world's profile chose the modifier,
+        // so its effects stay in that world too.
+        ModifierTable<TimeSkipModifier> table = modifiers.in(event.getWorld());
+        TimeSkipModifier modifier = table.next(random);
+        if (modifier != null) {
+            ModifierCounters counters = stats.of(modifier);
+            long start = counters.begin();
+            try {
+                modifier.apply(event.getWorld(), random, teleports, destinations, spawns, surfaces, registry,
+                        table.ranges(modifier));
+            } finally {
+                counters.end(start);
             }
-            roll -= mod.getRarity();
         }
-        return null; // fallback
     }
 
     /**
      * Enum describing possible goofy modifiers.
-     * Effects may be positive or negative and affect players, entities, or the world.
+     * Effects may be positive or negative and affect the players, entities, or blocks of the world that
+     * skipped the night, never other worlds.
+     * Weights and value ranges are defaults that config.yml can override.
      * No messages are sent to players.
      */
-    private enum TimeSkipModifier {
-        // 1. Teleport all loaded entities in the server to a random player's location.
+    enum TimeSkipModifier implements ModifierSpec {
+        // 1. Teleport all loaded entities of the world to a random player's location.
         TELEPORT_ALL_ENTITIES(0.10) {
             @Override
-            public void apply(Random random) {
-                List<Player> players = new ArrayList<>(Bukkit.getOnlinePlayers());
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                List<Player> players = skipWorld.getPlayers();
                 if (players.isEmpty()) return;
                 Player chosenOne = players.get(random.nextInt(players.size()));
-                World world = chosenOne.getWorld();
-                Location loc = chosenOne.getLocation();
-                for (Entity entity : world.getEntities()) {
-                    entity.teleport(loc);
-                }
+                // Batched over several ticks; a second roll while one is still running is ignored.
+                teleports.start(skipWorld, chosenOne.getLocation());
             }
         },
-        // 2. Apply a random potion effect to every online player.
-        RANDOM_POTION_EFFECT(0.15) {
+        // 2. Apply a random potion effect to every player in the world.
+        RANDOM_POTION_EFFECT(0.15, Range.of("seconds", 10, 40), Range.of("amplifier", 0, 1, 0, 255)) {
             @Override
-            public void apply(Random random) {
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
                 List<PotionEffectType> possibleEffects = Arrays.asList(
                         PotionEffectType.LEVITATION,
                         PotionEffectType.JUMP_BOOST,
@@ -97,9 +119,9 @@ public class TimeSkipEvents implements Listener {
                         PotionEffectType.RESISTANCE
                 );
                 PotionEffectType chosenEffect = possibleEffects.get(random.nextInt(possibleEffects.size()));
-                int duration = 20 * (10 + random.nextInt(31)); // 10 to 40 seconds
-                int amplifier = random.nextInt(2);
-                for (Player p : Bukkit.getOnlinePlayers()) {
+                int duration = 20 * ranges[0].nextInt(random); // 10 to 40 seconds by default
+                int amplifier = ranges[1].nextInt(random);
+                for (Player p : skipWorld.getPlayers()) {
                     p.addPotionEffect(new PotionEffect(chosenEffect, duration, amplifier, false, true));
                 }
             }
@@ -107,44 +129,44 @@ public class TimeSkipEvents implements Listener {
         // 3. Teleport every player to a single random location in the world.
         TELEPORT_ALL_PLAYERS_SINGLE_SPOT(0.08) {
             @Override
-            public void apply(Random random) {
-                List<Player> players = new ArrayList<>(Bukkit.getOnlinePlayers());
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                List<Player> players = skipWorld.getPlayers();
                 if (players.isEmpty()) return;
-                Player reference = players.get(0);
-                World world = reference.getWorld();
-                double x = (random.nextDouble() * 10000) - 5000;
-                double z = (random.nextDouble() * 10000) - 5000;
-                double y = world.getHighestBlockYAt((int) x, (int) z) + 1;
-                Location loc = new Location(world, x, y, z);
+                Location loc = destinations.take(skipWorld);
+                if (loc == null) return;
                 for (Player player : players) {
                     player.teleport(loc);
                 }
             }
         },
-        // 4. Teleport each player to a different random location in their current world.
+        // 4. Teleport each player to a different random location in the world.
         TELEPORT_EACH_PLAYER_RANDOMLY(0.07) {
             @Override
-            public void apply(Random random) {
-                List<Player> players = new ArrayList<>(Bukkit.getOnlinePlayers());
-                if (players.isEmpty()) return;
-                for (Player p : players) {
-                    World w = p.getWorld();
-                    double x = (random.nextDouble() * 10000) - 5000;
-                    double z = (random.nextDouble() * 10000) - 5000;
-                    double y = w.getHighestBlockYAt((int) x, (int) z) + 1;
-                    Location newLocation = new Location(w, x, y, z);
-                    p.teleport(newLocation);
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                for (Player p : skipWorld.getPlayers()) {
+                    Location newLocation = destinations.take(skipWorld);
+                    if (newLocation != null) {
+                        p.teleport(newLocation);
+                    }
                 }
             }
         },
         // 5. Spawn random mobs around multiple random players.
-        SPAWN_RANDOM_MOBS(0.10) {
+        SPAWN_RANDOM_MOBS(0.10, Range.of("players", 1, 3, 1, 1_000_000), Range.of("mobs-per-player", 3, 8)) {
+            @Override
+            public boolean isExpensive() { return true; }
             @Override
-            public void apply(Random random) {
-                List<Player> onlinePlayers = new ArrayList<>(Bukkit.getOnlinePlayers());
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                List<Player> onlinePlayers = new ArrayList<>(skipWorld.getPlayers());
                 if (onlinePlayers.isEmpty()) return;
-                int affectedPlayersCount = 1 + random.nextInt(Math.min(3, onlinePlayers.size()));
-                Collections.shuffle(onlinePlayers, random);
+                int affectedPlayersCount = Math.min(ranges[0].nextInt(random), onlinePlayers.size());
+                random.shuffle(onlinePlayers);
                 List<Player> chosenOnes = onlinePlayers.subList(0, affectedPlayersCount);
                 List<org.bukkit.entity.EntityType> mobChoices = Arrays.asList(
                         org.bukkit.entity.EntityType.CHICKEN,
@@ -154,24 +176,28 @@ public class TimeSkipEvents implements Listener {
                         org.bukkit.entity.EntityType.SKELETON
                 );
                 for (Player p : chosenOnes) {
-                    World w = p.getWorld();
                     Location center = p.getLocation();
-                    int amount = 3 + random.nextInt(6);
+                    int amount = ranges[1].nextInt(random);
                     for (int i = 0; i < amount; i++) {
                         org.bukkit.entity.EntityType type = mobChoices.get(random.nextInt(mobChoices.size()));
                         Location spawnLoc = center.clone().add(random.nextInt(5) - 2, 0, random.nextInt(5) - 2);
-                        spawnLoc.setY(w.getHighestBlockYAt(spawnLoc) + 1.0);
-                        w.spawnEntity(spawnLoc, type);
+                        int surfaceY = surfaces.surfaceY(skipWorld, spawnLoc.getBlockX(), spawnLoc.getBlockZ());
+                        if (surfaceY == SurfaceLocator.UNSAFE) continue;
+                        spawnLoc.setY(surfaceY + 1.0);
+                        spawns.submit(p.getUniqueId(), spawnLoc, type, null);
                     }
                 }
             }
         },
-        // 6. Randomize blocks around the spawn area.
+        // 6. Randomize blocks around the spawn area of the world that skipped the night.
         RANDOMIZE_SPAWN_BLOCKS(0.05) {
             @Override
-            public void apply(Random random) {
-                World overworld = Bukkit.getWorlds().get(0); // main world
-                Location spawn = overworld.getSpawnLocation();
+            public boolean isExpensive() { return true; }
+            @Override
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                Location spawn = skipWorld.getSpawnLocation();
                 int range = 8;
                 List<Material> sillyMats = Arrays.asList(
                         Material.GLASS,
@@ -182,43 +208,50 @@ public class TimeSkipEvents implements Listener {
                         Material.HONEY_BLOCK,
                         Material.GOLD_BLOCK
                 );
-                int baseY = overworld.getHighestBlockYAt(spawn) - 1;
+                int baseY = skipWorld.getHighestBlockYAt(spawn) - 1;
                 for (int x = -range; x <= range; x++) {
                     for (int z = -range; z <= range; z++) {
                         Location loc = spawn.clone().add(x, 0, z);
                         loc.setY(baseY);
                         Material randomMat = sillyMats.get(random.nextInt(sillyMats.size()));
-                        overworld.getBlockAt(loc).setType(randomMat);
+                        skipWorld.getBlockAt(loc).setType(randomMat);
                     }
                 }
+                ModifierCounters.countBlocks((2 * range + 1) * (2 * range + 1));
             }
         },
-        // 7. Launch every player upward.
-        LAUNCH_ALL_PLAYERS(0.05) {
+        // 7. Launch every player in the world upward.
+        LAUNCH_ALL_PLAYERS(0.05, Range.of("velocity", 1.0, 3.0, 0.0, 10.0)) {
             @Override
-            public void apply(Random random) {
-                List<Player> players = new ArrayList<>(Bukkit.getOnlinePlayers());
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                List<Player> players = skipWorld.getPlayers();
                 if (players.isEmpty()) return;
-                double launchFactor = 1.0 + random.nextDouble() * 2.0;
+                double launchFactor = ranges[0].nextDouble(random);
                 for (Player p : players) {
                     p.setVelocity(new Vector(0, launchFactor, 0));
                 }
             }
         },
-        // 8. Heal all players: Fully restore health and grant regeneration.
+        // 8. Heal all players in the world: Fully restore health and grant regeneration.
         HEAL_ALL_PLAYERS(0.08) {
             @Override
-            public void apply(Random random) {
-                for (Player p : Bukkit.getOnlinePlayers()) {
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                for (Player p : skipWorld.getPlayers()) {
                     p.setHealth(p.getAttribute(Attribute.GENERIC_MAX_HEALTH).getValue());
                     p.addPotionEffect(new PotionEffect(PotionEffectType.REGENERATION, 20 * 10, 1, false, true));
                 }
             }
         },
-        // 9. Give random items to all players.
-        GIVE_RANDOM_ITEMS(0.07) {
+        // 9. Give random items to all players in the world.
+        GIVE_RANDOM_ITEMS(0.07, Range.of("items", 1, 3)) {
             @Override
-            public void apply(Random random) {
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
                 Material[] items = {
                         Material.DIAMOND,
                         Material.GOLD_INGOT,
@@ -228,8 +261,8 @@ public class TimeSkipEvents implements Listener {
                         Material.BREAD,
                         Material.COOKED_BEEF
                 };
-                for (Player p : Bukkit.getOnlinePlayers()) {
-                    int count = 1 + random.nextInt(3);
+                for (Player p : skipWorld.getPlayers()) {
+                    int count = ranges[0].nextInt(random);
                     for (int i = 0; i < count; i++) {
                         Material item = items[random.nextInt(items.length)];
                         p.getInventory().addItem(new ItemStack(item));
@@ -237,31 +270,33 @@ public class TimeSkipEvents implements Listener {
                 }
             }
         },
-        // 10. Set storm: Change weather to stormy in all worlds.
+        // 10. Set storm: Change the world's weather to stormy.
         SET_STORM(0.05) {
             @Override
-            public void apply(Random random) {
-                for (World world : Bukkit.getWorlds()) {
-                    world.setStorm(true);
-                    world.setThundering(true);
-                }
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                skipWorld.setStorm(true);
+                skipWorld.setThundering(true);
             }
         },
-        // 11. Clear weather: Change weather to clear in all worlds.
+        // 11. Clear weather: Change the world's weather to clear.
         CLEAR_WEATHER(0.05) {
             @Override
-            public void apply(Random random) {
-                for (World world : Bukkit.getWorlds()) {
-                    world.setStorm(false);
-                    world.setThundering(false);
-                }
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                skipWorld.setStorm(false);
+                skipWorld.setThundering(false);
             }
         },
-        // 12. Double player speed for 30 seconds.
+        // 12. Double the world's players' speed for 30 seconds.
         DOUBLE_PLAYER_SPEED(0.06) {
             @Override
-            public void apply(Random random) {
-                for (Player p : Bukkit.getOnlinePlayers()) {
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                for (Player p : skipWorld.getPlayers()) {
                     p.addPotionEffect(new PotionEffect(PotionEffectType.SPEED, 20 * 30, 1, false, true));
                 }
             }
@@ -269,50 +304,60 @@ public class TimeSkipEvents implements Listener {
         // 13. Invert gravity: Simulate inversion by giving a high jump boost for 10 seconds.
         INVERT_GRAVITY(0.04) {
             @Override
-            public void apply(Random random) {
-                for (Player p : Bukkit.getOnlinePlayers()) {
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                for (Player p : skipWorld.getPlayers()) {
                     p.addPotionEffect(new PotionEffect(PotionEffectType.JUMP_BOOST, 20 * 10, 4, false, true));
                 }
             }
         },
-        // 14. Advance time: Advance each world's time by a random amount.
-        ADVANCE_TIME(0.03) {
+        // 14. Advance time: Advance the world's time by a random amount.
+        ADVANCE_TIME(0.03, Range.of("ticks", 6000, 12000)) {
             @Override
-            public void apply(Random random) {
-                for (World world : Bukkit.getWorlds()) {
-                    long currentTime = world.getTime();
-                    long add = 6000 + random.nextInt(6000); // between 6000 and 12000 ticks
-                    world.setTime(currentTime + add);
-                }
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                long add = ranges[0].nextInt(random); // between 6000 and 12000 ticks by default
+                skipWorld.setTime(skipWorld.getTime() + add);
             }
         },
-        // 15. Reverse gravity: Give nearby living entities (except players) an upward velocity boost.
+        // 15. Reverse gravity: Give the world's living entities (except players) an upward velocity boost.
         REVERSE_GRAVITY(0.04) {
             @Override
-            public void apply(Random random) {
-                for (World world : Bukkit.getWorlds()) {
-                    for (Entity e : world.getEntities()) {
-                        if (e instanceof LivingEntity && !(e instanceof Player) && !(e instanceof Projectile)) {
-                            e.setVelocity(e.getVelocity().setY(2.0));
-                        }
-                    }
-                }
+            public void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                              DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                              EntityRegistry registry, Range[] ranges) {
+                Consumer<Entity> launch = e -> e.setVelocity(e.getVelocity().setY(2.0));
+                registry.forEach(skipWorld, EntityRegistry.Category.HOSTILE, launch);
+                registry.forEach(skipWorld, EntityRegistry.Category.PASSIVE, launch);
+                registry.forEach(skipWorld, EntityRegistry.Category.OTHER_LIVING, launch);
             }
         };
 
         private final double rarity;
+        private final Range[] ranges;
 
-        TimeSkipModifier(double rarity) {
+        TimeSkipModifier(double rarity, Range... ranges) {
             this.rarity = rarity;
+            this.ranges = ranges;
         }
 
+        @Override
         public double getRarity() {
             return rarity;
         }
 
+        @Override
+        public Range[] getRanges() {
+            return ranges;
+        }
+
         /**
-         * Called when this modifier is chosen.
+         * Called when this modifier is chosen, with the world that skipped the night and its configured ranges.
          */
-        public abstract void apply(Random random);
+        public abstract void apply(World skipWorld, ChaosRandom random, TeleportPipeline teleports,
+                                   DestinationPool destinations, SpawnQueue spawns, SurfaceLocator surfaces,
+                                   EntityRegistry registry, Range[] ranges);
     }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*
+    @CLASS-TITLE: HandlerMetrics.java
+    @CLASS-DESCRIPTION: How long each of the plugin's event handlers and ticking tasks takes. Listeners are
+    registered through registerEvents() instead of the PluginManager's: every @EventHandler method gets an
+    executor of its own that times the call into a LatencyHistogram (p50, p99, max). Tasks that carry out work
+    the handlers queued (cluster effects, delayed actions, block edits, spawns) are scheduled through time(),
+    which times each run the same way. A call that runs over the slow-event threshold is kept as a SlowEvent in
+    a bounded ring buffer, the oldest dropped first, so the modifier behind a lag spike can be found afterwards
+    ("/chaos slow").
+ */
+
+package org.im4ever12c.chaoscraft.metrics;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public final class HandlerMetrics {
+
+    private final long slowNanos;
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+    // Ring buffer of slow calls; guarded by itself.
+    private final SlowEvent[] slowEvents;
+    private int nextSlowEvent;
+    private long totalSlowEvents;
+
+    /**
+     * @param slowMicros     calls at least this long are kept as slow events
+     * @param slowEventLimit slow events kept; older ones are dropped
+     */
+    public HandlerMetrics(long slowMicros, int slowEventLimit) {
+        if (slowMicros <= 0 || slowEventLimit <= 0) {
+            throw new IllegalArgumentException("Slow-event threshold and buffer size must be positive: "
+                    + slowMicros + ", " + slowEventLimit);
+        }
+        this.slowNanos = TimeUnit.MICROSECONDS.toNanos(slowMicros);
+        this.slowEvents = new SlowEvent[slowEventLimit];
+    }
+
+    /**
+     * Registers the listener's @EventHandler methods (those declared by its own class) with their priority and
+     * ignoreCancelled, each timed under the name ListenerClass.method.
+     */
+    public void registerEvents(Listener listener, Plugin plugin) {
+        for (Method method : listener.getClass().getDeclaredMethods()) {
+            EventHandler annotation = method.getAnnotation(EventHandler.class);
+            if (annotation == null || method.isBridge() || method.isSynthetic()) {
+                continue;
+            }
+            Class<?>[] parameters = method.getParameterTypes();
+            if (parameters.length != 1 || !Event.class.isAssignableFrom(parameters[0])) {
+                plugin.getLogger().severe("Invalid event handler " + method + ", not registered");
+                continue;
+            }
+            method.setAccessible(true);
+            EventTimer timer = new EventTimer(listener.getClass().getSimpleName() + "." + method.getName(), method,
+                    parameters[0].asSubclass(Event.class));
+            handlers.add(timer);
+            plugin.getServer().getPluginManager().registerEvent(timer.type, listener, annotation.priority(), timer,
+                    plugin, annotation.ignoreCancelled());
+        }
+    }
+
+    /**
+     * Returns the task to schedule in place of {@code task}: each run is timed under the name TaskClass.run, into
+     * the same latencies and slow events as the event handlers.
+     */
+    public Runnable time(Runnable task) {
+        TaskTimer timer = new TaskTimer(task.getClass().getSimpleName() + ".run", task);
+        handlers.add(timer);
+        return timer;
+    }
+
+    private void recordSlow(SlowEvent event) {
+        synchronized (slowEvents) {
+            slowEvents[nextSlowEvent] = event;
+            nextSlowEvent = (nextSlowEvent + 1) % slowEvents.length;
+            totalSlowEvents++;
+        }
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Every timed handler and task, in registration order. */
+    public List<Handler> getHandlers() {
+        return handlers;
+    }
+
+    /** The slow events still kept, oldest first. */
+    public List<SlowEvent> getSlowEvents() {
+        synchronized (slowEvents) {
+            List<SlowEvent> kept = new ArrayList<>(slowEvents.length);
+            for (int i = 0; i < slowEvents.length; i++) {
+                SlowEvent event = slowEvents[(nextSlowEvent + i) % slowEvents.length];
+                if (event != null) {
+                    kept.add(event);
+                }
+            }
+            return kept;
+        }
+    }
+
+    /** Slow events since the plugin started, including those no longer kept. */
+    public long getTotalSlowEvents() {
+        synchronized (slowEvents) {
+            return totalSlowEvents;
+        }
+    }
+
+    /** Handler calls at least this long are slow events. */
+    public long getSlowNanos() {
+        return slowNanos;
+    }
+
+    /** One @EventHandler method or scheduled task and its latencies. */
+    public abstract class Handler {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Handler(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records one call that started at {@code start}, with the blocks the thread had touched before it;
+         * {@code event} is null for a task run.
+         */
+        final void record(ModifierCounters.Attribution attribution, long start, long blocks, Event event) {
+            long elapsed = System.nanoTime() - start;
+            latency.record(elapsed);
+            if (elapsed >= slowNanos) {
+                long touched = attribution.blocks - blocks;
+                recordSlow(event == null ? SlowEvent.ofTask(name, elapsed, attribution.slowest, touched)
+                        : SlowEvent.of(name, event, elapsed, attribution.slowest, touched));
+            }
+        }
+
+        /** ListenerClass.method or TaskClass.run */
+        public String getName() {
+            return name;
+        }
+
+        /** Durations of the calls, in nanoseconds. */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    private final class EventTimer extends Handler implements EventExecutor {
+        private final Method method;
+        private final Class<? extends Event> type;
+
+        private EventTimer(String name, Method method, Class<? extends Event> type) {
+            super(name);
+            this.method = method;
+            this.type = type;
+        }
+
+        @Override
+        public void execute(Listener listener, Event event) throws EventException {
+            // Bukkit also hands the executor subclasses of other events sharing the handler list.
+            if (!type.isInstance(event)) {
+                return;
+            }
+            // Save what an enclosing handler's call has seen so far; a nested event starts afresh.
+            ModifierCounters.Attribution attribution = ModifierCounters.attribution();
+            ModifierCounters outerSlowest = attribution.slowest;
+            long outerSlowestNanos = attribution.slowestNanos;
+            long blocks = attribution.blocks;
+            attribution.slowest = null;
+            long start = System.nanoTime();
+            try {
+                method.invoke(listener, event);
+            } catch (InvocationTargetException e) {
+                throw new EventException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new EventException(e);
+            } finally {
+                record(attribution, start, blocks, event);
+                attribution.slowest = outerSlowest;
+                attribution.slowestNanos = outerSlowestNanos;
+            }
+        }
+    }
+
+    private final class TaskTimer extends Handler implements Runnable {
+        private final Runnable task;
+
+        private TaskTimer(String name, Runnable task) {
+            super(name);
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            // Same bookkeeping as an event handler's call.
+            ModifierCounters.Attribution attribution = ModifierCounters.attribution();
+            ModifierCounters outerSlowest = attribution.slowest;
+            long outerSlowestNanos = attribution.slowestNanos;
+            long blocks = attribution.blocks;
+            attribution.slowest = null;
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                record(attribution, start, blocks, null);
+                attribution.slowest = outerSlowest;
+                attribution.slowestNanos = outerSlowestNanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+    @CLASS-TITLE: LatencyHistogram.java
+    @CLASS-DESCRIPTION: A fixed-size histogram of durations in nanoseconds. Buckets are logarithmic: each power of
+    two is split into 8 equal buckets, so any duration from 1 ns to centuries lands in one of 488 counters and a
+    percentile read back is at most 12.5% above the true value. Recording is one atomic increment plus an add to
+    the sum and the max, so any thread can record while another reads.
+ */
+
+package org.im4ever12c.chaoscraft.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class LatencyHistogram {
+
+    // Buckets per power of two: 2^SUB_BITS.
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Durations below SUB_BUCKETS get a bucket each; every power of two above gets SUB_BUCKETS.
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public void record(long nanos) {
+        if (nanos < 0L) {
+            nanos = 0L;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** The largest duration that lands in the bucket. */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (width - 1L);
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    public long getCount() {
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /** Sum of all recorded durations, in nanoseconds. */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /** Longest recorded duration, in nanoseconds. */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * The duration (in nanoseconds) that the given share of recordings did not exceed, e.g. 0.99 for the p99;
+     * 0 when nothing was recorded.
+     */
+    public long getPercentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+    @CLASS-TITLE: ModifierCounters.java
+    @CLASS-DESCRIPTION: What one modifier has done since the plugin started: how often it was applied, the time
+    spent applying it, and the entities, block changes and explosions that came of it. Counters are striped
+    LongAdders, so any number of threads can count at once without contending.
+    While a listener applies a modifier (between begin() and end()) the modifier is the thread's current one,
+    and the shared code that spawns entities, edits blocks or creates explosions credits it through the static
+    count methods. Work that happens later (queued spawns, block edits, delayed explosions) captures current()
+    when it is queued and counts on the captured counters when it is done.
+    The thread's attribution also notes the slowest modifier applied and the blocks touched, which HandlerMetrics
+    reads around each event handler for its slow-event records.
+ */
+
+package org.im4ever12c.chaoscraft.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class ModifierCounters {
+
+    private static final ThreadLocal<Attribution> ATTRIBUTION = ThreadLocal.withInitial(Attribution::new);
+
+    private final String group;
+    private final String modifier;
+    private final LongAdder applications = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder explosions = new LongAdder();
+    private final Rate rate1 = new Rate(60.0);
+    private final Rate rate5 = new Rate(300.0);
+    private final Rate rate15 = new Rate(900.0);
+    // Only touched by the thread ticking the rates.
+    private long lastApplications;
+
+    ModifierCounters(String group, String modifier) {
+        this.group = group;
+        this.modifier = modifier;
+    }
+
+    /**
+     * Makes this modifier the current one on this thread, until the matching {@link #end} or
+     * {@link #endFollowUp}. Returns the start time to pass to it. Nests: an effect that triggers another
+     * modifier's event credits that modifier until it ends, then this one again.
+     */
+    public long begin() {
+        ATTRIBUTION.get().push(this);
+        return System.nanoTime();
+    }
+
+    /** Ends {@link #begin}: counts one application and the time since {@code start}. */
+    public void end(long start) {
+        long elapsed = System.nanoTime() - start;
+        nanos.add(elapsed);
+        applications.increment();
+        ATTRIBUTION.get().pop(elapsed);
+    }
+
+    /**
+     * Ends {@link #begin} for follow-up work of an earlier application (e.g. the hit of a projectile the modifier
+     * changed on launch): counts the time since {@code start}, but not another application.
+     */
+    public void endFollowUp(long start) {
+        long elapsed = System.nanoTime() - start;
+        nanos.add(elapsed);
+        ATTRIBUTION.get().pop(elapsed);
+    }
+
+    /** The modifier being applied on this thread, or null if none is. */
+    public static ModifierCounters current() {
+        return ATTRIBUTION.get().peek();
+    }
+
+    /** Credits entities spawned to the current modifier, if any. */
+    public static void countEntities(int count) {
+        ModifierCounters counters = current();
+        if (counters != null) {
+            counters.addEntities(count);
+        }
+    }
+
+    /** Credits changed blocks to the current modifier, if any. */
+    public static void countBlocks(int count) {
+        Attribution attribution = ATTRIBUTION.get();
+        ModifierCounters counters = attribution.peek();
+        if (counters != null) {
+            counters.addBlocks(count);
+            attribution.blocks += count;
+        }
+    }
+
+    /**
+     * Notes blocks queued for change (counted by the job once changed) as touched by the event being handled on
+     * this thread.
+     */
+    public static void touchBlocks(int count) {
+        ATTRIBUTION.get().blocks += count;
+    }
+
+    static Attribution attribution() {
+        return ATTRIBUTION.get();
+    }
+
+    /** Credits an explosion to the current modifier, if any. */
+    public static void countExplosion() {
+        ModifierCounters counters = current();
+        if (counters != null) {
+            counters.addExplosions(1);
+        }
+    }
+
+    public void addEntities(int count) {
+        entities.add(count);
+    }
+
+    public void addBlocks(int count) {
+        blocks.add(count);
+    }
+
+    public void addExplosions(int count) {
+        explosions.add(count);
+    }
+
+    /** Updates the moving averages; called every {@code seconds} by ModifierMetrics, always from the same thread. */
+    void tick(double seconds) {
+        long total = applications.sum();
+        double perSecond = (total - lastApplications) / seconds;
+        lastApplications = total;
+        rate1.update(perSecond, seconds);
+        rate5.update(perSecond, seconds);
+        rate15.update(perSecond, seconds);
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** The modifier group's config.yml key. */
+    public String getGroup() {
+        return group;
+    }
+
+    /** The modifier's config.yml key. */
+    public String getModifier() {
+        return modifier;
+    }
+
+    public long getApplications() {
+        return applications.sum();
+    }
+
+    /** Time spent applying the modifier, including other modifiers' effects nested inside it. */
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    public long getEntities() {
+        return entities.sum();
+    }
+
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    public long getExplosions() {
+        return explosions.sum();
+    }
+
+    /** Applications per second, averaged over the last minute. */
+    public double getRate1() {
+        return rate1.value;
+    }
+
+    /** Applications per second, averaged over the last 5 minutes. */
+    public double getRate5() {
+        return rate5.value;
+    }
+
+    /** Applications per second, averaged over the last 15 minutes. */
+    public double getRate15() {
+        return rate15.value;
+    }
+
+    /** Exponentially weighted moving average of a per-second rate, like the Unix load average. */
+    private static final class Rate {
+        private final double window;
+        private boolean started;
+        volatile double value;
+
+        Rate(double windowSeconds) {
+            this.window = windowSeconds;
+        }
+
+        void update(double perSecond, double seconds) {
+            if (!started) {
+                started = true;
+                value = perSecond;
+                return;
+            }
+            value += (perSecond - value) * (1.0 - Math.exp(-seconds / window));
+        }
+    }
+
+    /**
+     * The stack of modifiers being applied on one thread, innermost last. Also what they did on this thread, for
+     * HandlerMetrics: the blocks touched (a running total) and the slowest modifier ended since it last reset.
+     */
+    static final class Attribution {
+        private ModifierCounters[] stack = new ModifierCounters[8];
+        private int depth;
+        long blocks;
+        ModifierCounters slowest;
+        long slowestNanos;
+
+        void push(ModifierCounters counters) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = counters;
+        }
+
+        void pop(long nanos) {
+            ModifierCounters counters = stack[--depth];
+            stack[depth] = null;
+            if (slowest == null || nanos > slowestNanos) {
+                slowest = counters;
+                slowestNanos = nanos;
+            }
+        }
+
+        ModifierCounters peek() {
+            return depth == 0 ? null : stack[depth - 1];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+    @CLASS-TITLE: ModifierMetrics.java
+    @CLASS-DESCRIPTION: The counters of every modifier (see ModifierCounters), registered per modifier enum
+    under the same key as its config.yml group. Run it every TICK_SECONDS (on any one thread, it reads nothing
+    but the counters) to keep the 1, 5 and 15 minute application rates up to date.
+ */
+
+package org.im4ever12c.chaoscraft.metrics;
+
+import org.im4ever12c.chaoscraft.config.ModifierTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public final class ModifierMetrics implements Runnable {
+
+    /** Seconds between two rate updates. */
+    public static final int TICK_SECONDS = 5;
+
+    private final List<Group<?>> groups = new CopyOnWriteArrayList<>();
+
+    public <E extends Enum<E>> Group<E> register(String key, E[] modifiers) {
+        for (Group<?> group : groups) {
+            if (group.key.equals(key)) {
+                throw new IllegalArgumentException("Modifier metrics already registered: " + key);
+            }
+        }
+        ModifierCounters[] counters = new ModifierCounters[modifiers.length];
+        for (E modifier : modifiers) {
+            counters[modifier.ordinal()] = new ModifierCounters(key, ModifierTable.key(modifier.name()));
+        }
+        Group<E> group = new Group<>(key, counters);
+        groups.add(group);
+        return group;
+    }
+
+    @Override
+    public void run() {
+        for (Group<?> group : groups) {
+            for (ModifierCounters counters : group.counters) {
+                counters.tick(TICK_SECONDS);
+            }
+        }
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Keys of the registered groups, in registration order. */
+    public List<String> getGroups() {
+        List<String> keys = new ArrayList<>();
+        for (Group<?> group : groups) {
+            keys.add(group.key);
+        }
+        return keys;
+    }
+
+    /** The counters of every registered modifier, group by group in declaration order. */
+    public List<ModifierCounters> getCounters() {
+        List<ModifierCounters> all = new ArrayList<>();
+        for (Group<?> group : groups) {
+            Collections.addAll(all, group.counters);
+        }
+        return all;
+    }
+
+    /** The counters of one modifier enum. */
+    public static final class Group<E extends Enum<E>> {
+        private final String key;
+        private final ModifierCounters[] counters;
+
+        private Group(String key, ModifierCounters[] counters) {
+            this.key = key;
+            this.counters = counters;
+        }
+
+        public ModifierCounters of(E modifier) {
+            return counters[modifier.ordinal()];
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+    @CLASS-TITLE: PrometheusExporter.java
+    @CLASS-DESCRIPTION: Writes the modifier counters to a file in the Prometheus text format, for the node
+    exporter's textfile collector. Each run writes a temporary file next to the target and moves it over the
+    target, so the collector never reads a half-written file. Event handler latencies go along as summaries, the
+    throttle's level and MSPT as gauges. Only reads the counters, so it runs off the main thread; values of
+    main-thread components (queues, caches, limiters) are registered with counter() and gauge() and copied by
+    sample(), which runs on the main thread before each write.
+ */
+
+package org.im4ever12c.chaoscraft.metrics;
+
+import org.im4ever12c.chaoscraft.schedule.TickThrottle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.DoubleSupplier;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+public final class PrometheusExporter implements Runnable {
+
+    private final ModifierMetrics metrics;
+    private final HandlerMetrics handlers;
+    // Null when throttling is disabled.
+    private final TickThrottle throttle;
+    private final Path file;
+    private final Path temporary;
+    private final Logger logger;
+    // Values of main-thread components; registered before the export is scheduled.
+    private final List<Sampled> sampled = new ArrayList<>();
+    // Their values as of the last sample(), in registration order.
+    private volatile double[] samples = new double[0];
+    // Only the first failure of a streak is logged.
+    private boolean failing;
+
+    public PrometheusExporter(ModifierMetrics metrics, HandlerMetrics handlers, TickThrottle throttle, Path file,
+                              Logger logger) {
+        this.metrics = metrics;
+        this.handlers = handlers;
+        this.throttle = throttle;
+        this.file = file.toAbsolutePath();
+        this.temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        this.logger = logger;
+    }
+
+    /** Adds a counter of a main-thread component, read by {@link #sample}. Register before scheduling. */
+    public PrometheusExporter counter(String name, String help, DoubleSupplier value) {
+        sampled.add(new Sampled(name, help, "counter", value));
+        return this;
+    }
+
+    /** Adds a gauge of a main-thread component, read by {@link #sample}. Register before scheduling. */
+    public PrometheusExporter gauge(String name, String help, DoubleSupplier value) {
+        sampled.add(new Sampled(name, help, "gauge", value));
+        return this;
+    }
+
+    /** Copies the registered values for the next write. Main thread only. */
+    public void sample() {
+        double[] values = new double[sampled.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = sampled.get(i).value.getAsDouble();
+        }
+        samples = values;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(temporary, format(metrics.getCounters(), handlers, throttle, sampled, samples)
+                    .getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            failing = false;
+        } catch (IOException e) {
+            if (!failing) {
+                logger.warning("Could not write the modifier metrics to " + file + ": " + e);
+                failing = true;
+            }
+        }
+    }
+
+    static String format(List<ModifierCounters> counters, HandlerMetrics handlers, TickThrottle throttle,
+                         List<Sampled> sampled, double[] samples) {
+        StringBuilder out = new StringBuilder(counters.size() * 512);
+        counter(out, counters, "chaoscraft_modifier_applications_total", "Times the modifier was applied.",
+                ModifierCounters::getApplications);
+        seconds(out, counters, "chaoscraft_modifier_apply_seconds_total", "Time spent applying the modifier.",
+                ModifierCounters::getNanos);
+        counter(out, counters, "chaoscraft_modifier_entities_spawned_total", "Entities spawned by the modifier.",
+                ModifierCounters::getEntities);
+        counter(out, counters, "chaoscraft_modifier_blocks_mutated_total", "Blocks changed by the modifier.",
+                ModifierCounters::getBlocks);
+        counter(out, counters, "chaoscraft_modifier_explosions_total", "Explosions created by the modifier.",
+                ModifierCounters::getExplosions);
+        latencies(out, handlers);
+        if (throttle != null) {
+            header(out, "chaoscraft_throttle_level", "Throttling of expensive modifiers, 0 (off) to 1 (full).", "gauge");
+            out.append("chaoscraft_throttle_level ").append(String.format(Locale.ROOT, "%.4f", throttle.getLevel())).append('\n');
+            header(out, "chaoscraft_mspt", "Smoothed milliseconds per tick the throttle works from.", "gauge");
+            out.append("chaoscraft_mspt ").append(String.format(Locale.ROOT, "%.3f", throttle.getMspt())).append('\n');
+            header(out, "chaoscraft_throttled_ticks_total", "Ticks during which expensive modifiers were throttled.",
+                    "counter");
+            out.append("chaoscraft_throttled_ticks_total ").append(throttle.getThrottledTicks()).append('\n');
+        }
+        // Nothing is written for values not sampled yet.
+        for (int i = 0; i < Math.min(sampled.size(), samples.length); i++) {
+            Sampled value = sampled.get(i);
+            header(out, value.name, value.help, value.type);
+            out.append(value.name).append(' ').append(number(samples[i])).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, List<ModifierCounters> counters, String name, String help,
+                                ToLongFunction<ModifierCounters> value) {
+        header(out, name, help, "counter");
+        for (ModifierCounters modifier : counters) {
+            labels(out, name, modifier).append(value.applyAsLong(modifier)).append('\n');
+        }
+    }
+
+    private static void seconds(StringBuilder out, List<ModifierCounters> counters, String name, String help,
+                                ToLongFunction<ModifierCounters> nanos) {
+        header(out, name, help, "counter");
+        for (ModifierCounters modifier : counters) {
+            labels(out, name, modifier).append(seconds(nanos.applyAsLong(modifier))).append('\n');
+        }
+    }
+
+    private static void latencies(StringBuilder out, HandlerMetrics handlers) {
+        String name = "chaoscraft_handler_latency_seconds";
+        header(out, name, "Time spent in the event handler or scheduler task.", "summary");
+        for (HandlerMetrics.Handler handler : handlers.getHandlers()) {
+            LatencyHistogram latency = handler.getLatency();
+            String label = "{handler=\"" + handler.getName() + "\"";
+            out.append(name).append(label).append(",quantile=\"0.5\"} ")
+                    .append(seconds(latency.getPercentile(0.5))).append('\n');
+            out.append(name).append(label).append(",quantile=\"0.99\"} ")
+                    .append(seconds(latency.getPercentile(0.99))).append('\n');
+            out.append(name).append("_sum").append(label).append("} ").append(seconds(latency.getSum())).append('\n');
+            out.append(name).append("_count").append(label).append("} ").append(latency.getCount()).append('\n');
+        }
+        name = "chaoscraft_handler_latency_max_seconds";
+        header(out, name, "Longest call of the event handler or scheduler task.", "gauge");
+        for (HandlerMetrics.Handler handler : handlers.getHandlers()) {
+            out.append(name).append("{handler=\"").append(handler.getName()).append("\"} ")
+                    .append(seconds(handler.getLatency().getMax())).append('\n');
+        }
+        header(out, "chaoscraft_slow_events_total", "Handler calls and task runs over the slow-event threshold.", "counter");
+        out.append("chaoscraft_slow_events_total ").append(handlers.getTotalSlowEvents()).append('\n');
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+                : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1_000_000_000.0);
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // Group and modifier keys are lower-kebab names, nothing in them needs escaping.
+    private static StringBuilder labels(StringBuilder out, String name, ModifierCounters modifier) {
+        return out.append(name).append("{group=\"").append(modifier.getGroup())
+                .append("\",modifier=\"").append(modifier.getModifier()).append("\"} ");
+    }
+
+    /** One value of a main-thread component. */
+    static final class Sampled {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final DoubleSupplier value;
+
+        Sampled(String name, String help, String type, DoubleSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
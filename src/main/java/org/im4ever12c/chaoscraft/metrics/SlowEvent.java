@@ -0,0 +1,179 @@
+/*
+    @CLASS-TITLE: SlowEvent.java
+    @CLASS-DESCRIPTION: What HandlerMetrics keeps of one event handler call (or task run) that ran over the
+    slow-event threshold: when, which handler and event, how long it took, the slowest modifier applied during
+    it, where it happened (world, chunk and entity type, as far as the event tells) and how many blocks it
+    touched. Immutable.
+ */
+
+package org.im4ever12c.chaoscraft.metrics;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.world.ChunkEvent;
+import org.bukkit.event.world.WorldEvent;
+
+import java.time.Instant;
+import java.util.Locale;
+
+public final class SlowEvent {
+
+    private final long time;
+    private final String handler;
+    private final String event;
+    private final long nanos;
+    private final String modifier;
+    private final String world;
+    private final boolean located;
+    private final int chunkX;
+    private final int chunkZ;
+    private final String entityType;
+    private final long blocks;
+
+    private SlowEvent(long time, String handler, String event, long nanos, String modifier, String world,
+                      boolean located, int chunkX, int chunkZ, String entityType, long blocks) {
+        this.time = time;
+        this.handler = handler;
+        this.event = event;
+        this.nanos = nanos;
+        this.modifier = modifier;
+        this.world = world;
+        this.located = located;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.entityType = entityType;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Records a slow call of {@code handler}. Where it happened is read from the event after the handler ran, so
+     * an entity that was moved or removed by it reports where it ended up.
+     *
+     * @param modifier the slowest modifier applied during the call, or null if none was
+     */
+    static SlowEvent of(String handler, Event event, long nanos, ModifierCounters modifier, long blocks) {
+        Entity entity = null;
+        Location location = null;
+        World world = null;
+        boolean located = false;
+        int chunkX = 0;
+        int chunkZ = 0;
+        if (event instanceof EntityEvent) {
+            entity = ((EntityEvent) event).getEntity();
+        } else if (event instanceof PlayerEvent) {
+            entity = ((PlayerEvent) event).getPlayer();
+        } else if (event instanceof BlockEvent) {
+            Block block = ((BlockEvent) event).getBlock();
+            if (block != null) {
+                world = block.getWorld();
+                located = true;
+                chunkX = block.getX() >> 4;
+                chunkZ = block.getZ() >> 4;
+            }
+        } else if (event instanceof ChunkEvent) {
+            world = ((ChunkEvent) event).getWorld();
+            located = true;
+            chunkX = ((ChunkEvent) event).getChunk().getX();
+            chunkZ = ((ChunkEvent) event).getChunk().getZ();
+        } else if (event instanceof WorldEvent) {
+            world = ((WorldEvent) event).getWorld();
+        }
+        if (entity != null) {
+            location = entity.getLocation();
+            world = location.getWorld();
+            located = true;
+            chunkX = location.getBlockX() >> 4;
+            chunkZ = location.getBlockZ() >> 4;
+        }
+        return new SlowEvent(System.currentTimeMillis(), handler, event.getEventName(), nanos,
+                modifier == null ? null : modifier.getGroup() + "/" + modifier.getModifier(),
+                world == null ? null : world.getName(), located, chunkX, chunkZ,
+                entity == null ? null : entity.getType().name(), blocks);
+    }
+
+    /**
+     * Records a slow run of the scheduled task {@code handler}. A task has no event, so the event is "task" and
+     * the location is unknown.
+     *
+     * @param modifier the slowest modifier applied (or followed up on) during the run, or null if none was
+     */
+    static SlowEvent ofTask(String handler, long nanos, ModifierCounters modifier, long blocks) {
+        return new SlowEvent(System.currentTimeMillis(), handler, "task", nanos,
+                modifier == null ? null : modifier.getGroup() + "/" + modifier.getModifier(),
+                null, false, 0, 0, null, blocks);
+    }
+
+    /** When the handler finished, in epoch milliseconds. */
+    public long getTime() {
+        return time;
+    }
+
+    /** The handler, as ListenerClass.method, or the task, as TaskClass.run. */
+    public String getHandler() {
+        return handler;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /** The slowest modifier applied during the call as group/modifier, or null if none was. */
+    public String getModifier() {
+        return modifier;
+    }
+
+    /** Null if the event has no world. */
+    public String getWorld() {
+        return world;
+    }
+
+    /** False if the event has no position; the chunk coordinates are 0 then. */
+    public boolean isLocated() {
+        return located;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    /** Null if the event is not about an entity. */
+    public String getEntityType() {
+        return entityType;
+    }
+
+    /** Blocks changed or queued for change during the call. */
+    public long getBlocks() {
+        return blocks;
+    }
+
+    /** One line, e.g. for a dump file. */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(160);
+        out.append(Instant.ofEpochMilli(time)).append(' ').append(handler).append(' ').append(event)
+                .append(String.format(Locale.ROOT, " %.2fms", nanos / 1_000_000.0))
+                .append(" modifier=").append(modifier == null ? "-" : modifier)
+                .append(" world=").append(world == null ? "-" : world);
+        if (located) {
+            out.append(" chunk=").append(chunkX).append(',').append(chunkZ);
+        }
+        if (entityType != null) {
+            out.append(" entity=").append(entityType);
+        }
+        return out.append(" blocks=").append(blocks).toString();
+    }
+}
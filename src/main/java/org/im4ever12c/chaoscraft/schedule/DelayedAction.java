@@ -0,0 +1,66 @@
+/*
+    @CLASS-TITLE: DelayedAction.java
+    @CLASS-DESCRIPTION: Something a chaos effect wants done a number of ticks from now (a delayed explosion,
+    a countdown step, a firework detonation...), scheduled on the TimingWheel. Each kind of action is its own
+    subclass carrying the data it needs. An action is anchored to a world and chunk so it can be cancelled
+    in bulk when that chunk or world unloads. The links the wheel uses live in the action itself, which makes
+    scheduling and cancelling O(1) without any extra allocation. An action can only be scheduled once at a
+    time, but may reschedule itself from run(). Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.schedule;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.im4ever12c.chaoscraft.world.ChunkKeys;
+
+public abstract class DelayedAction {
+
+    private final World world;
+    private final long chunkKey;
+
+    // Timing wheel bucket list.
+    DelayedAction prev;
+    DelayedAction next;
+    int bucket = -1;
+    long dueTick;
+    long dueNanos;
+
+    // Per-chunk index list.
+    DelayedAction chunkPrev;
+    DelayedAction chunkNext;
+
+    protected DelayedAction(Location location) {
+        this(location.getWorld(), location.getBlockX(), location.getBlockZ());
+    }
+
+    protected DelayedAction(World world, int blockX, int blockZ) {
+        if (world == null) {
+            throw new IllegalArgumentException("Delayed actions need a world");
+        }
+        this.world = world;
+        this.chunkKey = ChunkKeys.ofBlock(blockX, blockZ);
+    }
+
+    /** Performs the action. Called on the main thread once the delay has passed. */
+    public abstract void run();
+
+    /**
+     * Called instead of run() when the action is cancelled (explicitly, or because its chunk or world unloaded).
+     * Actions that wrap another action forward this to it.
+     */
+    public void cancelled() {
+    }
+
+    public final boolean isScheduled() {
+        return bucket >= 0;
+    }
+
+    public final World getWorld() {
+        return world;
+    }
+
+    final long getChunkKey() {
+        return chunkKey;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+    @CLASS-TITLE: DelayedExplosion.java
+    @CLASS-DESCRIPTION: A timed explosion (bomb mobs, timed block explosions, delayed death explosions),
+    created through the ExplosionLimiter when it goes off. Optionally removes the entity that carried the bomb.
+    The explosion is credited to the modifier that set the bomb.
+ */
+
+package org.im4ever12c.chaoscraft.schedule;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+import org.im4ever12c.chaoscraft.world.ExplosionLimiter;
+
+public final class DelayedExplosion extends DelayedAction {
+
+    private final ExplosionLimiter limiter;
+    private final double x;
+    private final double y;
+    private final double z;
+    private final float power;
+    private final Entity carrier;
+    private final ModifierCounters counters;
+
+    /**
+     * @param carrier entity removed when the explosion goes off, or null
+     */
+    public DelayedExplosion(ExplosionLimiter limiter, Location location, float power, Entity carrier) {
+        super(location);
+        this.limiter = limiter;
+        this.x = location.getX();
+        this.y = location.getY();
+        this.z = location.getZ();
+        this.power = power;
+        this.carrier = carrier;
+        this.counters = ModifierCounters.current();
+    }
+
+    @Override
+    public void run() {
+        if (counters == null) {
+            limiter.createExplosion(getWorld(), x, y, z, power, false, true);
+        } else {
+            long start = counters.begin();
+            try {
+                limiter.createExplosion(getWorld(), x, y, z, power, false, true);
+            } finally {
+                counters.endFollowUp(start);
+            }
+        }
+        if (carrier != null) {
+            carrier.remove();
+        }
+    }
+
+    @Override
+    public void cancelled() {
+        // The bomb was defused (its chunk unloaded): do not leave the carrier invulnerable forever.
+        if (carrier != null) {
+            carrier.setInvulnerable(false);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+    @CLASS-TITLE: TickThrottle.java
+    @CLASS-DESCRIPTION: Holds back expensive chaos when the server falls behind. Runs every tick and samples the
+    milliseconds per tick (MSPT): the server's own average tick time where it reports one (Paper and its forks),
+    otherwise the time since the previous tick, which only shows ticks that run late. From the smoothed MSPT it
+    moves a throttle level between 0 (off) and 1 (full): up as MSPT climbs from start-mspt to full-mspt, back
+    down only once MSPT drops towards recover-mspt (hysteresis), and never faster than the configured rates, so
+    the odds change smoothly instead of flapping. Modifier tables multiply the weights of expensive modifiers
+    by getScale(). Updated on the main thread; the level can be read from any thread.
+ */
+
+package org.im4ever12c.chaoscraft.schedule;
+
+import org.bukkit.Server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public final class TickThrottle implements Runnable {
+
+    private static final double MILLIS_PER_TICK = 50.0;
+    // Weight of the newest sample in the smoothed MSPT.
+    private static final double MSPT_SMOOTHING = 0.1;
+    // A tick interval up to this much over 50ms still counts as on time.
+    private static final double LATE_TOLERANCE_MILLIS = 1.0;
+
+    private final Logger logger;
+    private final double startMspt;
+    private final double fullMspt;
+    private final double recoverMspt;
+    private final double minScale;
+    private final double risePerSecond;
+    private final double fallPerSecond;
+    // Paper's Server#getAverageTickTime(), or null on servers without it.
+    private final Method averageTickTime;
+    private final Server server;
+    private long lastRun;
+    private boolean engaged;
+    // Written by the main thread only; volatile so the metrics can be read from any thread.
+    private volatile double smoothedMspt;
+    private volatile double level;
+    private volatile long throttledTicks;
+    private volatile long engagements;
+
+    /**
+     * @param recoverMspt   once throttling, MSPT must drop to this before the level can return to 0
+     * @param startMspt     MSPT at which throttling starts
+     * @param fullMspt      MSPT at which the throttle is full
+     * @param minScale      share of their weight expensive modifiers keep at full throttle
+     * @param risePerSecond most the level can rise per second
+     * @param fallPerSecond most the level can fall per second
+     */
+    public TickThrottle(Server server, Logger logger, double recoverMspt, double startMspt, double fullMspt,
+                        double minScale, double risePerSecond, double fallPerSecond) {
+        if (!(recoverMspt < startMspt && startMspt < fullMspt) || minScale < 0.0 || minScale > 1.0
+                || risePerSecond <= 0.0 || fallPerSecond <= 0.0) {
+            throw new IllegalArgumentException("Invalid throttle settings: need recover-mspt < start-mspt < full-mspt, "
+                    + "min-scale between 0 and 1 and positive rates");
+        }
+        this.server = server;
+        this.logger = logger;
+        this.recoverMspt = recoverMspt;
+        this.startMspt = startMspt;
+        this.fullMspt = fullMspt;
+        this.minScale = minScale;
+        this.risePerSecond = risePerSecond;
+        this.fallPerSecond = fallPerSecond;
+        this.averageTickTime = findAverageTickTime(server);
+        if (averageTickTime == null) {
+            logger.info("The server does not report its tick time; the chaos throttle only reacts to late ticks");
+        }
+    }
+
+    private static Method findAverageTickTime(Server server) {
+        try {
+            Method method = server.getClass().getMethod("getAverageTickTime");
+            return method.getReturnType() == double.class ? method : null;
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (lastRun == 0L) {
+            lastRun = now;
+            return;
+        }
+        double intervalMillis = (now - lastRun) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        lastRun = now;
+        smoothedMspt += (sampleMspt(intervalMillis) - smoothedMspt) * MSPT_SMOOTHING;
+
+        double target;
+        if (engaged) {
+            target = ramp(smoothedMspt, recoverMspt, fullMspt);
+        } else {
+            target = ramp(smoothedMspt, startMspt, fullMspt);
+            if (target > 0.0) {
+                engaged = true;
+                engagements++;
+                logger.info(String.format("Server at %.1f mspt, throttling expensive chaos modifiers", smoothedMspt));
+            }
+        }
+        double seconds = Math.min(intervalMillis, 1000.0) / 1000.0;
+        double current = level;
+        double next = target > current ? Math.min(target, current + risePerSecond * seconds)
+                : Math.max(target, current - fallPerSecond * seconds);
+        level = next;
+        if (engaged && next == 0.0) {
+            engaged = false;
+            logger.info(String.format("Server back at %.1f mspt, chaos modifiers no longer throttled", smoothedMspt));
+        }
+        if (next > 0.0) {
+            throttledTicks++;
+        }
+    }
+
+    private double sampleMspt(double intervalMillis) {
+        if (averageTickTime != null) {
+            try {
+                return (double) averageTickTime.invoke(server);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Fall through to the interval.
+            }
+        }
+        // An on-time tick says nothing about how busy it was; only a late one shows the server falling behind.
+        return intervalMillis > MILLIS_PER_TICK + LATE_TOLERANCE_MILLIS ? intervalMillis : 0.0;
+    }
+
+    private static double ramp(double value, double from, double to) {
+        return Math.max(0.0, Math.min(1.0, (value - from) / (to - from)));
+    }
+
+    /**
+     * The factor expensive modifiers' weights are multiplied by right now: 1 when not throttling, min-scale at
+     * full throttle.
+     */
+    public double getScale() {
+        return 1.0 - level * (1.0 - minScale);
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Current throttle level, 0 (off) to 1 (full). */
+    public double getLevel() {
+        return level;
+    }
+
+    /** Smoothed milliseconds per tick the throttle is working from. */
+    public double getMspt() {
+        return smoothedMspt;
+    }
+
+    /** False when the MSPT is estimated from late ticks because the server reports no tick time. */
+    public boolean isReportedMspt() {
+        return averageTickTime != null;
+    }
+
+    /** Ticks during which expensive modifiers were held back. */
+    public long getThrottledTicks() {
+        return throttledTicks;
+    }
+
+    /** Times throttling started. */
+    public long getEngagements() {
+        return engagements;
+    }
+}
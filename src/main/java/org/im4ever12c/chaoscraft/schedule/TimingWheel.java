@@ -0,0 +1,307 @@
+/*
+    @CLASS-TITLE: TimingWheel.java
+    @CLASS-DESCRIPTION: Runs every DelayedAction from one repeating task instead of one Bukkit task per delay.
+    A hierarchical timing wheel: level 0 has a slot per tick for the next 256 ticks, and three coarser levels
+    of 64 slots each cover up to ~39 days (longer delays are clamped). Each tick fires the current level-0
+    slot; whenever a level wraps, the next slot of the level above is cascaded down. Scheduling and cancelling
+    are O(1). Actions are also indexed by world and chunk so they can be cancelled in bulk, which happens
+    automatically when a chunk or world unloads. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.schedule;
+
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.im4ever12c.chaoscraft.world.ChunkKeys;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class TimingWheel implements Listener, Runnable {
+
+    private static final int LEVEL0_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVEL0_SLOTS = 1 << LEVEL0_BITS;
+    private static final int LEVEL_SLOTS = 1 << LEVEL_BITS;
+    private static final int LEVELS = 4;
+    /** Longest delay the wheel can hold, in ticks; longer delays are clamped to it. */
+    public static final long MAX_DELAY = (1L << (LEVEL0_BITS + (LEVELS - 1) * LEVEL_BITS)) - 1;
+    private static final long NANOS_PER_TICK = TimeUnit.MILLISECONDS.toNanos(50);
+    // Weight of the newest firing in the smoothed lateness.
+    private static final double LATENESS_SMOOTHING = 0.05;
+
+    private final Logger logger;
+    private final DelayedAction[] heads = new DelayedAction[LEVEL0_SLOTS + (LEVELS - 1) * LEVEL_SLOTS];
+    // World -> chunk key -> head of that chunk's action list.
+    private final Map<UUID, Map<Long, DelayedAction>> chunks = new HashMap<>();
+    private long currentTick;
+    private int pending;
+    private int firedLastTick;
+    private long totalFired;
+    private long totalCancelled;
+    private double smoothedLatenessNanos;
+    private long maxLatenessNanos;
+
+    public TimingWheel(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Schedules the action to run after the given number of ticks (at least 1).
+     *
+     * @throws IllegalStateException if the action is already scheduled
+     */
+    public void schedule(DelayedAction action, long delayTicks) {
+        if (action.isScheduled()) {
+            throw new IllegalStateException("Action is already scheduled");
+        }
+        long delay = Math.max(1L, Math.min(delayTicks, MAX_DELAY));
+        action.dueTick = currentTick + delay;
+        action.dueNanos = System.nanoTime() + delay * NANOS_PER_TICK;
+        insert(action);
+        index(action);
+        pending++;
+    }
+
+    /** Cancels the action if it is scheduled. Returns false if it was not. */
+    public boolean cancel(DelayedAction action) {
+        if (!action.isScheduled()) {
+            return false;
+        }
+        detach(action);
+        cancelled(action);
+        return true;
+    }
+
+    /** Cancels every action anchored in the chunk. Returns how many were cancelled. */
+    public int cancelChunk(World world, int chunkX, int chunkZ) {
+        Map<Long, DelayedAction> worldChunks = chunks.get(world.getUID());
+        if (worldChunks == null) {
+            return 0;
+        }
+        return cancelList(worldChunks.remove(ChunkKeys.key(chunkX, chunkZ)));
+    }
+
+    /** Cancels every action anchored in the world. Returns how many were cancelled. */
+    public int cancelWorld(World world) {
+        Map<Long, DelayedAction> worldChunks = chunks.remove(world.getUID());
+        if (worldChunks == null) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (DelayedAction head : worldChunks.values()) {
+            cancelled += cancelList(head);
+        }
+        return cancelled;
+    }
+
+    /** Cancels everything, e.g. when the plugin is disabled. */
+    public void cancelAll() {
+        // cancelled() callbacks may schedule again; those land in a fresh index.
+        List<Map<Long, DelayedAction>> worlds = new ArrayList<>(chunks.values());
+        chunks.clear();
+        for (Map<Long, DelayedAction> worldChunks : worlds) {
+            for (DelayedAction head : worldChunks.values()) {
+                cancelList(head);
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick and runs the actions that are due.
+     */
+    @Override
+    public void run() {
+        currentTick++;
+        cascade();
+        int slot = (int) (currentTick & (LEVEL0_SLOTS - 1));
+        int fired = 0;
+        long now = System.nanoTime();
+        // Pop one at a time: an action may cancel others in the same slot. New actions never land in this slot.
+        DelayedAction action;
+        while ((action = heads[slot]) != null) {
+            detach(action);
+            unindex(action);
+            long lateness = Math.max(0L, now - action.dueNanos);
+            smoothedLatenessNanos += (lateness - smoothedLatenessNanos) * LATENESS_SMOOTHING;
+            maxLatenessNanos = Math.max(maxLatenessNanos, lateness);
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Delayed action " + action.getClass().getSimpleName() + " failed", e);
+            }
+            fired++;
+        }
+        firedLastTick = fired;
+        totalFired += fired;
+    }
+
+    /* ------------------- Wheel ------------------- */
+
+    private void cascade() {
+        int shift = LEVEL0_BITS;
+        for (int level = 1; level < LEVELS; level++) {
+            // Only cascade when every level below has just wrapped around.
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            int slot = bucketOf(level, currentTick >>> shift);
+            DelayedAction action = heads[slot];
+            heads[slot] = null;
+            while (action != null) {
+                DelayedAction next = action.next;
+                action.prev = null;
+                action.next = null;
+                insert(action);
+                action = next;
+            }
+            shift += LEVEL_BITS;
+        }
+    }
+
+    private void insert(DelayedAction action) {
+        long delta = action.dueTick - currentTick;
+        int slot;
+        if (delta < LEVEL0_SLOTS) {
+            slot = (int) (action.dueTick & (LEVEL0_SLOTS - 1));
+        } else {
+            int level = 1;
+            int shift = LEVEL0_BITS;
+            while (level < LEVELS - 1 && delta >= 1L << (shift + LEVEL_BITS)) {
+                level++;
+                shift += LEVEL_BITS;
+            }
+            slot = bucketOf(level, action.dueTick >>> shift);
+        }
+        DelayedAction head = heads[slot];
+        action.next = head;
+        if (head != null) {
+            head.prev = action;
+        }
+        heads[slot] = action;
+        action.bucket = slot;
+    }
+
+    private static int bucketOf(int level, long blocks) {
+        return LEVEL0_SLOTS + (level - 1) * LEVEL_SLOTS + (int) (blocks & (LEVEL_SLOTS - 1));
+    }
+
+    private void detach(DelayedAction action) {
+        if (action.prev != null) {
+            action.prev.next = action.next;
+        } else {
+            heads[action.bucket] = action.next;
+        }
+        if (action.next != null) {
+            action.next.prev = action.prev;
+        }
+        action.prev = null;
+        action.next = null;
+        action.bucket = -1;
+        pending--;
+    }
+
+    private void cancelled(DelayedAction action) {
+        unindex(action);
+        totalCancelled++;
+        action.cancelled();
+    }
+
+    // Cancels a whole chunk list that has already been removed from the index.
+    private int cancelList(DelayedAction head) {
+        int cancelled = 0;
+        DelayedAction action = head;
+        while (action != null) {
+            DelayedAction next = action.chunkNext;
+            action.chunkPrev = null;
+            action.chunkNext = null;
+            detach(action);
+            totalCancelled++;
+            action.cancelled();
+            cancelled++;
+            action = next;
+        }
+        return cancelled;
+    }
+
+    /* ------------------- Chunk index ------------------- */
+
+    private void index(DelayedAction action) {
+        Map<Long, DelayedAction> worldChunks = chunks.computeIfAbsent(action.getWorld().getUID(), k -> new HashMap<>());
+        DelayedAction head = worldChunks.put(action.getChunkKey(), action);
+        action.chunkNext = head;
+        if (head != null) {
+            head.chunkPrev = action;
+        }
+    }
+
+    private void unindex(DelayedAction action) {
+        if (action.chunkNext != null) {
+            action.chunkNext.chunkPrev = action.chunkPrev;
+        }
+        if (action.chunkPrev != null) {
+            action.chunkPrev.chunkNext = action.chunkNext;
+        } else {
+            Map<Long, DelayedAction> worldChunks = chunks.get(action.getWorld().getUID());
+            if (worldChunks != null) {
+                if (action.chunkNext != null) {
+                    worldChunks.put(action.getChunkKey(), action.chunkNext);
+                } else {
+                    worldChunks.remove(action.getChunkKey());
+                }
+            }
+        }
+        action.chunkPrev = null;
+        action.chunkNext = null;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        cancelChunk(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        cancelWorld(event.getWorld());
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    public int getPending() {
+        return pending;
+    }
+
+    public int getFiredLastTick() {
+        return firedLastTick;
+    }
+
+    public long getTotalFired() {
+        return totalFired;
+    }
+
+    public long getTotalCancelled() {
+        return totalCancelled;
+    }
+
+    /** Smoothed wall-clock delay between when actions were due and when they ran (server lag), in ms. */
+    public double getAverageLatenessMillis() {
+        return smoothedLatenessNanos / 1_000_000.0;
+    }
+
+    /** Worst lateness seen since the last call, in ms. */
+    public double takeMaxLatenessMillis() {
+        double max = maxLatenessNanos / 1_000_000.0;
+        maxLatenessNanos = 0L;
+        return max;
+    }
+}
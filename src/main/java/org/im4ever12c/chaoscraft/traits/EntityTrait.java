@@ -0,0 +1,75 @@
+/*
+    @CLASS-TITLE: EntityTrait.java
+    @CLASS-DESCRIPTION: The hidden traits EntityEvents can roll onto a living entity when it spawns.
+    Each trait is rolled independently with its own chance and is stored as one bit of a packed long,
+    so an entity's whole trait set is a single primitive value. Chances and ranges are defaults that
+    config.yml can override (see ModifierSettings).
+ */
+
+package org.im4ever12c.chaoscraft.traits;
+
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.im4ever12c.chaoscraft.config.Range;
+
+public enum EntityTrait implements ModifierSpec {
+    BOMB_ON_DAMAGE(0.20, Range.of("power-multiplier", 1, 10)),  // turn into a timed bomb when first damaged
+    // The multiplier and the copy count are stored in a byte each (see EntityTraitIndex).
+    EXTRA_LOOT_MULTIPLIER(0.25, Range.of("multiplier", 1, 10, 1, 127)), // multiply drops by 1..10 on death
+    EXTRA_SPAWN_ON_DEATH(0.10, Range.of("spawns", 1, 25, 1, 127)),      // spawn 1..25 copies on death
+    FIRE_ON_DAMAGE(0.15),          // catch fire when first damaged
+    FREEZE_ON_DAMAGE(0.10),        // cancel the first hit and stop in place
+    CLONE_ON_DAMAGE(0.10),         // spawn one copy when first damaged
+    SPEED_BOOST_ON_DAMAGE(0.10),   // speed boost when first damaged
+    EXPLODE_ON_DEATH_DELAYED(0.05, Range.of("power-multiplier", 1, 10)), // explode 3 seconds after death
+    LIGHTNING_ON_DEATH(0.05),      // lightning strike on death
+    RANDOM_POTION_ON_DEATH(0.05);  // random potion for nearby entities on death
+
+    /** Traits that fire (once) from the damage handler. */
+    public static final long DAMAGE_TRAITS = maskOf(BOMB_ON_DAMAGE, FIRE_ON_DAMAGE, FREEZE_ON_DAMAGE,
+            CLONE_ON_DAMAGE, SPEED_BOOST_ON_DAMAGE);
+    /** Traits that spawn entities, explode or drop piles of items; throttled while the server falls behind. */
+    public static final long EXPENSIVE_TRAITS = maskOf(BOMB_ON_DAMAGE, EXTRA_LOOT_MULTIPLIER, EXTRA_SPAWN_ON_DEATH,
+            CLONE_ON_DAMAGE, EXPLODE_ON_DEATH_DELAYED);
+
+    private final double chance;
+    private final Range[] ranges;
+    private final long bit;
+
+    EntityTrait(double chance, Range... ranges) {
+        this.chance = chance;
+        this.ranges = ranges;
+        this.bit = 1L << ordinal();
+    }
+
+    /** The default chance. */
+    @Override
+    public double getRarity() {
+        return chance;
+    }
+
+    @Override
+    public Range[] getRanges() {
+        return ranges;
+    }
+
+    @Override
+    public boolean isExpensive() {
+        return isIn(EXPENSIVE_TRAITS);
+    }
+
+    public long bit() {
+        return bit;
+    }
+
+    public boolean isIn(long traits) {
+        return (traits & bit) != 0;
+    }
+
+    private static long maskOf(EntityTrait... traits) {
+        long mask = 0L;
+        for (EntityTrait trait : traits) {
+            mask |= trait.bit;
+        }
+        return mask;
+    }
+}
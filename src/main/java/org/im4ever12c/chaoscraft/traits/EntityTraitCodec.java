@@ -0,0 +1,106 @@
+/*
+    @CLASS-TITLE: EntityTraitCodec.java
+    @CLASS-DESCRIPTION: Stores an entity's whole trait set as one compact binary value under a single
+    NamespacedKey in its PersistentDataContainer, so traits survive chunk unloads and restarts and
+    disappear together with the entity.
+    Layout: [version byte][varint trait bitmask][varint loot multiplier]?[varint extra spawn count]?
+    The two parameters are only present when their trait bit is set.
+ */
+
+package org.im4ever12c.chaoscraft.traits;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+public final class EntityTraitCodec {
+
+    public static final byte VERSION = 1;
+
+    private final NamespacedKey key;
+
+    public EntityTraitCodec(Plugin plugin) {
+        this.key = new NamespacedKey(plugin, "traits");
+    }
+
+    /**
+     * Writes the trait set to the entity, or removes the key entirely when no traits are left.
+     */
+    public void write(Entity entity, long traits, int lootMultiplier, int extraSpawnCount) {
+        PersistentDataContainer container = entity.getPersistentDataContainer();
+        if (traits == 0L) {
+            container.remove(key);
+        } else {
+            container.set(key, PersistentDataType.BYTE_ARRAY, encode(traits, lootMultiplier, extraSpawnCount));
+        }
+    }
+
+    /**
+     * Reads the entity's stored traits into the index. Returns false if it has none (or an unknown version).
+     */
+    public boolean load(Entity entity, EntityTraitIndex index) {
+        byte[] data = entity.getPersistentDataContainer().get(key, PersistentDataType.BYTE_ARRAY);
+        if (data == null || data.length < 2 || data[0] != VERSION) {
+            return false;
+        }
+        int[] position = { 1 };
+        long traits = readVarLong(data, position);
+        int lootMultiplier = EntityTrait.EXTRA_LOOT_MULTIPLIER.isIn(traits) ? (int) readVarLong(data, position) : 0;
+        int extraSpawnCount = EntityTrait.EXTRA_SPAWN_ON_DEATH.isIn(traits) ? (int) readVarLong(data, position) : 0;
+        index.put(entity.getEntityId(), traits, lootMultiplier, extraSpawnCount);
+        return traits != 0L;
+    }
+
+    public static byte[] encode(long traits, int lootMultiplier, int extraSpawnCount) {
+        boolean hasLoot = EntityTrait.EXTRA_LOOT_MULTIPLIER.isIn(traits);
+        boolean hasSpawns = EntityTrait.EXTRA_SPAWN_ON_DEATH.isIn(traits);
+        byte[] data = new byte[1 + varLongSize(traits)
+                + (hasLoot ? varLongSize(lootMultiplier) : 0)
+                + (hasSpawns ? varLongSize(extraSpawnCount) : 0)];
+        data[0] = VERSION;
+        int position = writeVarLong(data, 1, traits);
+        if (hasLoot) {
+            position = writeVarLong(data, position, lootMultiplier);
+        }
+        if (hasSpawns) {
+            writeVarLong(data, position, extraSpawnCount);
+        }
+        return data;
+    }
+
+    /* ------------------- Unsigned LEB128 varints ------------------- */
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0L) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarLong(byte[] data, int position, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long value = 0L;
+        int shift = 0;
+        while (position[0] < data.length && shift < 64) {
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+    @CLASS-TITLE: EntityTraitIndex.java
+    @CLASS-DESCRIPTION: Plugin-owned index of the traits rolled onto living entities, keyed by entity id.
+    Each entry is a packed EntityTrait bitmask plus the per-entity parameters, kept in parallel
+    primitive arrays. A damage or death event finds everything it needs with one probe,
+    without boxing or string keys. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.traits;
+
+import org.im4ever12c.chaoscraft.util.IntKeyTable;
+
+public final class EntityTraitIndex extends IntKeyTable {
+
+    private long[] traits;
+    private byte[] lootMultipliers;
+    private byte[] extraSpawns;
+
+    public EntityTraitIndex() {
+        super(256);
+        init();
+    }
+
+    /**
+     * Stores (or replaces) the traits of an entity. A zero trait set removes the entity instead.
+     */
+    public void put(int entityId, long entityTraits, int lootMultiplier, int extraSpawnCount) {
+        if (entityTraits == 0L) {
+            remove(entityId);
+            return;
+        }
+        int slot = insert(entityId);
+        traits[slot] = entityTraits;
+        lootMultipliers[slot] = (byte) lootMultiplier;
+        extraSpawns[slot] = (byte) extraSpawnCount;
+    }
+
+    public long traitsAt(int slot) {
+        return traits[slot];
+    }
+
+    public int lootMultiplierAt(int slot) {
+        return lootMultipliers[slot];
+    }
+
+    public int extraSpawnsAt(int slot) {
+        return extraSpawns[slot];
+    }
+
+    /**
+     * Clears the given trait bits at a slot, dropping the entry once no traits are left.
+     */
+    public void clearAt(int slot, long bits) {
+        long remaining = traits[slot] & ~bits;
+        if (remaining == 0L) {
+            removeAt(slot);
+        } else {
+            traits[slot] = remaining;
+        }
+    }
+
+    @Override
+    protected void allocateValues(int capacity) {
+        traits = new long[capacity];
+        lootMultipliers = new byte[capacity];
+        extraSpawns = new byte[capacity];
+    }
+
+    @Override
+    protected void moveValues(int from, int to) {
+        traits[to] = traits[from];
+        lootMultipliers[to] = lootMultipliers[from];
+        extraSpawns[to] = extraSpawns[from];
+    }
+
+    @Override
+    protected void clearValues(int slot) {
+        traits[slot] = 0L;
+        lootMultipliers[slot] = 0;
+        extraSpawns[slot] = 0;
+    }
+
+    @Override
+    protected void relocateValues(int[] targetSlots, int newCapacity) {
+        long[] oldTraits = traits;
+        byte[] oldLoot = lootMultipliers;
+        byte[] oldSpawns = extraSpawns;
+        allocateValues(newCapacity);
+        for (int i = 0; i < targetSlots.length; i++) {
+            int slot = targetSlots[i];
+            if (slot >= 0) {
+                traits[slot] = oldTraits[i];
+                lootMultipliers[slot] = oldLoot[i];
+                extraSpawns[slot] = oldSpawns[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+    @CLASS-TITLE: ProjectileStateTable.java
+    @CLASS-DESCRIPTION: Compact per-projectile record of the modifiers ProjectileFireEvents attached at launch,
+    keyed by entity id: a modifier bitmask (one bit per modifier ordinal) plus the float parameters
+    the hit and damage handlers need. One probe answers every modifier check for a projectile.
+    Entries are dropped when the projectile is removed. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.traits;
+
+import org.im4ever12c.chaoscraft.util.IntKeyTable;
+
+public final class ProjectileStateTable extends IntKeyTable {
+
+    private long[] modifiers;
+    private float[] knockbackFactors;
+    private float[] damageFactors;
+    private float[] explosionSizes;
+
+    public ProjectileStateTable() {
+        super(64);
+        init();
+    }
+
+    public void put(int entityId, long modifierBits, float knockbackFactor, float damageFactor, float explosionSize) {
+        if (modifierBits == 0L) {
+            remove(entityId);
+            return;
+        }
+        int slot = insert(entityId);
+        modifiers[slot] = modifierBits;
+        knockbackFactors[slot] = knockbackFactor;
+        damageFactors[slot] = damageFactor;
+        explosionSizes[slot] = explosionSize;
+    }
+
+    public long modifiersAt(int slot) {
+        return modifiers[slot];
+    }
+
+    public float knockbackFactorAt(int slot) {
+        return knockbackFactors[slot];
+    }
+
+    public float damageFactorAt(int slot) {
+        return damageFactors[slot];
+    }
+
+    public float explosionSizeAt(int slot) {
+        return explosionSizes[slot];
+    }
+
+    @Override
+    protected void allocateValues(int capacity) {
+        modifiers = new long[capacity];
+        knockbackFactors = new float[capacity];
+        damageFactors = new float[capacity];
+        explosionSizes = new float[capacity];
+    }
+
+    @Override
+    protected void moveValues(int from, int to) {
+        modifiers[to] = modifiers[from];
+        knockbackFactors[to] = knockbackFactors[from];
+        damageFactors[to] = damageFactors[from];
+        explosionSizes[to] = explosionSizes[from];
+    }
+
+    @Override
+    protected void clearValues(int slot) {
+        modifiers[slot] = 0L;
+        knockbackFactors[slot] = 0F;
+        damageFactors[slot] = 0F;
+        explosionSizes[slot] = 0F;
+    }
+
+    @Override
+    protected void relocateValues(int[] targetSlots, int newCapacity) {
+        long[] oldModifiers = modifiers;
+        float[] oldKnockback = knockbackFactors;
+        float[] oldDamage = damageFactors;
+        float[] oldExplosion = explosionSizes;
+        allocateValues(newCapacity);
+        for (int i = 0; i < targetSlots.length; i++) {
+            int slot = targetSlots[i];
+            if (slot >= 0) {
+                modifiers[slot] = oldModifiers[i];
+                knockbackFactors[slot] = oldKnockback[i];
+                damageFactors[slot] = oldDamage[i];
+                explosionSizes[slot] = oldExplosion[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+    @CLASS-TITLE: ChaosRandom.java
+    @CLASS-DESCRIPTION: The random source every chaos roll draws from. It wraps a SplittableRandom,
+    so it never contends on a shared atomic seed, and it can be split into independent child streams.
+    Instances are NOT thread-safe: each one is owned by a single listener (on the main thread)
+    or a single worker thread. Hand out new streams through RandomService instead of sharing one.
+ */
+
+package org.im4ever12c.chaoscraft.util;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+public final class ChaosRandom {
+
+    private final SplittableRandom random;
+
+    public ChaosRandom(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private ChaosRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Returns an independent stream whose sequence is fully determined by this stream's state.
+     */
+    public ChaosRandom split() {
+        return new ChaosRandom(random.split());
+    }
+
+    public int nextInt() {
+        return random.nextInt();
+    }
+
+    /**
+     * Uniform int in [0, bound).
+     */
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    /**
+     * Uniform double in [0.0, 1.0).
+     */
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Uniform float in [0.0, 1.0), built from the top 24 bits like java.util.Random does.
+     */
+    public float nextFloat() {
+        return (random.nextInt() >>> 8) * 0x1.0p-24f;
+    }
+
+    public boolean nextBoolean() {
+        return random.nextBoolean();
+    }
+
+    /**
+     * Fisher-Yates shuffle in place, drawing from this stream.
+     */
+    public <T> void shuffle(List<T> list) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            list.set(i, list.set(j, list.get(i)));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+    @CLASS-TITLE: LongKeyTable.java
+    @CLASS-DESCRIPTION: Long-keyed twin of IntKeyTable, for packed keys such as ChunkKeys or grid cells.
+    Base for open-addressing (linear probing) hash tables keyed by a primitive long. This class owns the
+    keys and the probing; subclasses keep their values in parallel primitive arrays indexed by the same slot,
+    so lookups never box and never allocate. Deletion uses backward shifting, so there are no tombstones. Not thread-safe.
+    Slot numbers are only valid until the next insert or remove.
+ */
+
+package org.im4ever12c.chaoscraft.util;
+
+import java.util.Arrays;
+
+public abstract class LongKeyTable {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final int initialCapacity;
+    private long[] keys;
+    private int mask;
+    private int size;
+
+    /**
+     * @param initialCapacity must be a power of two
+     */
+    protected LongKeyTable(int initialCapacity) {
+        if (Integer.bitCount(initialCapacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + initialCapacity);
+        }
+        this.initialCapacity = initialCapacity;
+    }
+
+    /**
+     * Must be called once from the subclass constructor, after its own fields are initialized.
+     */
+    protected final void init() {
+        keys = newKeys(initialCapacity);
+        mask = initialCapacity - 1;
+        allocateValues(initialCapacity);
+    }
+
+    /**
+     * Returns the slot holding the key, or -1 if it is absent.
+     */
+    public final int find(long key) {
+        int slot = home(key);
+        long k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public final boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns the key's slot, inserting it (with cleared values) if it was absent.
+     */
+    protected final int insert(long key) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = home(key);
+        long k;
+        while ((k = keys[slot]) != FREE) {
+            if (k == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    public final boolean remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+
+    public final void removeAt(int slot) {
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            long key = keys[i];
+            if (key == FREE) {
+                break;
+            }
+            // Move the entry back into the gap unless its home slot lies between the gap and itself.
+            if (((i - home(key)) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = key;
+                moveValues(i, gap);
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+        clearValues(gap);
+        size--;
+    }
+
+    public final long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public final int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * True if the slot holds a key; used to walk every entry with {@code for (slot < capacity())}.
+     */
+    public final boolean isOccupied(int slot) {
+        return keys[slot] != FREE;
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    public final void clear() {
+        keys = newKeys(initialCapacity);
+        mask = initialCapacity - 1;
+        size = 0;
+        allocateValues(initialCapacity);
+    }
+
+    /** Replace the value arrays with fresh, cleared arrays of the given capacity. */
+    protected abstract void allocateValues(int capacity);
+
+    /** Copy the values at slot {@code from} to slot {@code to} (same arrays). */
+    protected abstract void moveValues(int from, int to);
+
+    /** Reset the values at a slot that just became free. */
+    protected abstract void clearValues(int slot);
+
+    /**
+     * Called while growing: allocate value arrays of {@code newCapacity} and copy every old slot {@code i}
+     * with {@code targetSlots[i] >= 0} to slot {@code targetSlots[i]} of the new arrays.
+     */
+    protected abstract void relocateValues(int[] targetSlots, int newCapacity);
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] targetSlots = new int[oldKeys.length];
+        keys = newKeys(oldKeys.length * 2);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == FREE) {
+                targetSlots[i] = -1;
+                continue;
+            }
+            int slot = home(key);
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            targetSlots[i] = slot;
+        }
+        relocateValues(targetSlots, keys.length);
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        return keys;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+    @CLASS-TITLE: RandomService.java
+    @CLASS-DESCRIPTION: Central provider of ChaosRandom streams. A single root seed (from config.yml,
+    or freshly generated and logged at startup) determines every stream, so the same seed replays
+    the same rolls. Listeners get a named stream each; code running off the main thread
+    (worker pools, region threads) uses the calling thread's own stream.
+ */
+
+package org.im4ever12c.chaoscraft.util;
+
+import java.util.SplittableRandom;
+
+public final class RandomService {
+
+    private final long seed;
+    private final ThreadLocal<ChaosRandom> threadStreams;
+
+    public RandomService(long seed) {
+        this.seed = seed;
+        this.threadStreams = ThreadLocal.withInitial(() -> stream("thread:" + Thread.currentThread().getName()));
+    }
+
+    /**
+     * Creates a service with a fresh, unpredictable root seed. Log {@link #getSeed()} to be able to replay it.
+     */
+    public static RandomService unseeded() {
+        return new RandomService(new SplittableRandom().nextLong());
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns a new stream for the named owner (e.g. a listener). The stream only depends on
+     * the root seed and the name, so registration order does not change anyone's rolls.
+     * The returned stream must stay confined to one thread.
+     */
+    public ChaosRandom stream(String name) {
+        return new ChaosRandom(mix(seed ^ mix(name.hashCode())));
+    }
+
+    /**
+     * Returns the stream owned by the calling thread.
+     */
+    public ChaosRandom forCurrentThread() {
+        return threadStreams.get();
+    }
+
+    // MurmurHash3 finalizer: spreads nearby inputs (similar names, small seeds) across all 64 bits.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    @CLASS-TITLE: WeightedSampler.java
+    @CLASS-DESCRIPTION: Weighted random selection over a fixed set of values using Vose's alias method.
+    The alias table is built once (O(n)) and every draw afterwards is O(1) with no allocation,
+    which keeps modifier selection cheap on hot events such as block breaks, spawns and explosions.
+ */
+
+package org.im4ever12c.chaoscraft.util;
+
+import java.util.function.ToDoubleFunction;
+
+public final class WeightedSampler<T> {
+
+    private final T[] values;
+    private final double[] probability;
+    private final int[] alias;
+
+    private WeightedSampler(T[] values, double[] probability, int[] alias) {
+        this.values = values;
+        this.probability = probability;
+        this.alias = alias;
+    }
+
+    /**
+     * Builds a sampler over the given values, reading each value's weight with the given function.
+     * Weights do not need to sum to 1.0; they are normalized here.
+     */
+    public static <T> WeightedSampler<T> of(T[] values, ToDoubleFunction<? super T> weight) {
+        double[] weights = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            weights[i] = weight.applyAsDouble(values[i]);
+        }
+        return of(values, weights);
+    }
+
+    /**
+     * Builds a sampler where values[i] is chosen with probability weights[i] / sum(weights).
+     */
+    public static <T> WeightedSampler<T> of(T[] values, double[] weights) {
+        int n = values.length;
+        if (n == 0 || weights.length != n) {
+            throw new IllegalArgumentException("Expected one weight per value, got " + weights.length + " for " + n);
+        }
+        double total = 0.0;
+        for (double w : weights) {
+            if (!(w >= 0.0) || Double.isInfinite(w)) {
+                throw new IllegalArgumentException("Weights must be finite and non-negative: " + w);
+            }
+            total += w;
+        }
+        if (total <= 0.0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+
+        // Scale every weight so the average bucket holds exactly 1.0.
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+        }
+
+        // Vose's alias method: pair each under-full bucket with an over-full one.
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1.0) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+
+        double[] probability = new double[n];
+        int[] alias = new int[n];
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+        // Whatever is left is full (up to rounding error).
+        while (largeSize > 0) {
+            int i = large[--largeSize];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (smallSize > 0) {
+            int i = small[--smallSize];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+
+        return new WeightedSampler<>(values.clone(), probability, alias);
+    }
+
+    /**
+     * Draws one value. A single uniform double picks both the bucket and the coin flip inside it.
+     */
+    public T next(ChaosRandom random) {
+        double roll = random.nextDouble() * values.length;
+        int bucket = Math.min((int) roll, values.length - 1);
+        return (roll - bucket) < probability[bucket] ? values[bucket] : values[alias[bucket]];
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+    @CLASS-TITLE: AsyncChunks.java
+    @CLASS-DESCRIPTION: Loads (or generates) a chunk off the main thread where the server supports it. Paper's
+    World.getChunkAtAsync is looked up reflectively so the plugin still runs on plain Spigot, where the chunk is
+    loaded synchronously instead. Either way the callback runs on the main thread.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+public final class AsyncChunks {
+
+    // Paper's World.getChunkAtAsync(int, int); null on plain Spigot.
+    private static final Method CHUNK_AT_ASYNC = findChunkAtAsync();
+
+    private AsyncChunks() {
+    }
+
+    /** True if chunks are loaded off the main thread on this server. */
+    public static boolean isSupported() {
+        return CHUNK_AT_ASYNC != null;
+    }
+
+    /**
+     * Loads the chunk and passes it to the callback on the main thread, or passes null if loading failed.
+     * Already loaded chunks, and every chunk on servers without async loading, are handed over immediately.
+     */
+    public static void load(Plugin plugin, World world, int chunkX, int chunkZ, Consumer<Chunk> callback) {
+        if (CHUNK_AT_ASYNC != null && !world.isChunkLoaded(chunkX, chunkZ)) {
+            try {
+                CompletableFuture<?> future = (CompletableFuture<?>) CHUNK_AT_ASYNC.invoke(world, chunkX, chunkZ);
+                future.whenComplete((chunk, error) -> plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (error != null) {
+                        plugin.getLogger().log(Level.WARNING,
+                                "Could not load chunk " + chunkX + "," + chunkZ + " in " + world.getName(), error);
+                        callback.accept(null);
+                    } else {
+                        callback.accept((Chunk) chunk);
+                    }
+                }));
+                return;
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                // Fall through to a synchronous load.
+            }
+        }
+        callback.accept(world.getChunkAt(chunkX, chunkZ));
+    }
+
+    private static Method findChunkAtAsync() {
+        try {
+            return World.class.getMethod("getChunkAtAsync", int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
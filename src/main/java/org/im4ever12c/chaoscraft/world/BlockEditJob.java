@@ -0,0 +1,207 @@
+/*
+    @CLASS-TITLE: BlockEditJob.java
+    @CLASS-DESCRIPTION: A batch of block writes produced by one effect (e.g. one explosion), waiting in the
+    BlockEditQueue. Positions are packed x/y/z triplets sorted outward from the effect's center, so a job
+    that is drained over several ticks grows from the middle instead of appearing in random patches.
+    Built with BlockEditJob.builder(...).
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+
+import java.util.Arrays;
+
+public final class BlockEditJob {
+
+    private final World world;
+    private final boolean onlyReplaceAir;
+    private final int[] positions;
+    private final Material[] materials;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+    private int cursor;
+    private int remaining;
+    // The modifier credited with the edits, or null.
+    private ModifierCounters counters;
+
+    private BlockEditJob(World world, boolean onlyReplaceAir, int[] positions, Material[] materials) {
+        this.world = world;
+        this.onlyReplaceAir = onlyReplaceAir;
+        this.positions = positions;
+        this.materials = materials;
+        this.remaining = materials.length;
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < positions.length; i += 3) {
+            minX = Math.min(minX, positions[i] >> 4);
+            maxX = Math.max(maxX, positions[i] >> 4);
+            minZ = Math.min(minZ, positions[i + 2] >> 4);
+            maxZ = Math.max(maxZ, positions[i + 2] >> 4);
+        }
+        this.minChunkX = minX;
+        this.minChunkZ = minZ;
+        this.maxChunkX = maxX;
+        this.maxChunkZ = maxZ;
+    }
+
+    /**
+     * @param centerX block coordinates the edits are ordered outward from
+     */
+    public static Builder builder(World world, int centerX, int centerY, int centerZ) {
+        return new Builder(world, centerX, centerY, centerZ);
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    /** Edits not yet applied or cancelled. */
+    public int remaining() {
+        return remaining;
+    }
+
+    public boolean isDone() {
+        return remaining == 0;
+    }
+
+    void creditTo(ModifierCounters counters) {
+        this.counters = counters;
+    }
+
+    /** The modifier credited with the edits, or null. */
+    ModifierCounters getCounters() {
+        return counters;
+    }
+
+    boolean touchesChunk(int chunkX, int chunkZ) {
+        return chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ;
+    }
+
+    /** Drops the cached heightmaps of every chunk this job writes to. */
+    void invalidateSurfaces(SurfaceLocator surfaces) {
+        surfaces.invalidateChunks(world, minChunkX, minChunkZ, maxChunkX, maxChunkZ);
+    }
+
+    /**
+     * Drops every pending edit inside the chunk. Returns how many were dropped.
+     */
+    int cancelChunk(int chunkX, int chunkZ) {
+        int cancelled = 0;
+        for (int i = cursor; i < materials.length; i++) {
+            if (materials[i] != null && positions[i * 3] >> 4 == chunkX && positions[i * 3 + 2] >> 4 == chunkZ) {
+                materials[i] = null;
+                cancelled++;
+            }
+        }
+        remaining -= cancelled;
+        return cancelled;
+    }
+
+    int cancelAll() {
+        int cancelled = remaining;
+        Arrays.fill(materials, cursor, materials.length, null);
+        cursor = materials.length;
+        remaining = 0;
+        return cancelled;
+    }
+
+    /**
+     * Applies the next pending edit. Returns false if it was skipped (unloaded chunk, or a non-air
+     * block when the job only fills air).
+     */
+    boolean applyNext() {
+        Material material;
+        do {
+            material = materials[cursor++];
+        } while (material == null);
+        materials[cursor - 1] = null;
+        remaining--;
+        int base = (cursor - 1) * 3;
+        int x = positions[base];
+        int y = positions[base + 1];
+        int z = positions[base + 2];
+        if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+            return false;
+        }
+        Block block = world.getBlockAt(x, y, z);
+        if (onlyReplaceAir && block.getType() != Material.AIR) {
+            return false;
+        }
+        block.setType(material);
+        if (counters != null) {
+            counters.addBlocks(1);
+        }
+        return true;
+    }
+
+    public static final class Builder {
+        private final World world;
+        private final int centerX;
+        private final int centerY;
+        private final int centerZ;
+        private boolean onlyReplaceAir;
+        private int[] positions = new int[3 * 32];
+        private Material[] materials = new Material[32];
+        private int size;
+
+        private Builder(World world, int centerX, int centerY, int centerZ) {
+            this.world = world;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.centerZ = centerZ;
+        }
+
+        /** Only write into blocks that are still air when the edit is applied (e.g. placing fire). */
+        public Builder onlyReplaceAir() {
+            this.onlyReplaceAir = true;
+            return this;
+        }
+
+        public Builder add(int x, int y, int z, Material material) {
+            if (material == null) {
+                throw new IllegalArgumentException("Block edit material must not be null");
+            }
+            if (size == materials.length) {
+                materials = Arrays.copyOf(materials, size * 2);
+                positions = Arrays.copyOf(positions, size * 6);
+            }
+            positions[size * 3] = x;
+            positions[size * 3 + 1] = y;
+            positions[size * 3 + 2] = z;
+            materials[size] = material;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public BlockEditJob build() {
+            // Sort by squared distance from the center: high 32 bits distance, low 32 bits original index.
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                long dx = positions[i * 3] - centerX;
+                long dy = positions[i * 3 + 1] - centerY;
+                long dz = positions[i * 3 + 2] - centerZ;
+                order[i] = ((dx * dx + dy * dy + dz * dz) << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] sortedPositions = new int[size * 3];
+            Material[] sortedMaterials = new Material[size];
+            for (int i = 0; i < size; i++) {
+                int from = (int) order[i];
+                sortedPositions[i * 3] = positions[from * 3];
+                sortedPositions[i * 3 + 1] = positions[from * 3 + 1];
+                sortedPositions[i * 3 + 2] = positions[from * 3 + 2];
+                sortedMaterials[i] = materials[from];
+            }
+            return new BlockEditJob(world, onlyReplaceAir, sortedPositions, sortedMaterials);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+    @CLASS-TITLE: BlockEditQueue.java
+    @CLASS-DESCRIPTION: Spreads large batches of block writes (explosion effects) across ticks.
+    Runs once per tick and applies queued BlockEditJobs, oldest first, until the per-tick time budget
+    is spent, so a huge blast becomes a few milliseconds of work per tick instead of one long spike.
+    Pending edits in a chunk are dropped when that chunk (or its world) unloads, so the queue never
+    loads chunks back in. Finished jobs drop the cached SurfaceLocator heightmaps of the chunks they
+    wrote to. Applied edits are credited to the modifier that submitted the job. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+public final class BlockEditQueue implements Listener, Runnable {
+
+    // Weight of the newest tick in the smoothed drain rate.
+    private static final double DRAIN_RATE_SMOOTHING = 0.1;
+
+    private final ArrayDeque<BlockEditJob> jobs = new ArrayDeque<>();
+    private final SurfaceLocator surfaces;
+    private long budgetNanos;
+    private int pendingEdits;
+    private int appliedLastTick;
+    private double smoothedAppliedPerTick;
+    private long totalApplied;
+    private long totalSkipped;
+    private long totalCancelled;
+
+    public BlockEditQueue(long budgetMicros, SurfaceLocator surfaces) {
+        this.surfaces = surfaces;
+        setBudgetMicros(budgetMicros);
+    }
+
+    public void setBudgetMicros(long budgetMicros) {
+        if (budgetMicros <= 0) {
+            throw new IllegalArgumentException("Block edit budget must be positive: " + budgetMicros);
+        }
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+    }
+
+    /** Queues a job, credited to the modifier currently being applied (if any). */
+    public void submit(BlockEditJob job) {
+        submit(job, ModifierCounters.current());
+    }
+
+    /**
+     * @param counters the modifier credited with the edits, or null
+     */
+    public void submit(BlockEditJob job, ModifierCounters counters) {
+        if (job.isDone()) {
+            return;
+        }
+        job.creditTo(counters);
+        ModifierCounters.touchBlocks(job.remaining());
+        jobs.addLast(job);
+        pendingEdits += job.remaining();
+    }
+
+    /**
+     * Drains the queue for one tick. At least one edit is applied per tick, so the queue always makes
+     * progress even with a tiny budget.
+     */
+    @Override
+    public void run() {
+        int applied = 0;
+        if (!jobs.isEmpty()) {
+            long deadline = System.nanoTime() + budgetNanos;
+            do {
+                BlockEditJob job = jobs.peekFirst();
+                if (job.isDone()) {
+                    jobs.pollFirst();
+                    job.invalidateSurfaces(surfaces);
+                    continue;
+                }
+                applied += apply(job, deadline);
+            } while (!jobs.isEmpty() && System.nanoTime() < deadline);
+        }
+        ModifierCounters.touchBlocks(applied);
+        appliedLastTick = applied;
+        smoothedAppliedPerTick += (applied - smoothedAppliedPerTick) * DRAIN_RATE_SMOOTHING;
+    }
+
+    /**
+     * Applies edits of one job until it is done or the deadline passes (at least one). The time is follow-up
+     * work of the modifier that submitted the job, so a slow tick of the queue names that modifier.
+     */
+    private int apply(BlockEditJob job, long deadline) {
+        ModifierCounters counters = job.getCounters();
+        long start = counters == null ? 0L : counters.begin();
+        int applied = 0;
+        try {
+            do {
+                if (job.applyNext()) {
+                    totalApplied++;
+                } else {
+                    totalSkipped++;
+                }
+                pendingEdits--;
+                applied++;
+            } while (!job.isDone() && System.nanoTime() < deadline);
+        } finally {
+            if (counters != null) {
+                counters.endFollowUp(start);
+            }
+        }
+        return applied;
+    }
+
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        World world = event.getWorld();
+        int chunkX = event.getChunk().getX();
+        int chunkZ = event.getChunk().getZ();
+        for (BlockEditJob job : jobs) {
+            if (job.getWorld().equals(world) && job.touchesChunk(chunkX, chunkZ)) {
+                cancelled(job.cancelChunk(chunkX, chunkZ));
+            }
+        }
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        Iterator<BlockEditJob> iterator = jobs.iterator();
+        while (iterator.hasNext()) {
+            BlockEditJob job = iterator.next();
+            if (job.getWorld().equals(event.getWorld())) {
+                cancelled(job.cancelAll());
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Drops everything still queued, e.g. when the plugin is disabled. */
+    public void cancelAll() {
+        for (BlockEditJob job : jobs) {
+            cancelled(job.cancelAll());
+        }
+        jobs.clear();
+    }
+
+    private void cancelled(int edits) {
+        pendingEdits -= edits;
+        totalCancelled += edits;
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Edits waiting to be applied (queue depth). */
+    public int getPendingEdits() {
+        return pendingEdits;
+    }
+
+    public int getPendingJobs() {
+        return jobs.size();
+    }
+
+    public int getAppliedLastTick() {
+        return appliedLastTick;
+    }
+
+    /** Smoothed drain rate in edits per second, assuming 20 ticks per second. */
+    public double getDrainRatePerSecond() {
+        return smoothedAppliedPerTick * 20.0;
+    }
+
+    public long getTotalApplied() {
+        return totalApplied;
+    }
+
+    /** Edits dropped at apply time because the chunk was not loaded or the target was no longer air. */
+    public long getTotalSkipped() {
+        return totalSkipped;
+    }
+
+    /** Edits dropped because their chunk or world unloaded, or the queue was cancelled. */
+    public long getTotalCancelled() {
+        return totalCancelled;
+    }
+}
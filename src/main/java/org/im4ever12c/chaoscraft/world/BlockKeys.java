@@ -0,0 +1,29 @@
+/*
+    @CLASS-TITLE: BlockKeys.java
+    @CLASS-DESCRIPTION: Packs a block position into one long (26 bits x, 26 bits z, 12 bits y, the same
+    layout Minecraft uses), so sets of block positions can be stored, sorted and de-duplicated as a long[].
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+public final class BlockKeys {
+
+    private BlockKeys() {
+    }
+
+    public static long key(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int x(long key) {
+        return (int) (key >> 38);
+    }
+
+    public static int y(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    public static int z(long key) {
+        return (int) (key << 26 >> 38);
+    }
+}
@@ -0,0 +1,17 @@
+/*
+    @CLASS-TITLE: BlockTypeReader.java
+    @CLASS-DESCRIPTION: Read-only view of block types that effect planning works against: either the live
+    world (main thread only) or ChunkSnapshots captured for a worker thread.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.Material;
+
+public interface BlockTypeReader {
+
+    /**
+     * Type of the block at the position, or null if it is outside the world's height or in a chunk that isn't available.
+     */
+    Material getType(int x, int y, int z);
+}
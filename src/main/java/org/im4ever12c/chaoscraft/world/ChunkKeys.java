@@ -0,0 +1,29 @@
+/*
+    @CLASS-TITLE: ChunkKeys.java
+    @CLASS-DESCRIPTION: Packs a chunk's x/z coordinates into one long, so chunk-keyed state can live in
+    primitive arrays and maps without allocating a key object per lookup.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+public final class ChunkKeys {
+
+    private ChunkKeys() {
+    }
+
+    public static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    public static long ofBlock(int blockX, int blockZ) {
+        return key(blockX >> 4, blockZ >> 4);
+    }
+
+    public static int x(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int z(long key) {
+        return (int) key;
+    }
+}
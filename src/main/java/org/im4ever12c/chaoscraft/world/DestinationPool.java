@@ -0,0 +1,246 @@
+/*
+    @CLASS-TITLE: DestinationPool.java
+    @CLASS-DESCRIPTION: Keeps a small pool of safe long-range teleport destinations per world, so a random
+    teleport takes one ready-made location instead of generating a far-away chunk mid-tick. The pools are
+    filled in the background: every few ticks, while the server keeps up, one random chunk within the spread
+    is loaded (asynchronously where supported, see AsyncChunks) and scanned from a snapshot for a safe
+    surface column. Where chunks can only be loaded synchronously, candidates are taken only from chunks that
+    were already generated, so filling never generates terrain mid-tick. Destinations are served oldest first
+    and dropped once they are older than the max age, or if their column changed by the time they are taken. A
+    world whose candidates keep failing (the nether's bedrock roof, an ocean of lava...) is retried less and
+    less often. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public final class DestinationPool implements Listener, Runnable {
+
+    // Columns of a candidate chunk tried before the chunk is given up on.
+    private static final int COLUMN_ATTEMPTS = 8;
+    // Random chunks tried for one that was already generated, without async chunk loading.
+    private static final int GENERATED_CHUNK_ATTEMPTS = 4;
+    // A tick that started this late after the previous one means the server is behind; do not add work.
+    private static final long BUSY_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(60);
+    // Failed candidates in a row after which a world's fill interval stops doubling.
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final Plugin plugin;
+    private final ChaosRandom random;
+    private final int poolSize;
+    private final double spread;
+    private final int fillIntervalTicks;
+    private final long maxAgeTicks;
+    private final Map<UUID, Pool> pools = new HashMap<>();
+    private long currentTick;
+    private long lastRunNanos;
+    private long taken;
+    private long misses;
+    private long evicted;
+    private long rejectedCandidates;
+    private long ungeneratedCandidates;
+
+    /**
+     * @param spread            destinations are at most this many blocks from 0,0 on each axis
+     * @param fillIntervalTicks ticks between two candidate chunks for the same world
+     * @param maxAgeTicks       destinations older than this are dropped; 0 keeps them until taken
+     */
+    public DestinationPool(Plugin plugin, ChaosRandom random, int poolSize, double spread,
+                           int fillIntervalTicks, long maxAgeTicks) {
+        if (poolSize <= 0 || fillIntervalTicks <= 0) {
+            throw new IllegalArgumentException("Pool size and fill interval must be positive: " + poolSize + ", " + fillIntervalTicks);
+        }
+        this.plugin = plugin;
+        this.random = random;
+        this.poolSize = poolSize;
+        this.spread = spread;
+        this.fillIntervalTicks = fillIntervalTicks;
+        this.maxAgeTicks = maxAgeTicks;
+    }
+
+    /**
+     * Takes a safe random destination in the world, or returns null if its pool is empty right now.
+     */
+    public Location take(World world) {
+        Pool pool = pools.get(world.getUID());
+        if (pool != null) {
+            Destination destination;
+            while ((destination = pool.destinations.pollFirst()) != null) {
+                if (isStillSafe(world, destination)) {
+                    taken++;
+                    return new Location(world, destination.x + 0.5, destination.y + 1, destination.z + 0.5);
+                }
+                evicted++;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    // Re-checks the column if its chunk happens to be loaded; otherwise nothing can have changed it since
+    // it was scanned, apart from chunk saves made by other plugins, which the max age bounds.
+    private static boolean isStillSafe(World world, Destination destination) {
+        if (!world.isChunkLoaded(destination.x >> 4, destination.z >> 4)) {
+            return true;
+        }
+        return SurfaceLocator.readColumn(world, destination.x, destination.z) == destination.y;
+    }
+
+    /**
+     * Expires old destinations and, if the server is keeping up, starts loading a candidate chunk for
+     * every world whose pool is due a refill.
+     */
+    @Override
+    public void run() {
+        currentTick++;
+        long now = System.nanoTime();
+        boolean busy = lastRunNanos != 0L && now - lastRunNanos > BUSY_TICK_NANOS;
+        lastRunNanos = now;
+        for (World world : plugin.getServer().getWorlds()) {
+            Pool pool = pools.get(world.getUID());
+            if (pool == null) {
+                pool = new Pool();
+                pools.put(world.getUID(), pool);
+            }
+            expire(pool);
+            if (!busy && !pool.loading && pool.destinations.size() < poolSize && currentTick >= pool.nextFillTick) {
+                fill(world, pool);
+            }
+        }
+    }
+
+    private void expire(Pool pool) {
+        if (maxAgeTicks <= 0) {
+            return;
+        }
+        Destination oldest;
+        while ((oldest = pool.destinations.peekFirst()) != null && currentTick - oldest.createdTick > maxAgeTicks) {
+            pool.destinations.pollFirst();
+            evicted++;
+        }
+    }
+
+    private void fill(World world, Pool pool) {
+        int chunkX = randomChunk();
+        int chunkZ = randomChunk();
+        if (!AsyncChunks.isSupported()) {
+            // A synchronous load must not generate the chunk as well.
+            int attempts = 1;
+            while (!world.isChunkGenerated(chunkX, chunkZ)) {
+                if (attempts++ == GENERATED_CHUNK_ATTEMPTS) {
+                    ungeneratedCandidates++;
+                    pool.nextFillTick = currentTick + fillIntervalTicks;
+                    return;
+                }
+                chunkX = randomChunk();
+                chunkZ = randomChunk();
+            }
+        }
+        pool.loading = true;
+        AsyncChunks.load(plugin, world, chunkX, chunkZ, chunk -> {
+            pool.loading = false;
+            // The world may have unloaded while the chunk was loading.
+            if (pools.get(world.getUID()) != pool) {
+                return;
+            }
+            Destination destination = chunk == null ? null : scan(chunk.getChunkSnapshot(true, false, false),
+                    world.getMinHeight());
+            if (destination == null) {
+                rejectedCandidates++;
+                pool.failures = Math.min(pool.failures + 1, MAX_BACKOFF_SHIFT);
+            } else {
+                pool.destinations.addLast(destination);
+                pool.failures = 0;
+            }
+            pool.nextFillTick = currentTick + ((long) fillIntervalTicks << pool.failures);
+        });
+    }
+
+    private int randomChunk() {
+        return (int) Math.floor((random.nextDouble() * spread * 2 - spread) / 16.0);
+    }
+
+    private Destination scan(ChunkSnapshot snapshot, int minY) {
+        for (int i = 0; i < COLUMN_ATTEMPTS; i++) {
+            int x = random.nextInt(16);
+            int z = random.nextInt(16);
+            int y = SurfaceLocator.surfaceY(snapshot, x, z, minY);
+            if (y != SurfaceLocator.UNSAFE) {
+                return new Destination(snapshot.getX() << 4 | x, y, snapshot.getZ() << 4 | z, currentTick);
+            }
+        }
+        return null;
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        pools.remove(event.getWorld().getUID());
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    public int getPooled(World world) {
+        Pool pool = pools.get(world.getUID());
+        return pool == null ? 0 : pool.destinations.size();
+    }
+
+    public long getTaken() {
+        return taken;
+    }
+
+    /** Teleports that found their world's pool empty. */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Destinations dropped for being too old or no longer safe. */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    /** Candidate chunks in which no safe column was found. */
+    public long getRejectedCandidates() {
+        return rejectedCandidates;
+    }
+
+    /** Fills skipped because no already generated candidate chunk was found (without async chunk loading). */
+    public long getUngeneratedCandidates() {
+        return ungeneratedCandidates;
+    }
+
+    private static final class Pool {
+        // Oldest first.
+        final ArrayDeque<Destination> destinations = new ArrayDeque<>();
+        boolean loading;
+        int failures;
+        long nextFillTick;
+    }
+
+    private static final class Destination {
+        final int x;
+        final int y;
+        final int z;
+        final long createdTick;
+
+        Destination(int x, int y, int z, long createdTick) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.createdTick = createdTick;
+        }
+    }
+}
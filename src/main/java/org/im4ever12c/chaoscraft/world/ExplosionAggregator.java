@@ -0,0 +1,89 @@
+/*
+    @CLASS-TITLE: ExplosionAggregator.java
+    @CLASS-DESCRIPTION: Collects the explosions of one tick into ExplosionClusters by proximity, so a TNT
+    chain that fires dozens of explode events gets one chaos effect instead of dozens of overlapping ones.
+    An explosion joins the first open cluster in the same world whose first explosion is within the merge
+    distance. Clusters are handed out once per tick by drain(...). Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public final class ExplosionAggregator<E> {
+
+    private final List<ExplosionCluster<E>> open = new ArrayList<>();
+    private final double mergeDistanceSquared;
+    private long clustersApplied;
+    private long explosionsMerged;
+
+    /**
+     * @param mergeDistance how far (in blocks) an explosion may be from a cluster's first explosion to join it
+     */
+    public ExplosionAggregator(double mergeDistance) {
+        if (mergeDistance < 0.0) {
+            throw new IllegalArgumentException("Merge distance must not be negative: " + mergeDistance);
+        }
+        this.mergeDistanceSquared = mergeDistance * mergeDistance;
+    }
+
+    /**
+     * Returns the open cluster this explosion belongs to and adds it as a member, or null if none is close enough.
+     */
+    public ExplosionCluster<E> join(World world, double x, double y, double z, double blastRadius) {
+        for (int i = 0; i < open.size(); i++) {
+            ExplosionCluster<E> cluster = open.get(i);
+            if (cluster.isNear(world, x, y, z, mergeDistanceSquared)) {
+                cluster.addMember(x, y, z, blastRadius);
+                explosionsMerged++;
+                return cluster;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens a new cluster for an explosion that did not join one, carrying the effect rolled for it.
+     */
+    public ExplosionCluster<E> open(World world, double x, double y, double z, double blastRadius, E effect) {
+        ExplosionCluster<E> cluster = new ExplosionCluster<>(world, effect, x, y, z);
+        cluster.addMember(x, y, z, blastRadius);
+        open.add(cluster);
+        return cluster;
+    }
+
+    /**
+     * Seals every open cluster and passes it to the consumer, leaving the aggregator empty for the next tick.
+     */
+    public void drain(Consumer<ExplosionCluster<E>> consumer) {
+        if (open.isEmpty()) {
+            return;
+        }
+        // Copy first: applying an effect can set off explosions that open new clusters for the next drain.
+        List<ExplosionCluster<E>> clusters = new ArrayList<>(open);
+        open.clear();
+        for (ExplosionCluster<E> cluster : clusters) {
+            cluster.seal();
+            clustersApplied++;
+            consumer.accept(cluster);
+        }
+    }
+
+    public int getOpenClusters() {
+        return open.size();
+    }
+
+    /** Clusters whose merged effect has been applied. */
+    public long getClustersApplied() {
+        return clustersApplied;
+    }
+
+    /** Explosions that joined an existing cluster instead of applying an effect of their own. */
+    public long getExplosionsMerged() {
+        return explosionsMerged;
+    }
+}
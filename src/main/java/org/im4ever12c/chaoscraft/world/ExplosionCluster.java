@@ -0,0 +1,185 @@
+/*
+    @CLASS-TITLE: ExplosionCluster.java
+    @CLASS-DESCRIPTION: Explosions from the same tick that landed close together (a TNT chain, several
+    creepers), merged so one chaos effect is applied to all of them. Holds the effect rolled for the
+    first explosion, every member's center and blast radius, and the union of the block positions
+    the members contributed. The merged blast is the union of the members' blasts: radius effects act on
+    blastBlocks() and on what covers() accepts, never on more than the members would have reached alone.
+    The bounding sphere around the centroid (getRadius()) only narrows lookups down.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+public final class ExplosionCluster<E> {
+
+    private final World world;
+    private final E effect;
+    private final double anchorX;
+    private final double anchorY;
+    private final double anchorZ;
+    // Per member: x, y, z, radius.
+    private double[] members = new double[4 * 4];
+    private int memberCount;
+    private long[] blocks = new long[0];
+    private int blockCount;
+    private boolean sealed;
+    private Location center;
+    private double radius;
+
+    ExplosionCluster(World world, E effect, double anchorX, double anchorY, double anchorZ) {
+        this.world = world;
+        this.effect = effect;
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.anchorZ = anchorZ;
+    }
+
+    boolean isNear(World otherWorld, double x, double y, double z, double maxDistanceSquared) {
+        double dx = x - anchorX;
+        double dy = y - anchorY;
+        double dz = z - anchorZ;
+        return world.equals(otherWorld) && dx * dx + dy * dy + dz * dz <= maxDistanceSquared;
+    }
+
+    void addMember(double x, double y, double z, double blastRadius) {
+        if (memberCount * 4 == members.length) {
+            members = Arrays.copyOf(members, members.length * 2);
+        }
+        int base = memberCount * 4;
+        members[base] = x;
+        members[base + 1] = y;
+        members[base + 2] = z;
+        members[base + 3] = blastRadius;
+        memberCount++;
+    }
+
+    /** Contributes one block position to the merged blast. Duplicates are removed when the cluster is sealed. */
+    public void addBlock(int x, int y, int z) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(64, blocks.length * 2));
+        }
+        blocks[blockCount++] = BlockKeys.key(x, y, z);
+    }
+
+    /** Computes the centroid and bounding radius and de-duplicates the block positions. */
+    void seal() {
+        if (sealed) {
+            return;
+        }
+        sealed = true;
+        double sumX = 0, sumY = 0, sumZ = 0;
+        for (int i = 0; i < memberCount; i++) {
+            sumX += members[i * 4];
+            sumY += members[i * 4 + 1];
+            sumZ += members[i * 4 + 2];
+        }
+        double cx = sumX / memberCount;
+        double cy = sumY / memberCount;
+        double cz = sumZ / memberCount;
+        double maxReach = 0.0;
+        for (int i = 0; i < memberCount; i++) {
+            double dx = members[i * 4] - cx;
+            double dy = members[i * 4 + 1] - cy;
+            double dz = members[i * 4 + 2] - cz;
+            maxReach = Math.max(maxReach, Math.sqrt(dx * dx + dy * dy + dz * dz) + members[i * 4 + 3]);
+        }
+        center = new Location(world, cx, cy, cz);
+        radius = maxReach;
+
+        blockCount = sortUnique(blocks, blockCount);
+    }
+
+    private static int sortUnique(long[] keys, int count) {
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[i] != keys[unique - 1]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        return unique;
+    }
+
+    /** True if the point lies within at least one member's blast. */
+    public boolean covers(double x, double y, double z) {
+        for (int i = 0; i < memberCount; i++) {
+            int base = i * 4;
+            double dx = x - members[base];
+            double dy = y - members[base + 1];
+            double dz = z - members[base + 2];
+            double reach = members[base + 3];
+            if (dx * dx + dy * dy + dz * dz <= reach * reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Blocks blastBlocks() looks at, counting overlaps between members once per member. */
+    public int getBlastCells() {
+        int cells = 0;
+        for (int i = 0; i < memberCount; i++) {
+            double reach = members[i * 4 + 3];
+            cells += SphereOffsets.end(SphereOffsets.sphere(reach), reach) / 3;
+        }
+        return cells;
+    }
+
+    /**
+     * Packed positions (see BlockKeys) of every block within at least one member's blast, each once. Builds a new
+     * array on every call, so planner threads may call it once the cluster is handed out.
+     */
+    public long[] blastBlocks() {
+        long[] keys = new long[getBlastCells()];
+        int count = 0;
+        for (int i = 0; i < memberCount; i++) {
+            int base = i * 4;
+            int x = (int) Math.floor(members[base]);
+            int y = (int) Math.floor(members[base + 1]);
+            int z = (int) Math.floor(members[base + 2]);
+            double reach = members[base + 3];
+            int[] offsets = SphereOffsets.sphere(reach);
+            int end = SphereOffsets.end(offsets, reach);
+            for (int j = 0; j < end; j += 3) {
+                keys[count++] = BlockKeys.key(x + offsets[j], y + offsets[j + 1], z + offsets[j + 2]);
+            }
+        }
+        return Arrays.copyOf(keys, sortUnique(keys, count));
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public E getEffect() {
+        return effect;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    /** Centroid of the member explosions. Only valid once the cluster is handed out for applying. */
+    public Location getCenter() {
+        return center.clone();
+    }
+
+    /** Radius of the smallest sphere around {@link #getCenter()} covering every member's blast. */
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /** Packed position (see BlockKeys) of the i-th unique block. */
+    public long getBlock(int index) {
+        return blocks[index];
+    }
+}
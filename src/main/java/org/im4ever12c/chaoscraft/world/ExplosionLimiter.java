@@ -0,0 +1,240 @@
+/*
+    @CLASS-TITLE: ExplosionLimiter.java
+    @CLASS-DESCRIPTION: Token-bucket limiter for explosions that ChaosCraft itself creates, kept per region
+    (a square of region-chunks x region-chunks chunks in one world). Each explosion costs its power in tokens;
+    buckets refill at a fixed rate up to a burst size. When a region is out of tokens an explosion is
+    downgraded to a small one that breaks no blocks, or dropped if even that is unaffordable, so chaos
+    explosions can't cascade into a runaway chain in one area. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.World;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public final class ExplosionLimiter {
+
+    public enum Decision { ALLOWED, DOWNGRADED, DROPPED }
+
+    // Buckets that have been full for this long are forgotten; a fresh bucket starts full anyway.
+    private static final long IDLE_EVICT_NANOS = 60_000_000_000L;
+
+    private final Map<UUID, Map<Long, Bucket>> buckets = new HashMap<>();
+    private final int regionShift;
+    private final double refillPerNano;
+    private final double burst;
+    private final float downgradedPower;
+    private long allowed;
+    private long downgraded;
+    private long dropped;
+    private long refused;
+    private long lastEvict = System.nanoTime();
+
+    /**
+     * @param regionChunks    region width in chunks, rounded up to a power of two
+     * @param refillPerSecond explosion power restored to a region per second
+     * @param burst           most explosion power a region can spend at once
+     * @param downgradedPower power of the block-safe explosion used instead of an unaffordable one
+     */
+    public ExplosionLimiter(int regionChunks, double refillPerSecond, double burst, float downgradedPower) {
+        if (regionChunks < 1 || refillPerSecond < 0.0 || burst <= 0.0 || downgradedPower < 0F) {
+            throw new IllegalArgumentException("Invalid explosion limiter settings");
+        }
+        this.regionShift = 32 - Integer.numberOfLeadingZeros(regionChunks - 1);
+        this.refillPerNano = refillPerSecond / 1_000_000_000.0;
+        this.burst = burst;
+        this.downgradedPower = downgradedPower;
+    }
+
+    /**
+     * Creates a chaos explosion if the region can afford it, a downgraded one if it can afford that,
+     * or nothing. Returns what was done.
+     */
+    public Decision createExplosion(World world, double x, double y, double z, float power, boolean setFire, boolean breakBlocks) {
+        Bucket bucket = bucket(world, (int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4);
+        long now = System.nanoTime();
+        if (bucket.tryTake(power, now, refillPerNano, burst)) {
+            allowed++;
+            bucket.allowed++;
+            ModifierCounters.countExplosion();
+            world.createExplosion(x, y, z, power, setFire, breakBlocks);
+            return Decision.ALLOWED;
+        }
+        if (downgradedPower > 0F && downgradedPower < power && bucket.tryTake(downgradedPower, now, refillPerNano, burst)) {
+            downgraded++;
+            bucket.downgraded++;
+            ModifierCounters.countExplosion();
+            world.createExplosion(x, y, z, downgradedPower, false, false);
+            return Decision.DOWNGRADED;
+        }
+        dropped++;
+        bucket.dropped++;
+        return Decision.DROPPED;
+    }
+
+    /**
+     * Spends {@code cost} tokens on some other chaos effect in the region; false (and nothing spent) if it can't.
+     */
+    public boolean tryAcquire(World world, int blockX, int blockZ, double cost) {
+        Bucket bucket = bucket(world, blockX >> 4, blockZ >> 4);
+        if (bucket.tryTake(cost, System.nanoTime(), refillPerNano, burst)) {
+            return true;
+        }
+        refused++;
+        bucket.refused++;
+        return false;
+    }
+
+    private Bucket bucket(World world, int chunkX, int chunkZ) {
+        long now = System.nanoTime();
+        if (now - lastEvict > IDLE_EVICT_NANOS) {
+            evictIdle(now);
+        }
+        Map<Long, Bucket> regions = buckets.computeIfAbsent(world.getUID(), k -> new HashMap<>());
+        long region = ChunkKeys.key(chunkX >> regionShift, chunkZ >> regionShift);
+        Bucket bucket = regions.get(region);
+        if (bucket == null) {
+            bucket = new Bucket(world.getName(), ChunkKeys.x(region), ChunkKeys.z(region), burst, now);
+            regions.put(region, bucket);
+        }
+        return bucket;
+    }
+
+    private void evictIdle(long now) {
+        lastEvict = now;
+        Iterator<Map<Long, Bucket>> worlds = buckets.values().iterator();
+        while (worlds.hasNext()) {
+            Map<Long, Bucket> regions = worlds.next();
+            regions.values().removeIf(bucket -> bucket.tokensAt(now, refillPerNano, burst) >= burst
+                    && now - bucket.lastTake > IDLE_EVICT_NANOS);
+            if (regions.isEmpty()) {
+                worlds.remove();
+            }
+        }
+    }
+
+    /* ------------------- Monitoring ------------------- */
+
+    public long getAllowed() {
+        return allowed;
+    }
+
+    public long getDowngraded() {
+        return downgraded;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Tokens a full region holds. */
+    public double getBurst() {
+        return burst;
+    }
+
+    /** Other chaos effects refused by {@link #tryAcquire}. */
+    public long getRefused() {
+        return refused;
+    }
+
+    public int getTrackedRegions() {
+        int regions = 0;
+        for (Map<Long, Bucket> worldRegions : buckets.values()) {
+            regions += worldRegions.size();
+        }
+        return regions;
+    }
+
+    /**
+     * Current state of every tracked region, most depleted first.
+     */
+    public List<RegionState> snapshot() {
+        long now = System.nanoTime();
+        List<RegionState> states = new ArrayList<>();
+        for (Map<Long, Bucket> regions : buckets.values()) {
+            for (Bucket bucket : regions.values()) {
+                states.add(new RegionState(bucket.worldName, bucket.regionX, bucket.regionZ,
+                        bucket.tokensAt(now, refillPerNano, burst), bucket.allowed, bucket.downgraded, bucket.dropped,
+                        bucket.refused));
+            }
+        }
+        states.sort((a, b) -> Double.compare(a.getTokens(), b.getTokens()));
+        return states;
+    }
+
+    public static final class RegionState {
+        private final String world;
+        private final int regionX;
+        private final int regionZ;
+        private final double tokens;
+        private final long allowed;
+        private final long downgraded;
+        private final long dropped;
+        private final long refused;
+
+        RegionState(String world, int regionX, int regionZ, double tokens, long allowed, long downgraded, long dropped,
+                    long refused) {
+            this.world = world;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.tokens = tokens;
+            this.allowed = allowed;
+            this.downgraded = downgraded;
+            this.dropped = dropped;
+            this.refused = refused;
+        }
+
+        public String getWorld() { return world; }
+        public int getRegionX() { return regionX; }
+        public int getRegionZ() { return regionZ; }
+        public double getTokens() { return tokens; }
+        public long getAllowed() { return allowed; }
+        public long getDowngraded() { return downgraded; }
+        public long getDropped() { return dropped; }
+        public long getRefused() { return refused; }
+    }
+
+    private static final class Bucket {
+        final String worldName;
+        final int regionX;
+        final int regionZ;
+        double tokens;
+        long lastRefill;
+        long lastTake;
+        long allowed;
+        long downgraded;
+        long dropped;
+        long refused;
+
+        Bucket(String worldName, int regionX, int regionZ, double tokens, long now) {
+            this.worldName = worldName;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.tokens = tokens;
+            this.lastRefill = now;
+            this.lastTake = now;
+        }
+
+        double tokensAt(long now, double refillPerNano, double burst) {
+            return Math.min(burst, tokens + (now - lastRefill) * refillPerNano);
+        }
+
+        boolean tryTake(double cost, long now, double refillPerNano, double burst) {
+            tokens = tokensAt(now, refillPerNano, burst);
+            lastRefill = now;
+            if (tokens < cost) {
+                return false;
+            }
+            tokens -= cost;
+            lastTake = now;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+    @CLASS-TITLE: ExplosionPlanner.java
+    @CLASS-DESCRIPTION: Works out the block edits of an explosion effect and hands them to the BlockEditQueue.
+    Small plans run inline against the live world. Large ones (more cells than the async threshold) capture
+    ChunkSnapshots of the affected chunks on the main thread and run on a small worker pool; the finished
+    BlockEditJob is passed back to the main thread. This keeps the O(r^3) scan, the block reads and the
+    outward sort off the tick thread. Plans run off-thread must only use the BlockTypeReader they are
+    given, plus anything they captured up front (such as a split ChaosRandom).
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.im4ever12c.chaoscraft.metrics.ModifierCounters;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+public final class ExplosionPlanner {
+
+    public interface Plan {
+        BlockEditJob plan(BlockTypeReader blocks);
+    }
+
+    private final Plugin plugin;
+    private final BlockEditQueue queue;
+    private final ExecutorService workers;
+    private final int asyncThreshold;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong plannedAsync = new AtomicLong();
+    private long plannedInline;
+
+    /**
+     * @param asyncThreshold plans covering more cells than this run on the worker pool
+     */
+    public ExplosionPlanner(Plugin plugin, BlockEditQueue queue, int threads, int asyncThreshold) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Planner needs at least one thread: " + threads);
+        }
+        this.plugin = plugin;
+        this.queue = queue;
+        this.asyncThreshold = asyncThreshold;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ChaosCraft-planner-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Plans and queues the edits of an effect that doesn't read any blocks. Must be called on the main thread.
+     */
+    public void submit(World world, int cells, Plan plan) {
+        submit(world, 0, 0, -1, -1, cells, plan);
+    }
+
+    /**
+     * Plans and queues the edits of one effect. Must be called on the main thread.
+     *
+     * @param minX  block bounds (inclusive) of every position the plan may read
+     * @param cells rough number of positions the plan visits, used to pick inline or async
+     */
+    public void submit(World world, int minX, int minZ, int maxX, int maxZ, int cells, Plan plan) {
+        if (cells <= asyncThreshold) {
+            plannedInline++;
+            queue.submit(plan.plan(liveReader(world)));
+            return;
+        }
+        BlockTypeReader snapshots = captureSnapshots(world, minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4);
+        ModifierCounters counters = ModifierCounters.current();
+        inFlight.incrementAndGet();
+        try {
+            workers.execute(() -> {
+                try {
+                    BlockEditJob job = plan.plan(snapshots);
+                    plannedAsync.incrementAndGet();
+                    if (plugin.isEnabled()) {
+                        plugin.getServer().getScheduler().runTask(plugin, () -> queue.submit(job, counters));
+                    }
+                } catch (RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "Explosion effect planning failed", e);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the effect is simply lost.
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /** Async plans submitted but not yet handed back to the main thread. */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getPlannedAsync() {
+        return plannedAsync.get();
+    }
+
+    public long getPlannedInline() {
+        return plannedInline;
+    }
+
+    private static BlockTypeReader liveReader(World world) {
+        int minY = world.getMinHeight();
+        int maxY = world.getMaxHeight();
+        return (x, y, z) -> {
+            if (y < minY || y >= maxY || !world.isChunkLoaded(x >> 4, z >> 4)) {
+                return null;
+            }
+            return world.getBlockAt(x, y, z).getType();
+        };
+    }
+
+    private static BlockTypeReader captureSnapshots(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        Map<Long, ChunkSnapshot> snapshots = new HashMap<>();
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                // Never load chunks for an effect; positions in unloaded chunks read as null.
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    snapshots.put(ChunkKeys.key(chunkX, chunkZ),
+                            world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+                }
+            }
+        }
+        int minY = world.getMinHeight();
+        int maxY = world.getMaxHeight();
+        return (x, y, z) -> {
+            if (y < minY || y >= maxY) {
+                return null;
+            }
+            ChunkSnapshot snapshot = snapshots.get(ChunkKeys.ofBlock(x, z));
+            return snapshot == null ? null : snapshot.getBlockType(x & 15, y, z & 15);
+        };
+    }
+}
@@ -0,0 +1,144 @@
+/*
+    @CLASS-TITLE: SphereOffsets.java
+    @CLASS-DESCRIPTION: Precomputed block offsets for radius-based effects, keyed by integer radius.
+    A table is a packed int[] of dx/dy/dz triplets sorted by squared distance from the center, so an effect
+    walks one array with integer math instead of scanning a (2r+1)^3 cube of Location clones and square roots.
+    Tables up to MAX_CACHED_RADIUS are built once and shared; larger radii are cut from a few bigger spheres
+    (radius rounded up to a multiple of MAX_CACHED_RADIUS), which are built once on first use. The arrays must
+    not be modified.
+    Safe to use from any thread.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class SphereOffsets {
+
+    /** Radii up to this get a table of their own; larger ones share the next multiple of it. */
+    public static final int MAX_CACHED_RADIUS = 16;
+
+    /** Hard upper bound (about 1.1 million offsets); callers clamp effect radii to it. */
+    public static final int MAX_RADIUS = 64;
+
+    private static final AtomicReferenceArray<int[]> SPHERES = new AtomicReferenceArray<>(MAX_CACHED_RADIUS + 1);
+    private static final AtomicReferenceArray<int[]> SHELLS = new AtomicReferenceArray<>(MAX_CACHED_RADIUS + 1);
+    // Spheres of radius MAX_CACHED_RADIUS * (i + 2), for radii above MAX_CACHED_RADIUS.
+    private static final AtomicReferenceArray<int[]> LARGE_SPHERES =
+            new AtomicReferenceArray<>((MAX_RADIUS - 1) / MAX_CACHED_RADIUS);
+
+    private SphereOffsets() {
+    }
+
+    /**
+     * Offsets with dx² + dy² + dz² <= radius², nearest first.
+     */
+    public static int[] sphere(int radius) {
+        return cached(SPHERES, radius, false);
+    }
+
+    /**
+     * Offsets with (radius - 1)² < dx² + dy² + dz² <= radius²: the outer one-block layer of sphere(radius).
+     */
+    public static int[] shell(int radius) {
+        return cached(SHELLS, radius, true);
+    }
+
+    /**
+     * Sphere table covering a fractional radius (clamped to MAX_RADIUS); never built on the spot once the shared
+     * tables exist. Only the first {@link #end(int[], double)} entries lie inside it.
+     */
+    public static int[] sphere(double radius) {
+        int covering = (int) Math.ceil(Math.max(0.0, Math.min(radius, MAX_RADIUS)));
+        return covering > MAX_CACHED_RADIUS ? largeSphere(covering) : sphere(covering);
+    }
+
+    /**
+     * Exclusive end index (in ints, a multiple of 3) of the offsets within {@code radius} of the center.
+     * Tables are sorted by distance, so this is a binary search and the caller's loop needs no distance check.
+     */
+    public static int end(int[] offsets, double radius) {
+        if (radius < 0.0) {
+            return 0;
+        }
+        double limit = radius * radius;
+        int low = 0;
+        int high = offsets.length / 3;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (squaredLength(offsets, mid * 3) <= limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low * 3;
+    }
+
+    public static int squaredLength(int[] offsets, int index) {
+        int dx = offsets[index];
+        int dy = offsets[index + 1];
+        int dz = offsets[index + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int[] cached(AtomicReferenceArray<int[]> cache, int radius, boolean shellOnly) {
+        if (radius < 0 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Radius must be between 0 and " + MAX_RADIUS + ": " + radius);
+        }
+        if (radius > MAX_CACHED_RADIUS) {
+            // Tables are sorted by distance, so the sphere or shell is a slice of the larger sphere.
+            int[] covering = largeSphere(radius);
+            int from = shellOnly ? end(covering, radius - 1) : 0;
+            return Arrays.copyOfRange(covering, from, end(covering, radius));
+        }
+        int[] offsets = cache.get(radius);
+        if (offsets == null) {
+            // Two threads may both build the same table; either result is identical, so the race is harmless.
+            offsets = build(radius, shellOnly);
+            cache.set(radius, offsets);
+        }
+        return offsets;
+    }
+
+    private static int[] largeSphere(int radius) {
+        int index = (radius - 1) / MAX_CACHED_RADIUS - 1;
+        int[] offsets = LARGE_SPHERES.get(index);
+        if (offsets == null) {
+            offsets = build(MAX_CACHED_RADIUS * (index + 2), false);
+            LARGE_SPHERES.set(index, offsets);
+        }
+        return offsets;
+    }
+
+    private static int[] build(int radius, boolean shellOnly) {
+        int outer = radius * radius;
+        int inner = shellOnly && radius > 0 ? (radius - 1) * (radius - 1) : -1;
+        int side = 2 * radius + 1;
+        // A sphere fills ~52% of its cube, so 5(r+1)^3 cells is always enough room.
+        // Sort key: squared distance in the high bits, the cube cell index in the low 32 bits.
+        long[] cells = new long[(int) Math.min((long) side * side * side, 5L * (radius + 1) * (radius + 1) * (radius + 1))];
+        int count = 0;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    int distance = dx * dx + dy * dy + dz * dz;
+                    if (distance <= outer && distance > inner) {
+                        int cell = ((dx + radius) * side + (dy + radius)) * side + (dz + radius);
+                        cells[count++] = ((long) distance << 32) | cell;
+                    }
+                }
+            }
+        }
+        Arrays.sort(cells, 0, count);
+        int[] offsets = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            int cell = (int) cells[i];
+            offsets[i * 3] = cell / (side * side) - radius;
+            offsets[i * 3 + 1] = (cell / side) % side - radius;
+            offsets[i * 3 + 2] = cell % side - radius;
+        }
+        return offsets;
+    }
+}
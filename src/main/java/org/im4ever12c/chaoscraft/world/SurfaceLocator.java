@@ -0,0 +1,273 @@
+/*
+    @CLASS-TITLE: SurfaceLocator.java
+    @CLASS-DESCRIPTION: Finds safe surface locations for chaos teleports and spawns. Keeps an LRU cache of
+    per-chunk heightmaps (highest non-air block and whether it is safe to stand on) taken from ChunkSnapshots,
+    so repeated lookups in the same area are an array read instead of a world query. Block changes mark the
+    affected columns stale; a stale column is re-read from the world on its next lookup. Surfaces over the
+    void or on lava, fire, magma, cactus, bedrock (nether roof) and similar blocks are rejected. Main thread only.
+ */
+
+package org.im4ever12c.chaoscraft.world;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.HeightMap;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.im4ever12c.chaoscraft.util.ChaosRandom;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public final class SurfaceLocator implements Listener {
+
+    /** Returned by surfaceY for columns with no safe surface. */
+    public static final int UNSAFE = Integer.MIN_VALUE;
+    // Column height not known any more; re-read from the world on the next lookup.
+    private static final int STALE = Integer.MIN_VALUE + 1;
+
+    private static final Set<Material> UNSAFE_SURFACES = EnumSet.of(
+            Material.AIR, Material.CAVE_AIR, Material.VOID_AIR,
+            Material.LAVA, Material.MAGMA_BLOCK, Material.FIRE, Material.SOUL_FIRE,
+            Material.CAMPFIRE, Material.SOUL_CAMPFIRE, Material.CACTUS, Material.SWEET_BERRY_BUSH,
+            Material.WITHER_ROSE, Material.POWDER_SNOW, Material.POINTED_DRIPSTONE, Material.BEDROCK);
+
+    private final Map<UUID, ChunkCache> worlds = new HashMap<>();
+    private final int chunksPerWorld;
+    private long hits;
+    private long misses;
+    private long staleRefreshes;
+    private long rejectedUnsafe;
+
+    /**
+     * @param chunksPerWorld heightmaps kept per world before the least recently used one is dropped
+     */
+    public SurfaceLocator(int chunksPerWorld) {
+        if (chunksPerWorld <= 0) {
+            throw new IllegalArgumentException("Surface cache size must be positive: " + chunksPerWorld);
+        }
+        this.chunksPerWorld = chunksPerWorld;
+    }
+
+    /**
+     * Y of the highest block in the column if it is safe to stand on, otherwise UNSAFE.
+     * Loads (or generates) the chunk on a cache miss, like World.getHighestBlockYAt.
+     */
+    public int surfaceY(World world, int x, int z) {
+        ChunkCache cache = worlds.get(world.getUID());
+        if (cache == null) {
+            cache = new ChunkCache(chunksPerWorld);
+            worlds.put(world.getUID(), cache);
+        }
+        long key = ChunkKeys.ofBlock(x, z);
+        int[] heights = cache.get(key);
+        if (heights == null) {
+            misses++;
+            heights = capture(world, x >> 4, z >> 4);
+            cache.put(key, heights);
+        } else {
+            hits++;
+        }
+        int column = (z & 15) << 4 | (x & 15);
+        int y = heights[column];
+        if (y == STALE) {
+            staleRefreshes++;
+            y = readColumn(world, x, z);
+            heights[column] = y;
+        }
+        if (y == UNSAFE) {
+            rejectedUnsafe++;
+        }
+        return y;
+    }
+
+    /**
+     * Location standing on the surface at x/z, or null if that surface is unsafe.
+     */
+    public Location findSurface(World world, double x, double z) {
+        int y = surfaceY(world, (int) Math.floor(x), (int) Math.floor(z));
+        return y == UNSAFE ? null : new Location(world, x, y + 1, z);
+    }
+
+    /**
+     * Safe surface location at a random offset of up to spread blocks on each axis around centerX/centerZ.
+     * Tries a few offsets before giving up and returning null.
+     */
+    public Location randomSurface(World world, double centerX, double centerZ, double spread,
+                                  ChaosRandom random, int attempts) {
+        for (int i = 0; i < attempts; i++) {
+            double x = centerX + (random.nextDouble() * spread * 2 - spread);
+            double z = centerZ + (random.nextDouble() * spread * 2 - spread);
+            Location surface = findSurface(world, x, z);
+            if (surface != null) {
+                return surface;
+            }
+        }
+        return null;
+    }
+
+    /** Marks a column stale if its chunk is cached. */
+    public void invalidate(World world, int x, int z) {
+        ChunkCache cache = worlds.get(world.getUID());
+        if (cache == null) {
+            return;
+        }
+        int[] heights = cache.get(ChunkKeys.ofBlock(x, z));
+        if (heights != null) {
+            heights[(z & 15) << 4 | (x & 15)] = STALE;
+        }
+    }
+
+    /** Drops the cached heightmaps of every chunk in the range (chunk coordinates, inclusive). */
+    public void invalidateChunks(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        ChunkCache cache = worlds.get(world.getUID());
+        if (cache == null) {
+            return;
+        }
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                cache.remove(ChunkKeys.key(cx, cz));
+            }
+        }
+    }
+
+    private static int[] capture(World world, int chunkX, int chunkZ) {
+        ChunkSnapshot snapshot = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(true, false, false);
+        int minY = world.getMinHeight();
+        int[] heights = new int[256];
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                heights[z << 4 | x] = surfaceY(snapshot, x, z, minY);
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Y of the highest block in a column of the snapshot (chunk-relative x/z) if it is safe to stand on,
+     * otherwise UNSAFE.
+     */
+    static int surfaceY(ChunkSnapshot snapshot, int x, int z, int minY) {
+        int y = snapshot.getHighestBlockYAt(x, z);
+        if (y < minY || UNSAFE_SURFACES.contains(snapshot.getBlockType(x, y, z))) {
+            return UNSAFE;
+        }
+        return y;
+    }
+
+    static int readColumn(World world, int x, int z) {
+        int y = world.getHighestBlockYAt(x, z, HeightMap.WORLD_SURFACE);
+        if (y < world.getMinHeight() || UNSAFE_SURFACES.contains(world.getBlockAt(x, y, z).getType())) {
+            return UNSAFE;
+        }
+        return y;
+    }
+
+    /* ------------------- Invalidation ------------------- */
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFlow(BlockFromToEvent event) {
+        invalidate(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        invalidate(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        invalidate(event.blockList());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+    }
+
+    private void invalidate(Block block) {
+        invalidate(block.getWorld(), block.getX(), block.getZ());
+    }
+
+    private void invalidate(List<Block> blocks) {
+        for (Block block : blocks) {
+            invalidate(block);
+        }
+    }
+
+    /* ------------------- Metrics ------------------- */
+
+    /** Lookups answered from a cached heightmap. */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Lookups that had to take a chunk snapshot. */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Lookups that re-read a column invalidated by a block change. */
+    public long getStaleRefreshes() {
+        return staleRefreshes;
+    }
+
+    public long getRejectedUnsafe() {
+        return rejectedUnsafe;
+    }
+
+    public int getCachedChunks() {
+        int cached = 0;
+        for (ChunkCache cache : worlds.values()) {
+            cached += cache.size();
+        }
+        return cached;
+    }
+
+    /* ------------------- LRU ------------------- */
+
+    private static final class ChunkCache extends LinkedHashMap<Long, int[]> {
+        private final int capacity;
+
+        ChunkCache(int capacity) {
+            super(16, 0.75F, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
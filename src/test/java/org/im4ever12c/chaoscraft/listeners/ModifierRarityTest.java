@@ -0,0 +1,45 @@
+/*
+    @CLASS-TITLE: ModifierRarityTest.java
+    @CLASS-DESCRIPTION: Checks that every listener's weighted modifier enum (one modifier picked per event) is
+    drawn by its declared rarities. Projectile launch modifiers and entity traits are each rolled on their own
+    instead, so their rarities are chances rather than weights and they are not checked here.
+ */
+
+package org.im4ever12c.chaoscraft.listeners;
+
+import org.junit.Test;
+
+import static org.im4ever12c.chaoscraft.util.WeightedSamplerTest.assertDrawsByRarity;
+
+public class ModifierRarityTest {
+
+    @Test
+    public void drawsBlockBreakModifiersByRarity() {
+        assertDrawsByRarity(BreakBlockEvent.BlockBreakModifier.class);
+    }
+
+    @Test
+    public void drawsExplosionModifiersByRarity() {
+        assertDrawsByRarity(ExplosionEvents.ExplosionModifier.class);
+    }
+
+    @Test
+    public void drawsAnimalSpawnModifiersByRarity() {
+        assertDrawsByRarity(EntitySpawnEvents.AnimalSpawnModifier.class);
+    }
+
+    @Test
+    public void drawsCreatureSpawnModifiersByRarity() {
+        assertDrawsByRarity(EntitySpawnEvents.CreatureSpawnModifier.class);
+    }
+
+    @Test
+    public void drawsProjectileHitModifiersByRarity() {
+        assertDrawsByRarity(ProjectileHitEvents.ProjectileHitModifier.class);
+    }
+
+    @Test
+    public void drawsTimeSkipModifiersByRarity() {
+        assertDrawsByRarity(TimeSkipEvents.TimeSkipModifier.class);
+    }
+}
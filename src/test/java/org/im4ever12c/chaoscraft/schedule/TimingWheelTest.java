@@ -0,0 +1,185 @@
+/*
+    @CLASS-TITLE: TimingWheelTest.java
+    @CLASS-DESCRIPTION: Checks that TimingWheel runs every action on exactly the tick it is due, for delays
+    landing on each of the four wheel levels and on their boundaries, also when scheduled mid-rotation, and
+    that cancelChunk and cancelWorld cancel exactly the actions anchored there.
+ */
+
+package org.im4ever12c.chaoscraft.schedule;
+
+import org.bukkit.World;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    // Level 0 holds delays below 2^8, level 1 below 2^14, level 2 below 2^20, level 3 the rest.
+    private static final long[] DELAYS = {
+            1, 2, 255,
+            256, 257, 1000, (1 << 14) - 1,
+            1 << 14, (1 << 14) + 1, 300_000, (1 << 20) - 1,
+            1 << 20, (1 << 20) + 1, (1 << 20) + 12_345
+    };
+
+    private TimingWheel wheel;
+    private long tick;
+
+    @Before
+    public void setUp() {
+        wheel = new TimingWheel(Logger.getLogger("test"));
+        tick = 0L;
+    }
+
+    @Test
+    public void firesOnTheDueTickOnEveryLevel() {
+        List<Action> actions = new ArrayList<>();
+        scheduleAll(actions, world());
+        // Again from a tick that is not aligned to any level.
+        advance(300);
+        scheduleAll(actions, world());
+        advance((1 << 20) + 12_345);
+        for (Action action : actions) {
+            long delay = action.expectedTick - action.scheduledTick;
+            assertEquals("delay " + delay + " from tick " + action.scheduledTick, action.expectedTick,
+                    action.firedTick);
+            assertEquals(1, action.runs);
+            assertFalse(action.isScheduled());
+        }
+        assertEquals(0, wheel.getPending());
+        assertEquals(actions.size(), wheel.getTotalFired());
+    }
+
+    @Test
+    public void clampsDelaysToOneTick() {
+        Action action = schedule(world(), 0, 0, 0L);
+        advance(1);
+        assertEquals(1L, action.firedTick);
+    }
+
+    @Test
+    public void cancelChunkCancelsOnlyThatChunk() {
+        World world = world();
+        World other = world();
+        Action first = schedule(world, 3, 5, 10);
+        Action second = schedule(world, 15, 1, 70_000);
+        Action otherChunk = schedule(world, 16, 5, 10);
+        Action otherWorld = schedule(other, 3, 5, 10);
+
+        assertEquals(2, wheel.cancelChunk(world, 0, 0));
+        assertEquals(0, wheel.cancelChunk(world, 0, 0));
+        assertTrue(first.cancelled && second.cancelled);
+        assertFalse(first.isScheduled() || second.isScheduled());
+        assertEquals(2, wheel.getPending());
+
+        advance(70_000);
+        assertEquals(0, first.runs + second.runs);
+        assertEquals(10L, otherChunk.firedTick);
+        assertEquals(10L, otherWorld.firedTick);
+        assertEquals(2L, wheel.getTotalCancelled());
+    }
+
+    @Test
+    public void cancelWorldCancelsEveryChunkOfThatWorld() {
+        World world = world();
+        World other = world();
+        List<Action> cancelled = new ArrayList<>();
+        for (int i = 0; i < DELAYS.length; i++) {
+            cancelled.add(schedule(world, i * 16, -i * 16, DELAYS[i]));
+        }
+        Action kept = schedule(other, 0, 0, 1000);
+
+        assertEquals(DELAYS.length, wheel.cancelWorld(world));
+        assertEquals(0, wheel.cancelWorld(world));
+        assertEquals(1, wheel.getPending());
+
+        advance(1000);
+        for (Action action : cancelled) {
+            assertTrue(action.cancelled);
+            assertEquals(0, action.runs);
+        }
+        assertEquals(1000L, kept.firedTick);
+        assertFalse(kept.cancelled);
+    }
+
+    @Test
+    public void cancelledActionsCanBeScheduledAgain() {
+        World world = world();
+        Action action = schedule(world, 0, 0, 500);
+        assertTrue(wheel.cancel(action));
+        assertFalse(wheel.cancel(action));
+        wheel.schedule(action, 20);
+        action.scheduledTick = tick;
+        action.expectedTick = tick + 20;
+        advance(500);
+        assertEquals(20L, action.firedTick);
+        assertEquals(1, action.runs);
+    }
+
+    private void scheduleAll(List<Action> actions, World world) {
+        for (long delay : DELAYS) {
+            actions.add(schedule(world, 0, 0, delay));
+        }
+    }
+
+    private Action schedule(World world, int blockX, int blockZ, long delay) {
+        Action action = new Action(world, blockX, blockZ);
+        action.scheduledTick = tick;
+        action.expectedTick = tick + Math.max(1L, delay);
+        wheel.schedule(action, delay);
+        return action;
+    }
+
+    private void advance(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            tick++;
+            wheel.run();
+        }
+    }
+
+    private static World world() {
+        UUID uid = UUID.randomUUID();
+        return (World) Proxy.newProxyInstance(TimingWheelTest.class.getClassLoader(), new Class<?>[] { World.class },
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUID": return uid;
+                        case "hashCode": return uid.hashCode();
+                        case "equals": return self == args[0];
+                        case "toString": return "world " + uid;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private final class Action extends DelayedAction {
+        long scheduledTick;
+        long expectedTick;
+        long firedTick = -1L;
+        int runs;
+        boolean cancelled;
+
+        Action(World world, int blockX, int blockZ) {
+            super(world, blockX, blockZ);
+        }
+
+        @Override
+        public void run() {
+            firedTick = tick;
+            runs++;
+        }
+
+        @Override
+        public void cancelled() {
+            cancelled = true;
+        }
+    }
+}
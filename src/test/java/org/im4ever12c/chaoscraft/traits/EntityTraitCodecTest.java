@@ -0,0 +1,119 @@
+/*
+    @CLASS-TITLE: EntityTraitCodecTest.java
+    @CLASS-DESCRIPTION: Checks that EntityTraitCodec reads back exactly what it wrote (every trait set, with and
+    without the two parameters, varints of several bytes), that the version byte leads the value, and that
+    values of another version or a cleared trait set load as no traits at all.
+ */
+
+package org.im4ever12c.chaoscraft.traits;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.Plugin;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntityTraitCodecTest {
+
+    private static final int ENTITY_ID = 1234;
+
+    private EntityTraitCodec codec;
+    private Map<Object, Object> stored;
+    private Entity entity;
+
+    @Before
+    public void setUp() {
+        codec = new EntityTraitCodec(proxy(Plugin.class, (method, args) ->
+                "getName".equals(method) ? "ChaosCraft" : null));
+        stored = new HashMap<>();
+        PersistentDataContainer container = proxy(PersistentDataContainer.class, (method, args) -> {
+            switch (method) {
+                case "set": return stored.put(args[0], args[2]);
+                case "get": return stored.get(args[0]);
+                case "has": return stored.containsKey(args[0]);
+                case "remove": return stored.remove(args[0]);
+                default: throw new UnsupportedOperationException(method);
+            }
+        });
+        entity = proxy(Entity.class, (method, args) -> {
+            switch (method) {
+                case "getPersistentDataContainer": return container;
+                case "getEntityId": return ENTITY_ID;
+                default: throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    @Test
+    public void roundTripsEveryTraitSet() {
+        long all = (1L << EntityTrait.values().length) - 1;
+        for (long traits = 1L; traits <= all; traits++) {
+            int loot = EntityTrait.EXTRA_LOOT_MULTIPLIER.isIn(traits) ? (int) (traits % 127) + 1 : 0;
+            int spawns = EntityTrait.EXTRA_SPAWN_ON_DEATH.isIn(traits) ? 127 - (int) (traits % 127) : 0;
+            assertRoundTrip(traits, loot, spawns);
+        }
+    }
+
+    @Test
+    public void leadsWithTheVersionByte() {
+        long traits = EntityTrait.EXTRA_LOOT_MULTIPLIER.bit() | EntityTrait.LIGHTNING_ON_DEATH.bit();
+        byte[] data = EntityTraitCodec.encode(traits, 7, 3);
+        assertEquals(EntityTraitCodec.VERSION, data[0]);
+        // Version, the bitmask in two varint bytes, then only the loot multiplier.
+        assertEquals(1 + 2 + 1, data.length);
+        assertEquals(7, data[3]);
+    }
+
+    @Test
+    public void ignoresOtherVersions() {
+        codec.write(entity, EntityTrait.FIRE_ON_DAMAGE.bit(), 0, 0);
+        byte[] data = (byte[]) stored.values().iterator().next();
+        data[0] = EntityTraitCodec.VERSION + 1;
+        EntityTraitIndex index = new EntityTraitIndex();
+        assertFalse(codec.load(entity, index));
+        assertFalse(index.contains(ENTITY_ID));
+    }
+
+    @Test
+    public void removesTheValueOnceNoTraitsAreLeft() {
+        codec.write(entity, EntityTrait.FREEZE_ON_DAMAGE.bit(), 0, 0);
+        assertEquals(1, stored.size());
+        codec.write(entity, 0L, 0, 0);
+        assertTrue(stored.isEmpty());
+        assertFalse(codec.load(entity, new EntityTraitIndex()));
+    }
+
+    private void assertRoundTrip(long traits, int loot, int spawns) {
+        codec.write(entity, traits, loot, spawns);
+        EntityTraitIndex index = new EntityTraitIndex();
+        assertTrue("traits " + traits, codec.load(entity, index));
+        int slot = index.find(ENTITY_ID);
+        assertEquals("traits " + traits, traits, index.traitsAt(slot));
+        assertEquals("loot of " + traits, loot, index.lootMultiplierAt(slot));
+        assertEquals("spawns of " + traits, spawns, index.extraSpawnsAt(slot));
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(EntityTraitCodecTest.class.getClassLoader(), new Class<?>[] { type },
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "hashCode": return System.identityHashCode(self);
+                        case "equals": return self == args[0];
+                        case "toString": return type.getSimpleName();
+                        default: return handler.invoke(method.getName(), args);
+                    }
+                }));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+    @CLASS-TITLE: IntKeyTableTest.java
+    @CLASS-DESCRIPTION: Checks IntKeyTable's backward-shift deletion: removing from a probe cluster moves the
+    entries behind the gap back (with their values) unless their home slot lies past the gap, clusters that wrap
+    around the end of the table are handled, no slot is left marked, and a long random run of inserts and
+    removes always agrees with a HashMap.
+ */
+
+package org.im4ever12c.chaoscraft.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntKeyTableTest {
+
+    private static final int CAPACITY = 64;
+
+    @Test
+    public void shiftsTheClusterBackIntoTheGap() {
+        Table table = new Table();
+        // Three keys sharing home slot 10 take 10, 11 and 12; a key homed at 11 is pushed to 13.
+        int[] homedAt10 = keysHomedAt(10, 3);
+        int homedAt11 = keysHomedAt(11, 1)[0];
+        for (int key : homedAt10) {
+            table.put(key, key * 2);
+        }
+        table.put(homedAt11, homedAt11 * 2);
+        assertEquals(13, table.find(homedAt11));
+
+        assertTrue(table.remove(homedAt10[0]));
+        assertEquals(10, table.find(homedAt10[1]));
+        assertEquals(11, table.find(homedAt10[2]));
+        assertEquals(12, table.find(homedAt11));
+        assertFalse(table.isOccupied(13));
+        assertValues(table, homedAt10[1], homedAt10[2], homedAt11);
+        assertEquals(0, table.values[13]);
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void leavesEntriesHomedPastTheGap() {
+        Table table = new Table();
+        int homedAt20 = keysHomedAt(20, 1)[0];
+        int homedAt21 = keysHomedAt(21, 1)[0];
+        table.put(homedAt20, 1);
+        table.put(homedAt21, 2);
+
+        table.remove(homedAt20);
+        assertEquals(21, table.find(homedAt21));
+        assertFalse(table.isOccupied(20));
+        assertEquals(2, table.values[21]);
+    }
+
+    @Test
+    public void shiftsAcrossTheEndOfTheTable() {
+        Table table = new Table();
+        // Homed at the last slot: the cluster wraps around to 0 and 1.
+        int[] homedAtEnd = keysHomedAt(CAPACITY - 1, 3);
+        for (int key : homedAtEnd) {
+            table.put(key, key + 1);
+        }
+        assertEquals(1, table.find(homedAtEnd[2]));
+
+        table.remove(homedAtEnd[1]);
+        assertEquals(CAPACITY - 1, table.find(homedAtEnd[0]));
+        assertEquals(0, table.find(homedAtEnd[2]));
+        assertFalse(table.isOccupied(1));
+        assertValues(table, homedAtEnd[0], homedAtEnd[2]);
+    }
+
+    @Test
+    public void agreesWithHashMap() {
+        Table table = new Table();
+        Map<Integer, Integer> expected = new HashMap<>();
+        ChaosRandom random = new ChaosRandom(42L);
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range keeps clusters long and removals frequent.
+            int key = random.nextInt(512) - 256;
+            if (random.nextBoolean()) {
+                table.put(key, i);
+                expected.put(key, i);
+            } else {
+                assertEquals(expected.remove(key) != null, table.remove(key));
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        int occupied = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isOccupied(slot)) {
+                occupied++;
+                assertEquals((long) expected.get(table.keyAt(slot)), table.values[slot]);
+            } else {
+                assertEquals(0, table.values[slot]);
+            }
+        }
+        assertEquals(expected.size(), occupied);
+    }
+
+    // The first keys whose home slot in a table of CAPACITY slots is the given one.
+    private static int[] keysHomedAt(int home, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; keys.size() < count; key++) {
+            Table alone = new Table();
+            alone.put(key, 0);
+            if (alone.find(key) == home) {
+                keys.add(key);
+            }
+        }
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = keys.get(i);
+        }
+        return result;
+    }
+
+    private static void assertValues(Table table, int... keys) {
+        for (int key : keys) {
+            int slot = table.find(key);
+            assertTrue("missing " + key, slot >= 0);
+            assertEquals("value of " + key, table.valueOf(key), table.values[slot]);
+        }
+    }
+
+    private static final class Table extends IntKeyTable {
+        int[] values;
+        private final Map<Integer, Integer> written = new HashMap<>();
+
+        Table() {
+            super(CAPACITY);
+            init();
+        }
+
+        void put(int key, int value) {
+            // insert() may grow the table and replace the value array.
+            int slot = insert(key);
+            values[slot] = value;
+            written.put(key, value);
+        }
+
+        int valueOf(int key) {
+            return written.get(key);
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        protected void moveValues(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        protected void clearValues(int slot) {
+            values[slot] = 0;
+        }
+
+        @Override
+        protected void relocateValues(int[] targetSlots, int newCapacity) {
+            int[] old = values;
+            allocateValues(newCapacity);
+            for (int i = 0; i < targetSlots.length; i++) {
+                if (targetSlots[i] >= 0) {
+                    values[targetSlots[i]] = old[i];
+                }
+            }
+        }
+    }
+}
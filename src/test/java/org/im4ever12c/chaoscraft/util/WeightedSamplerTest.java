@@ -0,0 +1,99 @@
+/*
+    @CLASS-TITLE: WeightedSamplerTest.java
+    @CLASS-DESCRIPTION: Checks that WeightedSampler draws values as often as their weights say: a fixed-seed
+    run compared to weight / total with a chi-square test. assertDrawsByRarity() runs the same check on a
+    weighted modifier enum (see ModifierRarityTest).
+ */
+
+package org.im4ever12c.chaoscraft.util;
+
+import org.im4ever12c.chaoscraft.config.ModifierSpec;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedSamplerTest {
+
+    private static final int DRAWS = 200_000;
+    private static final long SEED = 42L;
+    // Standard normal quantile for a 0.1% false-alarm rate.
+    private static final double Z_999 = 3.090;
+
+    @Test
+    public void neverDrawsZeroWeights() {
+        String[] values = { "a", "b", "c", "d" };
+        double[] weights = { 0.0, 3.0, 0.0, 1.0 };
+        int[] counts = draw(values, weights);
+        assertEquals(0, counts[0]);
+        assertEquals(0, counts[2]);
+        assertMatches("zero weights", values, weights);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAllZeroWeights() {
+        WeightedSampler.of(new String[] { "a", "b" }, new double[] { 0.0, 0.0 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeWeights() {
+        WeightedSampler.of(new String[] { "a", "b" }, new double[] { 1.0, -0.5 });
+    }
+
+    /**
+     * Asserts that the values of a modifier enum whose modifiers are picked one per event (by weight, not each
+     * rolled on its own) are drawn by their declared rarities.
+     */
+    public static <T extends Enum<T> & ModifierSpec> void assertDrawsByRarity(Class<T> modifiers) {
+        T[] values = modifiers.getEnumConstants();
+        double[] weights = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            weights[i] = values[i].getRarity();
+        }
+        assertMatches(modifiers.getSimpleName(), values, weights);
+    }
+
+    private static <T> int[] draw(T[] values, double[] weights) {
+        WeightedSampler<T> sampler = WeightedSampler.of(values, weights);
+        ChaosRandom random = new ChaosRandom(SEED);
+        int[] counts = new int[values.length];
+        for (int i = 0; i < DRAWS; i++) {
+            T value = sampler.next(random);
+            for (int j = 0; j < values.length; j++) {
+                if (values[j] == value) {
+                    counts[j]++;
+                    break;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static <T> void assertMatches(String name, T[] values, double[] weights) {
+        int[] counts = draw(values, weights);
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double chiSquare = 0.0;
+        int categories = 0;
+        for (int i = 0; i < values.length; i++) {
+            double expected = DRAWS * weights[i] / total;
+            if (expected == 0.0) {
+                continue;
+            }
+            double difference = counts[i] - expected;
+            chiSquare += difference * difference / expected;
+            categories++;
+        }
+        double limit = chiSquareLimit(categories - 1);
+        assertTrue(String.format("%s: chi-square %.1f over %.1f", name, chiSquare, limit), chiSquare <= limit);
+    }
+
+    /** The 99.9th percentile of the chi-square distribution (Wilson-Hilferty approximation). */
+    private static double chiSquareLimit(int degreesOfFreedom) {
+        double k = Math.max(1, degreesOfFreedom);
+        double term = 2.0 / (9.0 * k);
+        return k * Math.pow(1.0 - term + Z_999 * Math.sqrt(term), 3);
+    }
+}